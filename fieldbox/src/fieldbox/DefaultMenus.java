@@ -16,6 +16,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Plugin: Adds Standard Menus and Shortcuts too basic not to have (new box, save etc.)
@@ -53,7 +54,7 @@ public class DefaultMenus extends Box {
 
 				MarkingMenus.MenuSpecification saveMenu = new MarkingMenus.MenuSpecification();
 				saveMenu.items.put(MarkingMenus.Position.E, new MarkingMenus.MenuItem("Save", () -> {
-					save();
+					save(false);
 				}));
 
 				saveMenu.items.put(MarkingMenus.Position.S, new MarkingMenus.MenuItem(saveOnExit ? "Save on exit (toggle)" : "Don't save on exit (toggle)", () -> {
@@ -61,7 +62,7 @@ public class DefaultMenus extends Box {
 				}));
 
 				spec.items.put(MarkingMenus.Position.E, new MarkingMenus.MenuItem("Save...", () -> {
-					save();
+					save(false);
 				}).setSubmenu(saveMenu));
 				spec.items.put(MarkingMenus.Position.N, new MarkingMenus.MenuItem("New Box", () -> {
 					Vec2 at = convertCoordinateSystem(event.after);
@@ -76,7 +77,7 @@ public class DefaultMenus extends Box {
 		properties.put(Commands.commands, () -> {
 
 			Map<Pair<String, String>, Runnable> m = new LinkedHashMap<>();
-			m.put(new Pair<>("Save all", "Saves this document"), DefaultMenus.this::save);
+			m.put(new Pair<>("Save all", "Saves this document"), () -> save(false));
 
 			return m;
 		});
@@ -135,7 +136,7 @@ public class DefaultMenus extends Box {
 			if (saveOnExit && safeToSave) if (this.breadthFirst(both())
 							      .filter(x -> x.properties.get(Box.frame) != null)
 							      .findFirst()
-							      .isPresent()) save();
+							      .isPresent()) save(true);
 		});
 
 		properties.put(delete, (box) -> {
@@ -186,7 +187,10 @@ public class DefaultMenus extends Box {
 			      .orElseThrow(() -> new IllegalArgumentException(" cant mouse around something without drawing support (to provide coordinate system)"));
 	}
 
-	private void save() {
+	/**
+	 * 'block' waits for the files to reach the disk, which we only want to do on the way out
+	 */
+	private void save(boolean block) {
 
 		Log.println("io.debug", " saving .... ");
 		Map<Box, String> special = new LinkedHashMap<>();
@@ -202,19 +206,21 @@ public class DefaultMenus extends Box {
 
 		IO.Document doc = FieldBox.fieldBox.io.compileDocument(path, root, special);
 
-		boolean error = false;
 		try {
-			FieldBox.fieldBox.io.writeOutDocument(IO.WORKSPACE + "/" + path+"/"+fn, doc);
+			CompletableFuture<Void> saved = FieldBox.fieldBox.io.writeOutDocument(IO.WORKSPACE + "/" + path + "/" + fn, doc);
+			if (block) {
+				FieldBox.fieldBox.io.waitFor(saved);
+				Log.println("io.debug", " saved to " + filename);
+			} else {
+				// the files are written in the background, we'll hear about it when they've all made it (failures also go to Errors)
+				saved.whenComplete((x, t) -> RunLoop.main.once(() -> {
+					if (t == null) Drawing.notify("Saved to " + filename, this, 200);
+					else Drawing.notify("Error saving " + (t.getCause() != null ? t.getCause() : t).getMessage(), this, 200);
+				}));
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			Drawing.notify("Error saving " + e.getMessage(), this, 200);
-			error = true;
-		}
-
-		if (!error) {
-			Log.println("io.debug", " going to notify ...");
-			Drawing.notify("Saved to " + filename, this, 200);
-			Log.println("io.debug", " ... notified ");
 		}
 	}
 
@@ -118,6 +118,8 @@ public class Open {
 		Watches watches = new Watches();
 		watches.connect(boxes.root());
 
+		new SpatialIndex(boxes.root()).connect(boxes.root());
+
 		drawing = new Drawing();
 		// add the default layer to the box graph
 		drawing.install(boxes.root());
@@ -186,6 +188,8 @@ public class Open {
 
 		new GraphicsSupport(boxes.root()).connect(boxes.root());
 
+		new GraphicsStats(boxes.root()).connect(boxes.root());
+
 		new BlankCanvas(boxes.root()).connect(boxes.root());
 
 		new DragFilesToCanvas(boxes.root()).connect(boxes.root());
@@ -326,6 +330,12 @@ public class Open {
 				    if (SimpleArrayBuffer.uploadBytes > 0) {
 					    Log.println("graphics.stats", " uploaded " + SimpleArrayBuffer.uploadBytes + " bytes to OpenGL");
 					    SimpleArrayBuffer.uploadBytes = 0;
+					    SimpleArrayBuffer.uploadCalls = 0;
+				    }
+				    if (StreamingArrayBuffer.bytesStreamed > 0) {
+					    Log.println("graphics.stats", " streamed " + StreamingArrayBuffer.bytesStreamed + " bytes to OpenGL (" + StreamingArrayBuffer.bytesStreamedLastFrame + " last frame), " + StreamingArrayBuffer.stalls + " stalls avoided by orphaning");
+					    StreamingArrayBuffer.bytesStreamed = 0;
+					    StreamingArrayBuffer.stalls = 0;
 				    }
 			    }, 600));
 
@@ -15,8 +15,12 @@ import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -53,7 +57,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 											   .toCannon()
 											   .doc("set this to true to make this box not deletable by conventional means");
 
-	public final Dict properties = new Dict();
+	public final Dict properties = new Dict().setOwner(this);
 	public Set<Box> parents = new LinkedHashSet<>();
 	public Set<Box> children = new LinkedHashSet<>();
 	public Deque<Box> all = new ArrayDeque<>();
@@ -61,9 +65,29 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 	private String __cachedSimpleName = null;
 	private long tick = 0;
 
-	static public final PegDownProcessor peg = new PegDownProcessor();
+	// built on first use by format(), constructing one generates parser classes, which is slow and (with some builds of parboiled) fails outright
+	static protected PegDownProcessor peg;
+
+	/**
+	 * boxes that are 'disconnected' are skipped by breadthFirst. Change this with setDisconnected(...) so that cached inherited lookups notice
+	 */
 	public boolean disconnected = false;
 
+	/**
+	 * incremented every time the topology of the box graph changes (connect, disconnect, setDisconnected). Cached inherited lookups are keyed off of this and Dict.Prop.getPresenceVersion()
+	 */
+	static public final AtomicLong topology = new AtomicLong();
+
+	static private final Function<Box, Collection<Box>> UPWARDS = Box::_parents;
+	static private final Function<Box, Collection<Box>> DOWNWARDS = Box::_children;
+	static private final Function<Box, Collection<Box>> BOTH = Box::_all;
+
+	// cached inherited lookups, indexed by direction (UPWARDS, DOWNWARDS, BOTH) and then by Prop
+	private Map<Dict.Prop, Inherited>[] inherited;
+
+	// visited marks, one per Traversal slot
+	final long[] traversalMarks = new long[Traversal.SLOTS];
+
 
 	public Box() {
 		properties.put(IO.id, newID());
@@ -118,6 +142,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 			b.parents.add(this);
 		}
 
+		topology.incrementAndGet();
 		return this;
 	}
 
@@ -131,6 +156,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 		all.remove(b);
 		b.all.remove(this);
 
+		topology.incrementAndGet();
 		return this;
 	}
 
@@ -147,6 +173,18 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 
 		all.clear();
 
+		topology.incrementAndGet();
+		return this;
+	}
+
+	/**
+	 * marks this box as being (temporarily) outside of the graph. Disconnected boxes are skipped by breadthFirst (but not breadthFirstAll)
+	 */
+	public Box setDisconnected(boolean disconnected) {
+		if (this.disconnected != disconnected) {
+			this.disconnected = disconnected;
+			topology.incrementAndGet();
+		}
 		return this;
 	}
 
@@ -172,17 +210,22 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 
 	@HiddenInAutocomplete
 	public <T> Stream<T> has(Dict.Prop<T> find, Function<Box, Collection<Box>> direction) {
-		return breadthFirst(direction).map(x -> x.properties.get(find))
-					      .filter(x -> x != null);
+		return find(find, direction);
 	}
 
 	@HiddenInAutocomplete
 	public <T> Stream<Box> whereHas(Dict.Prop<T> find, Function<Box, Collection<Box>> direction) {
+		Inherited i = inherited(find, direction, true);
+		if (i != null) return i.all.stream();
 		return breadthFirst(direction).filter(x -> x.properties.has(find));
 	}
 
 	@HiddenInAutocomplete
 	public <T> Stream<T> find(Dict.Prop<T> find, Function<Box, Collection<Box>> direction) {
+		Inherited i = inherited(find, direction, true);
+		if (i != null) return i.all.stream()
+					   .map(x -> x.properties.get(find))
+					   .filter(x -> x != null);
 		return breadthFirst(direction).map(x -> x.properties.get(find))
 					      .filter(x -> x != null);
 	}
@@ -190,6 +233,8 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 	@HiddenInAutocomplete
 	public <T> Optional<T> first(Dict.Prop<T> find, Function<Box, Collection<Box>> direction) {
 		if (properties.has(find)) return Optional.of(properties.get(find));
+		Inherited i = inherited(find, direction, false);
+		if (i != null) return i.first == null ? Optional.empty() : Optional.ofNullable(i.first.properties.get(find));
 		return breadthFirst(direction).map(x -> x.properties.get(find))
 					      .filter(x -> x != null)
 					      .findFirst();
@@ -198,6 +243,8 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 	@HiddenInAutocomplete
 	public <T> Optional<T> next(Dict.Prop<T> find, Function<Box, Collection<Box>> direction) {
 		if (properties.has(find)) return Optional.of(properties.get(find));
+		Inherited i = inherited(find, direction, true);
+		if (i != null) return i.all.size() < 2 ? Optional.empty() : Optional.ofNullable(i.all.get(1).properties.get(find));
 		return breadthFirst(direction).map(x -> x.properties.get(find))
 					      .filter(x -> x != null)
 					      .skip(1)
@@ -206,17 +253,71 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 
 	@HiddenInAutocomplete
 	public <T> Optional<T> first(Dict.Prop<T> find) {
-		return first(find, Box::_parents);
+		return first(find, UPWARDS);
 	}
 
 	@HiddenInAutocomplete
 	public <T> Optional<T> next(Dict.Prop<T> find) {
-		return next(find, Box::_parents);
+		return next(find, UPWARDS);
 	}
 
 	@HiddenInAutocomplete
 	public <T> Optional<Box> where(Dict.Prop<T> find) {
-		return whereHas(find, upwards()).findFirst();
+		Inherited i = inherited(find, UPWARDS, false);
+		if (i != null) return Optional.ofNullable(i.first);
+		return whereHas(find, UPWARDS).findFirst();
+	}
+
+	/**
+	 * returns the (cached) boxes that have property 'find' in breadth first order from here, or null if this lookup isn't cacheable (only the directions returned by upwards(), downwards() and
+	 * both() are, and only for Props that have canonical definitions). Cached results are good for as long as neither 'topology' nor the presence version of 'find' changes, which means that
+	 * repeated lookups on an unchanged graph cost a map lookup
+	 */
+	protected Inherited inherited(Dict.Prop find, Function<Box, Collection<Box>> direction, boolean needsAll) {
+		int d = direction == UPWARDS ? 0 : direction == DOWNWARDS ? 1 : direction == BOTH ? 2 : -1;
+		if (d == -1) return null;
+
+		Dict.Prop canon = find.isCannon() ? find : find.findCannon();
+		if (canon == null) return null;
+
+		// read these before we walk the graph, so that a concurrent change leaves us with a stale (and hence recomputed) entry
+		long t = topology.get();
+		long p = canon.getPresenceVersion();
+
+		if (inherited == null) inherited = new Map[3];
+		Map<Dict.Prop, Inherited> m = inherited[d];
+		if (m == null) m = inherited[d] = new ConcurrentHashMap<>(8);
+
+		Inherited i = m.get(find);
+		if (i != null && i.canon == canon && i.topology == t && i.presence == p && (!needsAll || i.all != null)) return i;
+
+		if (needsAll) {
+			List<Box> all = breadthFirst(direction).filter(x -> x.properties.has(find))
+							       .collect(Collectors.toList());
+			i = new Inherited(canon, t, p, all.size() > 0 ? all.get(0) : null, all);
+		} else {
+			i = new Inherited(canon, t, p, breadthFirst(direction).filter(x -> x.properties.has(find))
+									   .findFirst()
+									   .orElse(null), null);
+		}
+		m.put(find, i);
+		return i;
+	}
+
+	static protected class Inherited {
+		final Dict.Prop canon;
+		final long topology;
+		final long presence;
+		final Box first;
+		final List<Box> all;
+
+		protected Inherited(Dict.Prop canon, long topology, long presence, Box first, List<Box> all) {
+			this.canon = canon;
+			this.topology = topology;
+			this.presence = presence;
+			this.first = first;
+			this.all = all;
+		}
 	}
 
 	@HiddenInAutocomplete
@@ -235,7 +336,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 	 */
 	@HiddenInAutocomplete
 	public Function<Box, Collection<Box>> upwards() {
-		return Box::_parents;
+		return UPWARDS;
 	}
 
 	/**
@@ -265,7 +366,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 	 */
 	@HiddenInAutocomplete
 	public Function<Box, Collection<Box>> downwards() {
-		return Box::_children;
+		return DOWNWARDS;
 	}
 
 	/**
@@ -273,7 +374,27 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 	 */
 	@HiddenInAutocomplete
 	public Function<Box, Collection<Box>> both() {
-		return Box::_all;
+		return BOTH;
+	}
+
+	/**
+	 * calls 'visitor' with every box reachable from here (including this box) given a direction function, in breadth first order, skipping "disconnected" boxes. Unlike breadthFirst this
+	 * allocates nothing per box.
+	 */
+	@HiddenInAutocomplete
+	public void forEachBreadthFirst(Function<Box, Collection<Box>> map, Consumer<Box> visitor) {
+		Traversal.breadthFirst(this, map, true, x -> {
+			visitor.accept(x);
+			return false;
+		});
+	}
+
+	/**
+	 * returns the first box in breadth first order (starting with, and including, this box) that passes 'predicate', or null if there isn't one. This skips "disconnected" boxes
+	 */
+	@HiddenInAutocomplete
+	public Box findBreadthFirst(Function<Box, Collection<Box>> map, Predicate<Box> predicate) {
+		return Traversal.breadthFirst(this, map, true, predicate);
 	}
 
 	/**
@@ -285,35 +406,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 
 		if (this.all.size() == 0) Log.log("box.warning", ()->" breadthFirst called on a box not connected to the box graph");
 
-		return new Lazy<Box>() {
-			LinkedHashSet<Box> ret = null;
-			Set<Box> thisLevel = null;
-
-			protected Iterator<Box> initialize() {
-
-				ret = new LinkedHashSet<>();
-				ret.add(Box.this);
-				thisLevel = ret;
-				return ret.iterator();
-			}
-
-			@Override
-			protected Iterator<Box> pull() {
-				if (thisLevel.size() == 0) return null;
-
-				Set<Box> nextLevel = new LinkedHashSet<>();
-				for (Box b : thisLevel)
-					if (!b.disconnected)
-						nextLevel.addAll(map.apply(b));
-				nextLevel.removeAll(ret);
-				ret.addAll(nextLevel);
-				thisLevel = nextLevel;
-
-				return thisLevel.iterator();
-
-			}
-		}.reset()
-		 .stream().filter(x -> !x.disconnected);
+		return Traversal.stream(this, map, true);
 	}
 
 	/**
@@ -324,34 +417,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 
 		if (this.all.size() == 0) Log.log("box.warning", () ->" breadthFirst called on a box not connected to the box graph");
 
-		return new Lazy<Box>() {
-			LinkedHashSet<Box> ret = null;
-			Set<Box> thisLevel = null;
-
-			protected Iterator<Box> initialize() {
-
-				ret = new LinkedHashSet<>();
-				ret.add(Box.this);
-				thisLevel = ret;
-				return ret.iterator();
-			}
-
-			@Override
-			protected Iterator<Box> pull() {
-				if (thisLevel.size() == 0) return null;
-
-				Set<Box> nextLevel = new LinkedHashSet<>();
-				for (Box b : thisLevel)
-						nextLevel.addAll(map.apply(b));
-				nextLevel.removeAll(ret);
-				ret.addAll(nextLevel);
-				thisLevel = nextLevel;
-
-				return thisLevel.iterator();
-
-			}
-		}.reset()
-		 .stream();
+		return Traversal.stream(this, map, false);
 	}
 
 	@Override
@@ -403,7 +469,22 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 
 		if (m.equals("_")) return new Subscope(this);
 
-		Dict.Prop cannon = new Dict.Prop(m).toCannon();
+		return asMap_getKeyed(Dict.Canonical.intern(m), m);
+	}
+
+	@Override
+	@HiddenInAutocomplete
+	public Object asMap_key(String p) {
+		if (p == null || p.equals("_")) return p;
+		return Dict.Canonical.intern(p);
+	}
+
+	@Override
+	@HiddenInAutocomplete
+	public Object asMap_getKeyed(Object key, String m) {
+		if (!(key instanceof Dict.Prop)) return asMap_get(m);
+
+		Dict.Prop cannon = (Dict.Prop) key;
 
 		Object ret = null;
 
@@ -441,19 +522,26 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 	@Override
 	@HiddenInAutocomplete
 	public boolean asMap_delete(Object o) {
-		return Missing.delete(this, new Dict.Prop("" + o)) != null;
+		return Missing.delete(this, Dict.Canonical.key("" + o)) != null;
 	}
 
 	@Override
 	@HiddenInAutocomplete
 	public Object asMap_set(String name, Object value) {
+		return asMap_setKeyed(Dict.Canonical.intern(name), name, value);
+	}
+
+	@Override
+	@HiddenInAutocomplete
+	public Object asMap_setKeyed(Object key, String name, Object value) {
+		if (!(key instanceof Dict.Prop)) return asMap_set(name, value);
 
 		// workaround bug in Nashorn
 		if (value instanceof ConsString) value = value.toString();
 
 
 //		Log.log("underscore.debug", " underscore box set :" + name + " to " + value.getClass() + " <" + Function.class.getName() + ">");
-		Dict.Prop cannon = new Dict.Prop(name).toCannon();
+		Dict.Prop cannon = (Dict.Prop) key;
 
 //		Log.log("underscore.debug", " cannonical type information " + cannon.getTypeInformation());
 
@@ -559,7 +647,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 					.filter(x -> x.startsWith(prefix))
 					.sorted()
 					.map(x -> {
-						Dict.Prop q = new Dict.Prop(x).findCannon();
+						Dict.Prop q = Dict.Canonical.findCannon(x);
 						if (q == null) {
 							return null;
 						} else return new Completion(-1, -1, x, "<span class='type'>" + Conversions.fold(q.getTypeInformation(), t -> compress(
@@ -585,6 +673,7 @@ public class Box implements Linker.AsMap, HandlesCompletion {
 	}
 
 	private String format(String documentation) {
+		if (peg == null) peg = new PegDownProcessor();
 		String doc = peg.markdownToHtml(documentation == null ? "" : documentation);
 //		String doc = documentation;
 		doc = doc.trim();
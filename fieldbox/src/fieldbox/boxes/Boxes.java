@@ -1,6 +1,7 @@
 package fieldbox.boxes;
 
 import field.app.RunLoop;
+import field.app.Profiler;
 import field.graphics.Scene;
 import field.utility.Dict;
 import fieldbox.execution.InverseDebugMapping;
@@ -70,11 +71,16 @@ public class Boxes {
 					      Map.Entry<String, Supplier<Boolean>> n = r.next();
 					      try {
 						      if (n.getKey()
-							   .startsWith("main.")) try {
-							      if (!n.getValue()
-								    .get()) r.remove();
-						      } catch (Throwable t) {
-							      t.printStackTrace();
+							   .startsWith("main.")) {
+							      long start = Profiler.begin();
+							      try {
+								      if (!n.getValue()
+									    .get()) r.remove();
+							      } catch (Throwable t) {
+								      t.printStackTrace();
+							      } finally {
+								      Profiler.end(start, Profiler.insideRunLoop, n.getKey(), pass);
+							      }
 						      }
 					      }
 					      catch(Throwable t)
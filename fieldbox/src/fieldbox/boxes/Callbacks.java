@@ -103,6 +103,9 @@ public class Callbacks {
 		Rect r2 = rect.duplicate();
 		r.accept(r2);
 
+		// nothing to tell anybody about (and nothing for Watches or FrameChangedHash to consume)
+		if (r2.equals(rect)) return;
+
 		Rect r3 = Callbacks.frameChange(b, r2);
 
 		b.properties.put(Box.frame, r3);
@@ -103,6 +103,9 @@ public class Drawing extends Box {
 
 	static protected void dirty(Box b, String explicitLayerName)
 	{
+		// an idle main loop needs waking even if there's no window to repaint (yet)
+		RunLoop.main.requestFrame();
+
 		b.find(Boxes.root, b.both())
 		 .findFirst()
 		 .map(x -> x.properties.put(needRepaint, true));
@@ -497,6 +500,13 @@ public class Drawing extends Box {
 		return new Vec2(scale);
 	}
 
+	/**
+	 * how many pixels one unit of drawing space currently covers (horizontally)
+	 */
+	public float getPixelsPerUnit() {
+		return (float) (scale.x * boxScale.x);
+	}
+
 	public Vec2 getTranslation() {
 		return new Vec2(translation);
 	}
@@ -540,6 +550,18 @@ public class Drawing extends Box {
 		return new Rect(-translation.x, -translation.y, window.getWidth() * scale.x, window.getHeight() * scale.y);
 	}
 
+	/**
+	 * returns the drawing coordinates that actually end up inside the window, computed the same way that our shaders compute them (that is, taking scale and boxScale into account).
+	 */
+	public Rect getVisibleBounds(Box b) {
+		FieldBoxWindow window = b.first(Boxes.window, b.both())
+					 .get();
+		Vec2 t = getTranslationRounded();
+		double sx = scale.x * boxScale.x;
+		double sy = scale.y * boxScale.y;
+		return new Rect(-t.x / sx - 0.5, -t.y / sy - 0.5, window.getWidth() / sx, window.getHeight() / sy);
+	}
+
 	public interface Drawer {
 		void draw(Drawing context);
 	}
@@ -1,6 +1,7 @@
 package fieldbox.boxes;
 
 
+import field.app.RunLoop;
 import field.graphics.*;
 import field.linalg.Mat4;
 import field.linalg.Vec2;
@@ -12,6 +13,7 @@ import fieldbox.boxes.plugins.FileBrowser;
 import java.awt.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -69,6 +71,31 @@ public class FLineDrawing extends Box implements Drawing.Drawer {
 									      .toCannon()
 									      .doc("which layer to draw to? Defaults to `__main__`, the other alternative right now is `__glass__` to draw on the blur layer above Field");
 
+	static public final Dict.Prop<Boolean> noCull = new Dict.Prop<>("noCull").type()
+										  .toCannon()
+										  .doc("set to true on an FLine to draw it even when it's entirely outside the window");
+
+	/**
+	 * skip FLines whose bounds are entirely outside the window. Only the layers that are repainted when the view pans or zooms (see Drawing.setTranslation) are culled
+	 */
+	static public boolean cull = true;
+
+	/**
+	 * how far (in drawing coordinates) outside of the window a line can be and still get drawn
+	 */
+	static public float cullMargin = 50;
+
+	/**
+	 * prepare bulkLines across RunLoop.workerPool (see prepareInParallel) when a box has at least 'parallelThreshold' of them
+	 */
+	static public boolean parallel = true;
+	static public int parallelThreshold = 64;
+
+	static protected final Set<String> culledLayers = new LinkedHashSet<>(Arrays.asList("__main__", "glass"));
+
+	protected Rect visible = null;
+	protected float pixelsPerUnit = 1;
+
 	public FLineDrawing(Box root) {
 		this.properties.putToList(Drawing.drawers, this);
 
@@ -194,6 +221,10 @@ public class FLineDrawing extends Box implements Drawing.Drawer {
 		Util.Errors error = new Util.Errors();
 		Optional<TextDrawing> text = first(TextDrawing.textDrawing, both());
 
+		visible = cull ? context.getVisibleBounds(this)
+					.inset(-cullMargin) : null;
+		pixelsPerUnit = context.getPixelsPerUnit();
+
 		this.breadthFirst(this.both())
 		    .forEach(Util.wrap(x -> {
 
@@ -202,6 +233,7 @@ public class FLineDrawing extends Box implements Drawing.Drawer {
 			    if (x.properties.isTrue(Box.hidden, false)) return;
 
 			    String defaultLayer = x.properties.getOr(layer, () -> "__main__");
+			    GraphicsMetrics.attribute(defaultLayer, x);
 
 			    Map<String, Function<Box, FLine>> drawing = x.properties.computeIfAbsent(frameDrawing, this::defaultdrawsLines);
 			    List<FLine> all = new ArrayList<>();
@@ -265,12 +297,15 @@ public class FLineDrawing extends Box implements Drawing.Drawer {
 				    final List<FLine> finalAll = all;
 				    Log.log("drawing.trace", ()->" --> " + finalAll);
 
+				    prepareInParallel(all, defaultLayer);
 				    all.forEach(fline -> dispatchLine(fline, context, text, defaultLayer));
 			    }
 			    Log.log("drawing.trace", ()->"lines for " + x + " finished");
 
 		    }, error));
 
+		GraphicsMetrics.attribute(null, null);
+
 		if (error.hasErrors()) {
 			error.getErrors()
 			     .stream()
@@ -281,6 +316,40 @@ public class FLineDrawing extends Box implements Drawing.Drawer {
 		}
 	}
 
+	/**
+	 * Flattens (and, for thickened lines, outlines) a box's bulkLines across RunLoop.workerPool before they are dispatched, so that dispatchLine is left with copying the results into the
+	 * MeshBuilders in order. Lines that haven't changed since they were last prepared cost nothing here. Anything that goes wrong is ignored, the line is then simply drawn the usual way by
+	 * dispatchLine (where the error will be reported properly).
+	 */
+	protected void prepareInParallel(List<FLine> all, String defaultLayer) {
+		if (!parallel || all.size() < parallelThreshold) return;
+
+		int chunks = Math.min(all.size(), Runtime.getRuntime()
+							 .availableProcessors());
+		List<Callable<Object>> tasks = new ArrayList<>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			int from = c * all.size() / chunks;
+			int to = (c + 1) * all.size() / chunks;
+			tasks.add(() -> {
+				for (int i = from; i < to; i++) {
+					FLine f = all.get(i);
+					try {
+						if (!isCulled(f, f.attributes.getOr(layer, () -> defaultLayer))) StandardFLineDrawing.prepare(f);
+					} catch (Throwable t) {
+						Log.log("drawing.error", () -> " failed to prepare " + f + " on a worker, it will be drawn in the usual way " + t);
+					}
+				}
+				return null;
+			});
+		}
+		try {
+			RunLoop.workerPool.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread()
+			      .interrupt();
+		}
+	}
+
 	protected void dispatchLine(FLine fline, Drawing context, Optional<TextDrawing> text) {
 		dispatchLine(fline, context, text, "__main__");
 	}
@@ -288,11 +357,29 @@ public class FLineDrawing extends Box implements Drawing.Drawer {
 	protected void dispatchLine(FLine fline, Drawing context, Optional<TextDrawing> text, String defaultLayer) {
 		String layerName = fline.attributes.getOr(layer, () -> defaultLayer);
 
+		if (isCulled(fline, layerName)) return;
+
 		MeshBuilder line = context.getLine(layerName);
 		MeshBuilder mesh = context.getMesh(layerName);
 		MeshBuilder points = context.getPoints(layerName);
 
-		StandardFLineDrawing.dispatchLine(fline, mesh, line, points, text, layerName);
+		GraphicsMetrics.attributeLayer(layerName);
+		StandardFLineDrawing.dispatchLine(fline, mesh, line, points, text, layerName, pixelsPerUnit);
+	}
+
+	protected boolean isCulled(FLine fline, String layerName) {
+		if (visible == null || !culledLayers.contains(layerName)) return false;
+
+		// text is laid out by TextDrawing, FLine.bounds() knows nothing about how big it is
+		if (fline.attributes.isTrue(hasText, false) || fline.attributes.isTrue(noCull, false)) return false;
+
+		Rect r = fline.bounds();
+		if (r == null) return false;
+
+		BasicStroke s = fline.attributes.getOr(thicken, () -> null);
+		float pad = Math.max(1, s == null ? 0 : s.getLineWidth());
+		return !r.inset(-pad)
+			 .intersects(visible);
 	}
 
 	protected Map<String, Function<Box, FLine>> defaultdrawsLines(Dict.Prop<Map<String, Function<Box, FLine>>> k) {
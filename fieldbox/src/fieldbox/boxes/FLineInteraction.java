@@ -91,6 +91,10 @@ public class FLineInteraction extends Box implements Drawing.Drawer, Mouse.OnMou
 	}
 
 	public boolean intersects(FLine f, Vec2 position) {
+		// cheap rejection using the cached bounds of the line before we build (or look up) its Area
+		Rect bounds = f.bounds();
+		if (bounds == null || !bounds.intersects(position)) return false;
+
 		Cached<FLine, Object, Area> area = f.attributes
 			    .computeIfAbsent(projectedArea, (k) -> new Cached<FLine, Object, Area>((fline, previously) -> projectFLineToArea(fline), (fline) -> new Object[]{fline, fline
 					.getModCount()}));
@@ -14,6 +14,7 @@ import fieldbox.ui.Cursors;
 import java.awt.*;
 import java.util.*;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -53,11 +54,7 @@ public class FrameManipulation extends Box  {
 							.findFirst();
 			Vec2 point =new Vec2(e.after.mx, e.after.my);
 
-			Optional<Box> hit = breadthFirst(both()).filter(b -> frame(b) != null)
-								.filter(b -> !b.properties.isTrue(Box.hidden, false))
-								.filter(b -> frame(b).intersects(point))
-								.sorted((a, b) -> Float.compare(order(frame(a)), order(frame(b))))
-								.findFirst();
+			Optional<Box> hit = hit(point);
 
 			if (hit.isPresent()) {
 				Box hitBox = hit.get();
@@ -156,11 +153,7 @@ public class FrameManipulation extends Box  {
 						.findFirst();
 		Vec2 point = new Vec2(e.after.mx, e.after.my);
 
-		Optional<Box> hit = breadthFirst(both()).filter(b -> frame(b) != null)
-							.filter(b -> !b.properties.isTrue(Box.hidden, false))
-							.filter(b -> frame(b).intersects(point))
-							.sorted((a, b) -> Float.compare(order(frame(a)), order(frame(b))))
-							.findFirst();
+		Optional<Box> hit = hit(point);
 
 		startTranslationFeedback();
 
@@ -217,12 +210,7 @@ public class FrameManipulation extends Box  {
 
 		Vec2 point = new Vec2(e.after.mx, e.after.my);
 
-		Optional<Box> hit = breadthFirst(both()).filter(b -> frame(b) != null)
-							.filter(b -> !b.properties.isTrue(Box.hidden, false))
-							//.filter(b -> !b.properties.isTrue(Mouse.isSticky, false))
-							.filter(b -> frame(b).intersects(point))
-							.sorted((a, b) -> Float.compare(order(frame(a)), order(frame(b))))
-							.findFirst();
+		Optional<Box> hit = hit(point);
 
 
 		Log.log("selection", ()->"hit box is " + hit.orElse(null));
@@ -401,6 +389,9 @@ public class FrameManipulation extends Box  {
 				  Map<Box, Boolean> frozenAt = new LinkedHashMap<Box, Boolean>();
 				  breadthFirst(both()).forEach(x -> frozenAt.put(x, x.properties.isTrue(Mouse.isSelected, false)));
 
+				  Optional<SpatialIndex> index = find(SpatialIndex.spatialIndex, both()).findFirst();
+				  Set<Box> marqueed = new LinkedHashSet<>();
+
 				  Drawing.dirty(this);
 
 				  Vec2 downAt = new Vec2(point);
@@ -416,14 +407,33 @@ public class FrameManipulation extends Box  {
 
 					  if (termination) this.properties.removeFromMap(FLineDrawing.frameDrawing, "__marquee__");
 					  else {
-						  breadthFirst(both()).forEach(x -> {
+						  Rect marquee = new Rect(Math.min(downAt.x, point.x), Math.min(downAt.y, point.y), Math.max(downAt.x, point.x) - Math.min(downAt.x, point.x),
+									  Math.max(downAt.y, point.y) - Math.min(downAt.y, point.y));
+
+						  if (index.isPresent()) {
+							  // only the boxes inside the marquee now, and the ones that were inside it last time, can change
+							  Set<Box> inside = new LinkedHashSet<>();
+							  for (Box x : index.get()
+									    .within(marquee))
+								  if (!x.properties.isTrue(Box.hidden, false)) inside.add(x);
+
+							  for (Box x : marqueed) {
+								  Boolean b = frozenAt.get(x);
+								  if (!inside.contains(x) && (b == null || !b))
+									  Callbacks.transition(x, Mouse.isSelected, false, false, Callbacks.onSelect, Callbacks.onDeselect);
+							  }
+							  for (Box x : inside)
+								  Callbacks.transition(x, Mouse.isSelected, true, false, Callbacks.onSelect, Callbacks.onDeselect);
+
+							  marqueed.clear();
+							  marqueed.addAll(inside);
+						  } else breadthFirst(both()).forEach(x -> {
 							  Boolean b = frozenAt.get(x);
 
 							  Rect f = frame(x);
 							  if (f == null) return;
 
-							  if (f.intersects(new Rect(Math.min(downAt.x, point.x), Math.min(downAt.y, point.y), Math.max(downAt.x, point.x) - Math.min(downAt.x, point.x),
-										    Math.max(downAt.y, point.y) - Math.min(downAt.y, point.y))) && (!x.properties.isTrue(Box.hidden, false))) {
+							  if (f.intersects(marquee) && (!x.properties.isTrue(Box.hidden, false))) {
 								  Callbacks.transition(x, Mouse.isSelected, true, false, Callbacks.onSelect, Callbacks.onDeselect);
 							  } else {
 								  if (b == null || !b) Callbacks.transition(x, Mouse.isSelected, false, false, Callbacks.onSelect, Callbacks.onDeselect);
@@ -521,6 +531,31 @@ public class FrameManipulation extends Box  {
 		return Math.abs(r.w) + Math.abs(r.h);
 	}
 
+	/**
+	 * the smallest (by order()) visible box under 'point', the first one in breadth first order if there's a tie
+	 */
+	protected Optional<Box> hit(Vec2 point) {
+		Box[] best = {null};
+		float[] bestOrder = {Float.POSITIVE_INFINITY};
+		Consumer<Box> c = b -> {
+			Rect f = frame(b);
+			if (f == null || b.properties.isTrue(Box.hidden, false) || !f.intersects(point)) return;
+			float o = order(f);
+			if (best[0] == null || o < bestOrder[0]) {
+				best[0] = b;
+				bestOrder[0] = o;
+			}
+		};
+
+		Optional<SpatialIndex> index = find(SpatialIndex.spatialIndex, both()).findFirst();
+		if (index.isPresent()) index.get()
+					    .at(point)
+					    .forEach(c);
+		else forEachBreadthFirst(both(), c);
+
+		return Optional.ofNullable(best[0]);
+	}
+
 	protected void feedback(Box b, Rect r0, Rect r, int exp) {
 		if (!r0.equals(r) && (b.properties.getFromMap(FLineDrawing.frameDrawing, "__feedback__") != null || exp == -1 || true))
 			b.properties.putToMap(FLineDrawing.frameDrawing, "__feedback__", FLineDrawing.expires(box -> {
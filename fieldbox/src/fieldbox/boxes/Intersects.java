@@ -5,6 +5,7 @@ import field.linalg.Vec2;
 import field.utility.Rect;
 
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * This is becoming a pattern: event processing starts either at a mouse over'd box, or a selected box, or the root
@@ -14,20 +15,31 @@ public class Intersects {
 	static public Box startAt(Window.MouseState e, Box root) {
 		Vec2 point = e == null ? null : new Vec2(e.mx, e.my);
 
-		Optional<Box> hit = point == null ? Optional.empty() : root.breadthFirst(root.both())
-									   .filter(b -> frame(b) != null)
-									   .filter(b -> !b.properties.isTrue(Box.hidden, false))
-									   .filter(b -> point == null || frame(b).intersects(point))
-									   .filter(x -> !x.properties.isTrue(Mouse.isSticky, false))
-									   .sorted((a, b) -> Float.compare(order(frame(a)), order(frame(b))))
-									   .findFirst();
-
-		Box startAt = hit.orElseGet(() -> root.breadthFirst(root.both())
-						      .filter(x -> x.properties.isTrue(Mouse.isSelected, false) && !x.properties.isTrue(Mouse.isSticky, false))
-						      .findFirst()
-						      .orElseGet(() -> root));
-
-		return startAt;
+		Box[] hit = {null};
+		float[] hitOrder = {Float.POSITIVE_INFINITY};
+		Consumer<Box> c = b -> {
+			Rect f = frame(b);
+			if (f == null || b.properties.isTrue(Box.hidden, false) || !f.intersects(point) || b.properties.isTrue(Mouse.isSticky, false)) return;
+			float o = order(f);
+			if (hit[0] == null || o < hitOrder[0]) {
+				hit[0] = b;
+				hitOrder[0] = o;
+			}
+		};
+
+		if (point != null) {
+			Optional<SpatialIndex> index = root.find(SpatialIndex.spatialIndex, root.both())
+							   .findFirst();
+			if (index.isPresent()) index.get()
+						    .at(point)
+						    .forEach(c);
+			else root.forEachBreadthFirst(root.both(), c);
+		}
+		if (hit[0] != null) return hit[0];
+
+		Box selected = root.findBreadthFirst(root.both(), x -> x.properties.isTrue(Mouse.isSelected, false) && !x.properties.isTrue(Mouse.isSticky, false));
+
+		return selected == null ? root : selected;
 
 	}
 
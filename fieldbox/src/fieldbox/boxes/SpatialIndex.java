@@ -0,0 +1,305 @@
+package fieldbox.boxes;
+
+import field.linalg.Vec2;
+import field.utility.Dict;
+import field.utility.Rect;
+
+import java.util.*;
+
+/**
+ * Plugin: maintains a uniform grid over the frames of all the boxes in the graph, so that hit-testing and rubber-band selection don't have to visit (and sort) every box.
+ * <p>
+ * Changes to Box.frame are pushed to us by Dict (see Dict.addChangeListener) and applied incrementally. Changes to the topology of the graph are reconciled, lazily, the next time the index is
+ * queried: the graph is walked once, boxes that have appeared are placed, boxes that have gone are removed, and everything else stays in its cells. Frames are Mutable and are often changed in
+ * place without a put (_.frame.x += 10, Alignment), so once per update cycle (see Boxes.insideRunLoop) the first query also checks each entry against the Rect that's actually in the box and
+ * moves any that differ. An in place change made after that, in the same cycle, is seen by the next one (or call revalidate()). Results come back in breadth first order (as of the last
+ * reconcile), so callers that break ties by "first found" see the same boxes they always did.
+ * <p>
+ * The index knows nothing about Box.hidden, callers filter for that themselves.
+ */
+public class SpatialIndex extends Box {
+
+	static public final Dict.Prop<SpatialIndex> spatialIndex = new Dict.Prop<>("_spatialIndex").type()
+												   .toCannon()
+												   .doc("a spatial index over the frames of all the boxes in the graph");
+
+	static public int cellSize = 256;
+
+	// boxes that span more than this many cells go into 'oversized' rather than into each cell
+	static public int maxCellsPerBox = 64;
+
+	private final Box root;
+
+	protected Map<Long, List<Entry>> cells = new HashMap<>();
+	protected Map<Box, Entry> entries = new IdentityHashMap<>();
+	protected List<Entry> oversized = new ArrayList<>();
+
+	protected Dict.Journal journal = new Dict.Journal();
+	protected long topologyWas = -1;
+	// set once per update cycle, the next query checks for in place changes to frames
+	protected boolean stale = true;
+	protected int nextOrder = 0;
+
+	// the extent of the grid (in cells), only ever grows between rebuilds
+	protected int gx0 = 0, gx1 = 0, gy0 = 0, gy1 = 0;
+
+	protected class Entry {
+		final Box box;
+		int order;
+		// 'live' is the Rect in the box's properties, 'frame' is a copy of it as of when it was placed
+		Rect live;
+		Rect frame;
+		int cx0, cy0, cx1, cy1;
+		boolean isOversized;
+
+		Entry(Box box) {
+			this.box = box;
+		}
+	}
+
+	public SpatialIndex(Box root) {
+		this.root = root;
+		Dict.addChangeListener(Box.frame, journal);
+		this.properties.put(spatialIndex, this);
+		this.properties.putToMap(Boxes.insideRunLoop, "main.__spatialIndex__", () -> {
+			stale = true;
+			return true;
+		});
+	}
+
+	/**
+	 * all boxes whose frames contain 'point', in breadth first order
+	 */
+	public List<Box> at(Vec2 point) {
+		update();
+		List<Entry> found = new ArrayList<>();
+		List<Entry> c = cells.get(key(cell(point.x), cell(point.y)));
+		if (c != null) for (Entry e : c)
+			if (e.frame.intersects(point)) found.add(e);
+		for (Entry e : oversized)
+			if (e.frame.intersects(point)) found.add(e);
+		return boxes(found);
+	}
+
+	/**
+	 * all boxes whose frames intersect 'r', in breadth first order
+	 */
+	public List<Box> within(Rect r) {
+		update();
+		Set<Entry> found = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		int cx0 = cell(Math.min(r.x, r.x + r.w));
+		int cx1 = cell(Math.max(r.x, r.x + r.w));
+		int cy0 = cell(Math.min(r.y, r.y + r.h));
+		int cy1 = cell(Math.max(r.y, r.y + r.h));
+
+		if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > entries.size()) {
+			// the query is bigger than the index, just look at everything
+			for (Entry e : entries.values())
+				if (e.frame != null && e.frame.intersects(r)) found.add(e);
+		} else {
+			for (int x = cx0; x <= cx1; x++)
+				for (int y = cy0; y <= cy1; y++) {
+					List<Entry> c = cells.get(key(x, y));
+					if (c != null) for (Entry e : c)
+						if (e.frame.intersects(r)) found.add(e);
+				}
+			for (Entry e : oversized)
+				if (e.frame.intersects(r)) found.add(e);
+		}
+		return boxes(found);
+	}
+
+	/**
+	 * the 'k' boxes whose frames are closest to 'point' (boxes that contain point are at distance 0), nearest first
+	 */
+	public List<Box> nearest(Vec2 point, int k) {
+		update();
+		if (k <= 0 || entries.size() == 0) return Collections.emptyList();
+
+		PriorityQueue<Object[]> best = new PriorityQueue<>((a, b) -> Double.compare((Double) b[1], (Double) a[1]));
+		Set<Entry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		for (Entry e : oversized)
+			offer(best, seen, e, point, k);
+
+		int cx = cell(point.x);
+		int cy = cell(point.y);
+		int maxRing = Math.max(Math.max(Math.abs(gx0 - cx), Math.abs(gx1 - cx)), Math.max(Math.abs(gy0 - cy), Math.abs(gy1 - cy)));
+
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// everything in cells further out than this ring is at least this far away
+			if (best.size() == k && (Double) best.peek()[1] < (ring - 1) * (double) cellSize) break;
+
+			for (int x = cx - ring; x <= cx + ring; x++)
+				for (int y = cy - ring; y <= cy + ring; y++) {
+					if (Math.abs(x - cx) != ring && Math.abs(y - cy) != ring) continue;
+					List<Entry> c = cells.get(key(x, y));
+					if (c != null) for (Entry e : c)
+						offer(best, seen, e, point, k);
+				}
+		}
+
+		ArrayList<Object[]> r = new ArrayList<>(best);
+		r.sort((a, b) -> {
+			int q = Double.compare((Double) a[1], (Double) b[1]);
+			return q != 0 ? q : Integer.compare(((Entry) a[0]).order, ((Entry) b[0]).order);
+		});
+		List<Box> ret = new ArrayList<>(r.size());
+		for (Object[] o : r)
+			ret.add(((Entry) o[0]).box);
+		return ret;
+	}
+
+	private void offer(PriorityQueue<Object[]> best, Set<Entry> seen, Entry e, Vec2 point, int k) {
+		if (!seen.add(e)) return;
+		double d = distance(e.frame, point);
+		if (best.size() < k) best.add(new Object[]{e, d});
+		else if (d < (Double) best.peek()[1]) {
+			best.poll();
+			best.add(new Object[]{e, d});
+		}
+	}
+
+	static protected double distance(Rect r, Vec2 p) {
+		double x0 = Math.min(r.x, r.x + r.w), x1 = Math.max(r.x, r.x + r.w);
+		double y0 = Math.min(r.y, r.y + r.h), y1 = Math.max(r.y, r.y + r.h);
+		double dx = p.x < x0 ? x0 - p.x : p.x > x1 ? p.x - x1 : 0;
+		double dy = p.y < y0 ? y0 - p.y : p.y > y1 ? p.y - y1 : 0;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private List<Box> boxes(Collection<Entry> found) {
+		ArrayList<Entry> f = new ArrayList<>(found);
+		f.sort((a, b) -> Integer.compare(a.order, b.order));
+		List<Box> r = new ArrayList<>(f.size());
+		for (Entry e : f)
+			r.add(e.box);
+		return r;
+	}
+
+	/**
+	 * brings the index up to date. Called automatically by the queries
+	 */
+	public void update() {
+		if (topologyWas != Box.topology.get()) reconcile();
+
+		Map<Dict, LinkedHashSet<Dict.Prop>> changes = journal.drain();
+		for (Dict d : changes.keySet()) {
+			Entry e = entries.get(d.getOwner());
+			if (e != null) place(e, e.box.properties.get(Box.frame));
+			// a box that's new to us, and hence new to the graph, will have bumped the topology
+		}
+
+		if (stale) revalidate();
+	}
+
+	/**
+	 * moves any entry whose frame has been changed in place since it was placed. Done automatically by the first query in each update cycle
+	 */
+	public void revalidate() {
+		stale = false;
+		for (Entry e : entries.values())
+			if (e.live != null && !e.live.equals(e.frame)) place(e, e.live);
+	}
+
+	/**
+	 * walks the graph, placing boxes that we haven't seen before and removing boxes that are no longer connected to the root. Boxes that are still there keep their cells, only their order is
+	 * updated
+	 */
+	protected void reconcile() {
+		topologyWas = Box.topology.get();
+		nextOrder = 0;
+
+		Map<Box, Entry> was = entries;
+		entries = new IdentityHashMap<>(Math.max(16, was.size() * 2));
+
+		root.forEachBreadthFirst(root.both(), x -> {
+			Entry e = was.remove(x);
+			if (e == null) {
+				e = new Entry(x);
+				e.order = nextOrder++;
+				entries.put(x, e);
+				place(e, x.properties.get(Box.frame));
+			} else {
+				e.order = nextOrder++;
+				entries.put(x, e);
+			}
+		});
+
+		for (Entry e : was.values())
+			remove(e);
+	}
+
+	/**
+	 * throws everything away and indexes the graph from scratch
+	 */
+	public void rebuild() {
+		topologyWas = Box.topology.get();
+		journal.drain();
+		stale = false;
+
+		cells.clear();
+		entries.clear();
+		oversized.clear();
+		nextOrder = 0;
+		gx0 = gx1 = gy0 = gy1 = 0;
+
+		root.forEachBreadthFirst(root.both(), x -> {
+			Entry e = new Entry(x);
+			e.order = nextOrder++;
+			entries.put(x, e);
+			place(e, x.properties.get(Box.frame));
+		});
+	}
+
+	protected void place(Entry e, Rect frame) {
+		remove(e);
+		e.live = frame;
+		if (frame == null) {
+			e.frame = null;
+			return;
+		}
+		e.frame = frame.duplicate();
+		e.cx0 = cell(Math.min(frame.x, frame.x + frame.w));
+		e.cx1 = cell(Math.max(frame.x, frame.x + frame.w));
+		e.cy0 = cell(Math.min(frame.y, frame.y + frame.h));
+		e.cy1 = cell(Math.max(frame.y, frame.y + frame.h));
+
+		if ((long) (e.cx1 - e.cx0 + 1) * (e.cy1 - e.cy0 + 1) > maxCellsPerBox) {
+			e.isOversized = true;
+			oversized.add(e);
+		} else {
+			e.isOversized = false;
+			gx0 = Math.min(gx0, e.cx0);
+			gx1 = Math.max(gx1, e.cx1);
+			gy0 = Math.min(gy0, e.cy0);
+			gy1 = Math.max(gy1, e.cy1);
+			for (int x = e.cx0; x <= e.cx1; x++)
+				for (int y = e.cy0; y <= e.cy1; y++)
+					cells.computeIfAbsent(key(x, y), k -> new ArrayList<>(4))
+					     .add(e);
+		}
+	}
+
+	protected void remove(Entry e) {
+		if (e.frame == null) return;
+		if (e.isOversized) oversized.remove(e);
+		else for (int x = e.cx0; x <= e.cx1; x++)
+			for (int y = e.cy0; y <= e.cy1; y++) {
+				List<Entry> c = cells.get(key(x, y));
+				if (c != null) {
+					c.remove(e);
+					if (c.size() == 0) cells.remove(key(x, y));
+				}
+			}
+	}
+
+	static protected int cell(double v) {
+		return (int) Math.floor(v / cellSize);
+	}
+
+	static protected long key(int x, int y) {
+		return (((long) x) << 32) | (y & 0xffffffffL);
+	}
+}
@@ -0,0 +1,227 @@
+package fieldbox.boxes;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Allocation-free breadth first traversal of the Box graph.
+ * <p>
+ * Rather than keeping sets of visited boxes, each traversal claims one of a small number of "slots". Every Box has a mark per slot, and a box is visited if its mark for this slot equals the
+ * current epoch of the slot. Claiming a slot bumps its epoch, which clears all the marks at once. Slots make traversals safe to nest (a visitor can start another traversal) and safe to run on
+ * more than one thread. Should we run out of slots we fall back to an IdentityHashMap.
+ * <p>
+ * The queue is a ring buffer that belongs to the slot and is reused from traversal to traversal. The order in which boxes are visited is exactly the level-by-level order that Box.breadthFirst
+ * has always produced.
+ * <p>
+ * stream(...) is the same traversal as a lazy Stream. A stream that is consumed to the end (collect, forEach, ...) runs in a slot just like breadthFirst(...). One that stops early (findFirst,
+ * anyMatch, ...) pulls boxes one at a time and can't hold a slot (nothing would tell us when it was abandoned), so it keeps its own visited set, but it only visits what is actually pulled.
+ */
+public class Traversal {
+
+	static public final int SLOTS = 8;
+
+	static private final AtomicInteger inUse = new AtomicInteger(0);
+	static private final Traversal[] pool = new Traversal[SLOTS];
+
+	static {
+		for (int i = 0; i < SLOTS; i++)
+			pool[i] = new Traversal(i);
+	}
+
+	private final int slot;
+	private long epoch = 0;
+
+	private Box[] queue = new Box[64];
+	private int head = 0;
+	private int size = 0;
+
+	private Traversal(int slot) {
+		this.slot = slot;
+	}
+
+	/**
+	 * visits every box reachable from 'start' (including 'start') via 'direction' in breadth first order, until 'visitor' returns true. Returns the box that the visitor stopped on or null if the
+	 * visitor never returned true. If 'skipDisconnected' is set then boxes that are disconnected are neither visited nor traversed through.
+	 */
+	static public Box breadthFirst(Box start, Function<Box, Collection<Box>> direction, boolean skipDisconnected, Predicate<Box> visitor) {
+		Traversal t = acquire();
+		if (t == null) return fallback(start, direction, skipDisconnected, visitor);
+		try {
+			return t.run(start, direction, skipDisconnected, visitor);
+		} finally {
+			t.release();
+		}
+	}
+
+	/**
+	 * a lazy, ordered Stream of every box reachable from 'start' (including 'start') via 'direction' in breadth first order
+	 */
+	static public Stream<Box> stream(Box start, Function<Box, Collection<Box>> direction, boolean skipDisconnected) {
+		return StreamSupport.stream(new Walk(start, direction, skipDisconnected), false);
+	}
+
+	static private class Walk implements Spliterator<Box> {
+		final Box start;
+		final Function<Box, Collection<Box>> direction;
+		final boolean skipDisconnected;
+
+		// only allocated if we are pulled from one box at a time
+		IdentityHashMap<Box, Boolean> seen;
+		ArrayDeque<Box> q;
+		boolean done = false;
+
+		Walk(Box start, Function<Box, Collection<Box>> direction, boolean skipDisconnected) {
+			this.start = start;
+			this.direction = direction;
+			this.skipDisconnected = skipDisconnected;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Box> action) {
+			if (done) return false;
+			if (q == null) {
+				seen = new IdentityHashMap<>();
+				q = new ArrayDeque<>();
+				seen.put(start, true);
+				q.add(start);
+			}
+			while (q.size() > 0) {
+				Box b = q.poll();
+				if (skipDisconnected && b.disconnected) continue;
+				action.accept(b);
+				for (Box n : direction.apply(b))
+					if (seen.put(n, true) == null) q.add(n);
+				return true;
+			}
+			done = true;
+			seen = null;
+			q = null;
+			return false;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super Box> action) {
+			if (done) return;
+			if (q != null) {
+				while (tryAdvance(action)) ;
+				return;
+			}
+			done = true;
+			breadthFirst(start, direction, skipDisconnected, x -> {
+				action.accept(x);
+				return false;
+			});
+		}
+
+		@Override
+		public Spliterator<Box> trySplit() {
+			return null;
+		}
+
+		@Override
+		public long estimateSize() {
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | DISTINCT | NONNULL;
+		}
+	}
+
+	static private Traversal acquire() {
+		while (true) {
+			int was = inUse.get();
+			int free = Integer.numberOfTrailingZeros(~was);
+			if (free >= SLOTS) return null;
+			if (inUse.compareAndSet(was, was | (1 << free))) {
+				Traversal t = pool[free];
+				t.epoch++;
+				return t;
+			}
+		}
+	}
+
+	private void release() {
+		// don't hang on to boxes that might otherwise be collected
+		for (int i = 0; i < size; i++)
+			queue[(head + i) & (queue.length - 1)] = null;
+		head = 0;
+		size = 0;
+
+		while (true) {
+			int was = inUse.get();
+			if (inUse.compareAndSet(was, was & ~(1 << slot))) return;
+		}
+	}
+
+	private Box run(Box start, Function<Box, Collection<Box>> direction, boolean skipDisconnected, Predicate<Box> visitor) {
+		mark(start);
+		offer(start);
+
+		while (size > 0) {
+			Box b = poll();
+			if (skipDisconnected && b.disconnected) continue;
+			if (visitor.test(b)) return b;
+
+			for (Box n : direction.apply(b)) {
+				if (!isMarked(n)) {
+					mark(n);
+					offer(n);
+				}
+			}
+		}
+		return null;
+	}
+
+	private boolean isMarked(Box b) {
+		return b.traversalMarks[slot] == epoch;
+	}
+
+	private void mark(Box b) {
+		b.traversalMarks[slot] = epoch;
+	}
+
+	private void offer(Box b) {
+		if (size == queue.length) {
+			Box[] q = new Box[queue.length * 2];
+			for (int i = 0; i < size; i++)
+				q[i] = queue[(head + i) & (queue.length - 1)];
+			queue = q;
+			head = 0;
+		}
+		queue[(head + size) & (queue.length - 1)] = b;
+		size++;
+	}
+
+	private Box poll() {
+		Box b = queue[head];
+		queue[head] = null;
+		head = (head + 1) & (queue.length - 1);
+		size--;
+		return b;
+	}
+
+	static private Box fallback(Box start, Function<Box, Collection<Box>> direction, boolean skipDisconnected, Predicate<Box> visitor) {
+		IdentityHashMap<Box, Boolean> seen = new IdentityHashMap<>();
+		ArrayDeque<Box> q = new ArrayDeque<>();
+		seen.put(start, true);
+		q.add(start);
+		while (q.size() > 0) {
+			Box b = q.poll();
+			if (skipDisconnected && b.disconnected) continue;
+			if (visitor.test(b)) return b;
+			for (Box n : direction.apply(b))
+				if (seen.put(n, true) == null) q.add(n);
+		}
+		return null;
+	}
+}
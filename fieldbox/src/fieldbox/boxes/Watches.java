@@ -2,16 +2,10 @@ package fieldbox.boxes;
 
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.SetMultimap;
-import field.app.RunLoop;
 import field.message.MessageQueue;
 import field.utility.*;
 
-import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.function.BiConsumer;
+import java.util.*;
 import java.util.function.Consumer;
 
 /**
@@ -30,29 +24,8 @@ public class Watches extends Box  {
 
 	public Watches()
 	{
-		this.messageQueue = new MessageQueue<Quad<Dict.Prop, Box,  Object, Object>, String>() {
-			@Override
-			protected Consumer<Boolean> makeQueueServiceThread(BiConsumer<String, Quad<Dict.Prop, Box,  Object, Object>> to) {
-
-				CompletableFuture<Boolean> stop = new CompletableFuture<Boolean>();
-
-				RunLoop.main.getLoop().attach(0, (x) -> {
-					try {
-						if (this.queue.size() > 0) Log.log("debug.messages", ()->" message queue :" + this.queue.size());
-
-						while (this.queue.peek() != null) {
-							Pair<String, Quad<Dict.Prop, Box, Object, Object>> m = this.queue.poll(1, TimeUnit.SECONDS);
-							if (m != null && !stop.isDone()) to.accept(m.first, m.second);
-						}
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				});
-
-				return x -> {
-				};
-			}
-		};
+		// handlers are free to touch the Box graph, so they are run on the main thread
+		this.messageQueue = new MessageQueue<>(MessageQueue.Delivery.mainThread);
 		this.properties.putToMap(Boxes.insideRunLoop, "main.__watch_updator__", this::update);
 		this.properties.put(watches, this);
 	}
@@ -61,29 +34,68 @@ public class Watches extends Box  {
 
 	SetMultimap<Dict.Prop, String> allWatches = MultimapBuilder.linkedHashKeys().linkedHashSetValues().build();
 
+	// changes to watched properties, pushed to us by Dict and drained once a frame
+	Dict.Journal journal = new Dict.Journal();
+
+	// watched properties whose values are Mutable. These can be changed in place (_.frame.x += 10) without a put, so they are still compared every frame
+	Map<Box, Set<Dict.Prop>> mutables = new WeakHashMap<>();
+
+	// set when a watch is added, so that boxes that already have the property get compared once
+	volatile boolean rescan = false;
+
 	protected boolean update() {
 
-		breadthFirst(both()).forEach((x) -> {
-			LinkedHashMap<Dict.Prop, Object> previous = x.properties.computeIfAbsent(watchedPrevious, (k) -> new LinkedHashMap<>());
-			for (Dict.Prop p : allWatches .keySet()) {
-				Object was = previous.get(p);
-				Object now = x.properties.get(p);
-
-				if (!Util.safeEq(was, now))
-				{
-					fire(p, x, was, now, allWatches .get(p));
-					// fetch it again, fire can change the value of the property
-					now = x.properties.get(p);
-					previous.put(p, now instanceof Mutable ? ((Mutable)now).duplicate() : now);
+		Map<Dict, LinkedHashSet<Dict.Prop>> changes = journal.drain();
+
+		if (rescan) {
+			rescan = false;
+			forEachBreadthFirst(both(), x -> compare(x, allWatches.keySet()));
+		}
+
+		for (Map.Entry<Dict, LinkedHashSet<Dict.Prop>> e : changes.entrySet()) {
+			if (!(e.getKey().getOwner() instanceof Box)) continue;
+			compare((Box) e.getKey().getOwner(), e.getValue());
+		}
+
+		if (mutables.size() > 0) for (Map.Entry<Box, Set<Dict.Prop>> e : new ArrayList<>(mutables.entrySet()))
+			compare(e.getKey(), e.getValue());
+
+		return true;
+	}
+
+	private void compare(Box x, Collection<Dict.Prop> props) {
+		// only boxes that are actually in the graph
+		if (x == null || x.disconnected || x._all().isEmpty()) return;
+
+		LinkedHashMap<Dict.Prop, Object> previous = x.properties.computeIfAbsent(watchedPrevious, (k) -> new LinkedHashMap<>());
+		for (Dict.Prop p : new ArrayList<>(props)) {
+			if (!allWatches.containsKey(p)) continue;
+
+			Object was = previous.get(p);
+			Object now = x.properties.get(p);
+
+			if (!Util.safeEq(was, now))
+			{
+				fire(p, x, was, now, allWatches .get(p));
+				// fetch it again, fire can change the value of the property
+				now = x.properties.get(p);
+				previous.put(p, now instanceof Mutable ? ((Mutable)now).duplicate() : now);
+
+				if (now instanceof Mutable) mutables.computeIfAbsent(x, k -> new LinkedHashSet<>())
+								    .add(p);
+				else {
+					Set<Dict.Prop> m = mutables.get(x);
+					if (m != null && m.remove(p) && m.isEmpty()) mutables.remove(x);
 				}
 			}
-		});
-		return true;
+		}
 	}
 
 	public String addWatch(Dict.Prop property, String address)
 	{
 		allWatches .put(property, address);
+		Dict.addChangeListener(property, journal);
+		rescan = true;
 		return address;
 	}
 
@@ -94,7 +106,9 @@ public class Watches extends Box  {
 
 		String address = UUID.randomUUID().toString();
 		allWatches .put(property, address);
-		messageQueue.register(x -> x.equals(address), x -> {
+		Dict.addChangeListener(property, journal);
+		rescan = true;
+		messageQueue.registerExact(address, x -> {
 			cc.accept(x);
 		});
 		return address;
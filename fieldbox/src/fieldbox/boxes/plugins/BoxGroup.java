@@ -197,7 +197,7 @@ public class BoxGroup extends Box implements IO.Loaded{
 		    .filter(x -> x != this)
 		    .forEach(x -> {
 			    collapsedState.put(x.properties.getOrConstruct(IO.id), x.disconnected);
-			    x.disconnected = true;
+			    x.setDisconnected(true);
 		    });
 	}
 
@@ -208,7 +208,7 @@ public class BoxGroup extends Box implements IO.Loaded{
 		    .filter(x -> x != this)
 		    .forEach(x -> {
 			    Boolean m = collapsedState.get(x.properties.getOrConstruct(IO.id));
-			    x.disconnected = m!=null ? m.booleanValue() : false;
+			    x.setDisconnected(m!=null ? m.booleanValue() : false);
 		    });
 	}
 
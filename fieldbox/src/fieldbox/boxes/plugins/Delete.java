@@ -105,14 +105,14 @@ public class Delete extends Box {
 	private void recursivelyHideFrom(Stream<Box> selected) {
 		selected.flatMap(x -> x.breadthFirst(x.downwards())
 				       .filter(y -> y != x))
-			.forEach(x -> x.disconnected=true);
+			.forEach(x -> x.setDisconnected(true));
 		Drawing.dirty(this);
 	}
 
 	private void recursivelyShowFrom(Stream<Box> selected) {
 		selected.flatMap(x -> x.breadthFirstAll(x.allDownwardsFrom())
 				       .filter(y -> y != x))
-			.forEach(x -> x.disconnected=false);
+			.forEach(x -> x.setDisconnected(false));
 		Drawing.dirty(this);
 	}
 
@@ -3,10 +3,14 @@ package fieldbox.boxes.plugins;
 import field.graphics.FLine;
 import field.utility.Cached;
 import field.utility.Dict;
+import field.utility.Rect;
+import field.utility.Util;
 import fieldbox.boxes.Box;
 import fieldbox.boxes.FLineDrawing;
 import fieldbox.boxes.Mouse;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
@@ -21,28 +25,51 @@ public class FrameChangedHash extends Box {
 
 	static public final Dict.Prop<Long> sceneHash = new Dict.Prop<>("_sceneHash");
 
+	// changes to the properties that go into the hash are pushed to us, so we only need to recompute when something has actually changed
+	Dict.Journal journal = new Dict.Journal();
+	long journalWas = -1;
+	long topologyWas = -1;
+
+	// the boxes that went into the hash and copies of their frames at the time. Frames are Mutable and can be changed in place without a put (Alignment does this, as does _.frame.x += 10),
+	// so these are compared every frame
+	List<Box> hashed = new ArrayList<>();
+	List<Rect> framesWere = new ArrayList<>();
+
 	public FrameChangedHash(Box root) {
+		for (Dict.Prop p : new Dict.Prop[]{Box.frame, Box.hidden, Box.name, Mouse.isSticky, Mouse.isSelected})
+			Dict.addChangeListener(p, journal);
+
 		properties.putToMap(FLineDrawing.frameDrawing, "__updateHash__", (box) -> {
-			properties.put(sceneHash, hashWas = hash());
+			long v = journal.getVersion();
+			if (v != journalWas || Box.topology.get() != topologyWas || framesChanged()) {
+				journalWas = v;
+				topologyWas = Box.topology.get();
+				journal.drain();
+				properties.put(sceneHash, hashWas = hash());
+			}
 
 			return new FLine();
 		});
 	}
 
+	private boolean framesChanged() {
+		for (int i = 0; i < hashed.size(); i++)
+			if (!Util.safeEq(hashed.get(i).properties.get(Box.frame), framesWere.get(i))) return true;
+		return false;
+	}
+
 	private long hash() {
-		long h = breadthFirst(both()).filter(x -> x.properties.has(Box.frame))
-					     .filter(x -> !x.properties.isTrue(Box.hidden, false))
-					     .filter(x -> x.properties.has(Box.name))
-					     .filter(x -> !x.properties.isTrue(Mouse.isSticky,
-									       false))
-					     .reduce(0L,
-						     (w, frame) -> 31L * w + (frame.properties.isTrue(
-								 Mouse.isSelected,
-								 false) ? 1 : 0) + frame.properties.get(
-								 Box.frame)
-												   .hashCode(),
-						     (x, y) -> 31 * x + y);
-		return h;
+		long[] h = {0};
+		hashed.clear();
+		framesWere.clear();
+		forEachBreadthFirst(both(), x -> {
+			if (!x.properties.has(Box.frame) || x.properties.isTrue(Box.hidden, false) || !x.properties.has(Box.name) || x.properties.isTrue(Mouse.isSticky, false)) return;
+			Rect f = x.properties.get(Box.frame);
+			h[0] = 31L * h[0] + (x.properties.isTrue(Mouse.isSelected, false) ? 1 : 0) + f.hashCode();
+			hashed.add(x);
+			framesWere.add(f.duplicate());
+		});
+		return h[0];
 	}
 
 
@@ -0,0 +1,202 @@
+package fieldbox.boxes.plugins;
+
+import field.graphics.FLine;
+import field.graphics.GraphicsMetrics;
+import field.linalg.Vec2;
+import field.linalg.Vec4;
+import field.utility.*;
+import fieldbox.boxes.*;
+import fielded.Commands;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static field.graphics.StandardFLineDrawing.*;
+
+/**
+ * Shows (and, for scripts, exposes) GraphicsMetrics --- how well MeshBuilder caching is doing and how much is going to OpenGL, frame by frame, by layer and by Box. Draws itself as a line of text in
+ * the bottom left of the window, in the manner of the StatusBar, when 'showGraphicsStats' is set.
+ * <p>
+ * GraphicsMetrics only counts while GraphicsMetrics.enabled is set. We set it while the overlay is showing, and from the first time a script asks for metrics until it calls stop().
+ */
+public class GraphicsStats extends Box {
+
+	static public Dict.Prop<GraphicsStats> graphicsStats = new Dict.Prop<GraphicsStats>("graphicsStats").type()
+													  .toCannon()
+													  .doc("Per-frame graphics metrics. `_.graphicsStats.last()` is the last complete frame, `_.graphicsStats.forBox(_)` is the cache hit rate for a box, `_.graphicsStats.worst(5)` lists the boxes rebuilding the most geometry. Counting starts the first time you ask, `_.graphicsStats.stop()` turns it off again");
+	static public Dict.Prop<Boolean> showGraphicsStats = new Dict.Prop<>("showGraphicsStats").type()
+												 .toCannon()
+												 .doc("set to true to show graphics metrics at the bottom of the window");
+
+	/**
+	 * how often (in frames) the overlay text is updated
+	 */
+	static public int updateEvery = 15;
+
+	int insetW = 10;
+	int insetH = 10;
+	int height = 25;
+
+	String overlayText = "";
+	int count = 0;
+	boolean collecting = false;
+
+	public GraphicsStats(Box root) {
+		this.properties.put(graphicsStats, this);
+		this.properties.put(Box.hidden, true);
+
+		this.properties.putToMap(Boxes.insideRunLoop, "main.__updateGraphicsStats__", this::update);
+
+		this.properties.put(Drawing.windowSpace, new Vec2(0, 1));
+		this.properties.put(Box.frame, new Rect(insetW, 0, 600, height));
+
+		this.properties.putToMap(FLineDrawing.frameDrawing, "__text__", new Cached<Box, Object, FLine>((box, previously) -> {
+			Rect rect = box.properties.get(frame);
+			if (rect == null) return null;
+
+			FLine f = new FLine();
+			f.moveTo(rect.x, rect.y + rect.h / 2 + 25 / 5.0f);
+
+			f.attributes.put(hasText, true);
+			f.attributes.put(color, new Vec4(1, 1, 1, 0.5f));
+			f.nodes.get(f.nodes.size() - 1).attributes.put(text, overlayText);
+			f.nodes.get(f.nodes.size() - 1).attributes.put(textAlign, 0f);
+
+			return f;
+		}, (box) -> new Pair(box.properties.get(frame), overlayText)));
+
+		this.properties.putToMap(FLineDrawing.frameDrawing, "__background__", new Cached<Box, Object, FLine>((box, previously) -> {
+			Rect rect = box.properties.get(frame);
+			if (rect == null) return null;
+
+			FLine f = new FLine();
+			f.rect(rect);
+
+			f.attributes.put(color, Colors.statusBarBackground);
+			f.attributes.put(filled, true);
+
+			return f;
+		}, (box) -> box.properties.get(frame)));
+
+		Commands.exportAsCommand(this, () -> this.properties.put(showGraphicsStats, true), (x) -> !this.properties.isTrue(showGraphicsStats, false), "Show Graphics Stats",
+					 "Shows MeshBuilder cache hit rates and OpenGL upload sizes at the bottom of the window");
+		Commands.exportAsCommand(this, () -> this.properties.put(showGraphicsStats, false), (x) -> this.properties.isTrue(showGraphicsStats, false), "Hide Graphics Stats", "");
+	}
+
+	protected boolean update() {
+		boolean show = this.properties.isTrue(showGraphicsStats, false);
+		if (show == this.properties.isTrue(Box.hidden, false)) {
+			this.properties.put(Box.hidden, !show);
+			GraphicsMetrics.enabled = show || collecting;
+			Drawing.dirty(this);
+		}
+		if (!show || count++ % updateEvery != 0) return true;
+
+		find(Boxes.window, both()).findFirst()
+					  .ifPresent(window -> {
+						  Drawing drawing = find(Drawing.drawing, both()).findFirst()
+												 .get();
+						  Rect f = this.properties.get(Box.frame);
+						  double y = window.getHeight() - insetH - f.h - drawing.getTranslation().y;
+						  if (Math.abs(f.y - y) > 1) {
+							  f = f.duplicate();
+							  f.y = (float) y;
+							  this.properties.put(Box.frame, f);
+						  }
+					  });
+
+		GraphicsMetrics.Frame last = GraphicsMetrics.last();
+		String s = last == null ? "no graphics metrics yet" : summary(last);
+		if (!s.equals(overlayText)) {
+			overlayText = s;
+			Drawing.dirty(this);
+		}
+		return true;
+	}
+
+	protected String summary(GraphicsMetrics.Frame f) {
+		String s = "cache " + Math.round(100 * f.hitRate()) + "% | rebuilt " + f.get(GraphicsMetrics.Counter.verticesRebuilt) + " vertices | uploaded " + kb(f.get(
+			    GraphicsMetrics.Counter.uploadBytes) + f.get(GraphicsMetrics.Counter.streamedBytes) + f.get(GraphicsMetrics.Counter.textureBytes)) + "kb";
+		// not worst(), that's for scripts and would keep counting on after the overlay is hidden
+		List<Map.Entry<Object, Long>> w = rebuilding(1);
+		if (w.size() > 0) s += " | worst " + w.get(0)
+						      .getKey() + " (" + w.get(0)
+									   .getValue() + " vertices)";
+		return s;
+	}
+
+	static private String kb(long bytes) {
+		return String.valueOf(Math.round(bytes / 102.4) / 10.0);
+	}
+
+	/**
+	 * starts counting (if we weren't already); asking for any of the metrics below does this too
+	 */
+	public void start() {
+		collecting = true;
+		GraphicsMetrics.enabled = true;
+	}
+
+	/**
+	 * stops counting, unless the overlay is showing
+	 */
+	public void stop() {
+		collecting = false;
+		GraphicsMetrics.enabled = this.properties.isTrue(showGraphicsStats, false);
+	}
+
+	/**
+	 * the last complete frame
+	 */
+	public GraphicsMetrics.Frame last() {
+		start();
+		return GraphicsMetrics.last();
+	}
+
+	/**
+	 * the frame that's still being counted
+	 */
+	public GraphicsMetrics.Frame current() {
+		start();
+		return GraphicsMetrics.current();
+	}
+
+	/**
+	 * complete frames, oldest first
+	 */
+	public List<GraphicsMetrics.Frame> history() {
+		start();
+		return GraphicsMetrics.history();
+	}
+
+	/**
+	 * cache hit rate for the geometry of this box, over the history
+	 */
+	public float forBox(Box b) {
+		start();
+		long hits = 0, misses = 0;
+		for (GraphicsMetrics.Frame f : GraphicsMetrics.history()) {
+			hits += f.getForOwner(GraphicsMetrics.Counter.cacheHits, b);
+			misses += f.getForOwner(GraphicsMetrics.Counter.cacheMisses_cursor, b) + f.getForOwner(GraphicsMetrics.Counter.cacheMisses_externalHash, b) + f.getForOwner(
+				    GraphicsMetrics.Counter.cacheMisses_internalHash, b) + f.getForOwner(GraphicsMetrics.Counter.cacheMisses_tooOld, b);
+		}
+		return hits + misses == 0 ? 1 : hits / (float) (hits + misses);
+	}
+
+	/**
+	 * the 'n' boxes that have rebuilt the most geometry over the history
+	 */
+	public List<Map.Entry<Object, Long>> worst(int n) {
+		start();
+		return rebuilding(n);
+	}
+
+	private List<Map.Entry<Object, Long>> rebuilding(int n) {
+		return GraphicsMetrics.worstOwners(GraphicsMetrics.Counter.verticesRebuilt, n + 1)
+				      .stream()
+				      .filter(x -> x.getKey() != GraphicsMetrics.unattributed)
+				      .limit(n)
+				      .collect(Collectors.toList());
+	}
+}
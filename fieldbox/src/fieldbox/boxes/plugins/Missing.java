@@ -38,9 +38,7 @@ public class Missing {
 	}
 
 	static public <T> T findFrom(Box b, Dict.Prop<T> what) {
-		Optional<Box> o = b.breadthFirst(b.upwards())
-				   .filter(x -> x.properties.has(what) && x.properties.get(what) != null)
-				   .findFirst();
+		Optional<Box> o = b.where(what);
 
 
 		if (!o.isPresent()) {
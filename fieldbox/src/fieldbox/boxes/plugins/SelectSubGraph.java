@@ -108,11 +108,11 @@ public class SelectSubGraph extends Box {
 		    .filter(x -> x != root)
 		    .forEach(x -> {
 			    if (!x.disconnected) proxy.add(x);
-			    x.disconnected = true;
+			    x.setDisconnected(true);
 		    });
 
 		for (Box cc : newChildren) {
-			cc.disconnected = false;
+			cc.setDisconnected(false);
 			cc.properties.put(Boxes.dontSave, true);
 			root.connect(cc);
 		}
@@ -123,7 +123,7 @@ public class SelectSubGraph extends Box {
 		quitModal = () -> {
 			for (Box cc : newChildren) {
 				root.disconnect(cc);
-				cc.disconnected = true;
+				cc.setDisconnected(true);
 			}
 			proxyForDrawing = null;
 			m.close();
@@ -49,7 +49,9 @@ public class StatusBar extends Box {
 			float w2 = window.getWidth() - insetW * 2;
 
 			if (Math.abs(w - w2) > 1) {
-				this.properties.get(Box.frame).w = w2;
+				Rect f = this.properties.get(Box.frame).duplicate();
+				f.w = w2;
+				this.properties.put(Box.frame, f);
 				Drawing.dirty(this);
 			}
 
@@ -61,7 +63,9 @@ public class StatusBar extends Box {
 
 			if (Math.abs(y-y2)>1)
 			{
-				this.properties.get(Box.frame).y = (float) y2;
+				Rect f = this.properties.get(Box.frame).duplicate();
+				f.y = (float) y2;
+				this.properties.put(Box.frame, f);
 				Drawing.dirty(this);
 			}
 
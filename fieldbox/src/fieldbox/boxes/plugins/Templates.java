@@ -180,14 +180,13 @@ public class Templates extends Box implements IO.Loaded {
 			x.id = Box.newID();
 		});
 
-		boolean error = false;
 		try {
+			// written in the background, failures are reported through Errors
 			FieldBox.fieldBox.io.writeOutDocument(IO.TEMPLATES + "/" + filename + "/"+filename+(filename.endsWith(".field2") ? "" : ".field2"), doc);
 		} catch (IOException e) {
 			e.printStackTrace();
 			Drawing.notify("Error saving " + e.getMessage(), b.iterator()
 									  .next(), 200);
-			error = true;
 		}
 
 		b.forEach(x -> {
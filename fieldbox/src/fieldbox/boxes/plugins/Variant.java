@@ -137,7 +137,7 @@ public class Variant extends Box implements IO.Loaded {
 		@Override
 		public void close() {
 			for (Map.Entry<Box, Boolean> e : state.entrySet()) {
-				e.getKey().disconnected = e.getValue();
+				e.getKey().setDisconnected(e.getValue());
 			}
 
 		}
@@ -159,7 +159,7 @@ public class Variant extends Box implements IO.Loaded {
 		Memo m = freezeGraph(documentRoot);
 		documentRoot.breadthFirstAll(documentRoot.both())
 			    .forEach(x -> {
-				    x.disconnected = false;
+				    x.setDisconnected(false);
 			    });
 		return m;
 	}
@@ -365,7 +365,7 @@ public class Variant extends Box implements IO.Loaded {
 			if (t == null) return;
 
 			if (isIncluded(x, t)) {
-				x.disconnected = false;
+				x.setDisconnected(false);
 				x.properties.getOrConstruct(excludes)
 					    .remove(t);
 
@@ -379,7 +379,7 @@ public class Variant extends Box implements IO.Loaded {
 
 			}
 
-			if (isExcluded(x, t)) x.disconnected = true;
+			if (isExcluded(x, t)) x.setDisconnected(true);
 
 			installDrawer(x, t);
 		});
@@ -1,5 +1,6 @@
 package fieldbox.io;
 
+import field.app.RunLoop;
 import field.utility.Dict;
 import field.utility.Log;
 import fieldagent.Main;
@@ -9,15 +10,22 @@ import fieldbox.boxes.Callbacks;
 import fieldbox.boxes.FrameManipulation;
 import fieldbox.boxes.plugins.PluginList;
 import fieldbox.boxes.plugins.Variant;
+import fieldbox.execution.Errors;
 import fieldbox.execution.Execution;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -29,6 +37,11 @@ import java.util.stream.Collectors;
  * properties.
  * <p>
  * .box (the properties) and .field2 (the master document) files are stored as EDN files (see EDN.java for specifics).
+ * <p>
+ * Saving is incremental. We remember a fingerprint of every file we've read or written and files whose contents haven't changed (and that nobody else has touched) aren't written again. Files that
+ * have changed are written on a background thread, to a temporary file that's then renamed over the original, so a crash halfway through a save never leaves a half written file behind.
+ * writeOutDocument returns as soon as its writes are queued. Failures are reported through Errors, and the returned future completes when everything has reached the disk; call waitFor() on it
+ * when a save has to have finished (on exit, say), or waitForWrites() to wait for every write that's been asked for so far.
  */
 public class IO {
 	static public final String WORKSPACE = "{{workspace}}";
@@ -73,6 +86,50 @@ public class IO {
 	EDN edn = new EDN();
 	private PluginList pluginList;
 
+	// what we last read from, or wrote to, each file
+	private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+	// writes that have been queued but haven't finished yet
+	private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+	static private class Pending {
+		final String digest;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Pending(String digest) {
+			this.digest = digest;
+		}
+	}
+
+	/**
+	 * how long waitFor waits for a save to reach the disk before reporting it as failed
+	 */
+	static public long writeTimeoutMs = 30 * 1000;
+
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "io.writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	static public int filesWritten = 0;
+	static public int filesSkipped = 0;
+
+	/**
+	 * when set, text files (code, markdown and so on) bigger than lazyTextThreshold bytes aren't read when a document is opened, but the first time the property is asked for
+	 */
+	static public boolean lazyText = false;
+	static public long lazyTextThreshold = 16 * 1024;
+
+	// reading and parsing of the files that make up a document happens here, box construction stays on the calling thread
+	static private final ExecutorService readers = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime()
+												       .availableProcessors()), r -> {
+		Thread t = new Thread(r, "io.reader");
+		t.setDaemon(true);
+		return t;
+	});
+
+	static private final ThreadLocal<EDN> readerEDN = ThreadLocal.withInitial(EDN::new);
+
 
 	public IO(String defaultDirectory) {
 		try {
@@ -90,6 +147,10 @@ public class IO {
 
 		knownProperties.add(FrameManipulation.lockHeight.getName());
 		knownProperties.add(FrameManipulation.lockWidth.getName());
+
+		// don't let the vm exit with a save half done
+		Runtime.getRuntime()
+		       .addShutdownHook(new Thread(() -> waitForWrites(10, TimeUnit.SECONDS)));
 	}
 
 	static public String readFromFile(File f) {
@@ -241,6 +302,9 @@ public class IO {
 	}
 
 	public Document readDocument(String filename, Map<String, Box> specialBoxes, Set<Box> created) {
+		// we might be about to read something that we're still writing
+		waitForWrites(10, TimeUnit.SECONDS);
+
 		File f = filenameFor(filename);
 
 		Log.log("io.general", ()->" reading document :" + f);
@@ -268,9 +332,26 @@ public class IO {
 
 		Log.log("io.general", ()->" document contains " + d.externalList.size() + " boxes ");
 
+		// classpaths first, in document order, so that everything is loadable by the time we parse
+		for (External e : d.externalList)
+			readOptions(filenameFor(e.dataFile));
 
-		for (External e : d.externalList) {
-			fromExternal(e, specialBoxes);
+		List<Future<Prefetched>> prefetched = new ArrayList<>(d.externalList.size());
+		for (External e : d.externalList)
+			prefetched.add(readers.submit(() -> prefetch(e)));
+
+		for (int i = 0; i < d.externalList.size(); i++) {
+			External e = d.externalList.get(i);
+			Prefetched p;
+			try {
+				p = prefetched.get(i)
+					      .get();
+			} catch (InterruptedException | ExecutionException ex) {
+				Log.log("io.error", () -> " background read failed for " + e.dataFile + ", reading it again here");
+				p = prefetch(e);
+			}
+
+			fromExternal(e, specialBoxes, p);
 			if (e.box != null) {
 				loaded.put(e.id, e.box);
 				e.box.properties.put(id, e.id);
@@ -321,12 +402,7 @@ public class IO {
 
 	}
 
-	private void fromExternal(External ex, Map<String, Box> specialBoxes) {
-
-		File dataFile = filenameFor(ex.dataFile);
-
-		String currentPrefix = dataFile.getParent();
-
+	private void readOptions(File dataFile) {
 		Map<String, List<Object>> options = null;
 		if (pluginList != null) try {
 			options = pluginList.read(dataFile.getAbsolutePath(), false);
@@ -334,6 +410,52 @@ public class IO {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+	}
+
+	/**
+	 * the contents of the files behind an External, read (and, where possible, parsed) ahead of time
+	 */
+	static protected class Prefetched {
+		Map<String, String> text = new LinkedHashMap<>();
+		Map<String, File> lazy = new LinkedHashMap<>();
+		String dataText;
+		Map<?, ?> data;
+	}
+
+	/**
+	 * reads everything that fromExternal needs from disk. Safe to call from any thread, touches no boxes
+	 */
+	protected Prefetched prefetch(External ex) {
+		Prefetched p = new Prefetched();
+
+		File dataFile = filenameFor(ex.dataFile);
+		String currentPrefix = dataFile.getParent();
+
+		for (Map.Entry<String, String> e : ex.textFiles.entrySet()) {
+			File filename = filenameFor(currentPrefix, e.getValue());
+			if (lazyText && filename.length() > lazyTextThreshold) {
+				p.lazy.put(e.getKey(), filename);
+			} else {
+				String text = readFromFile(filename);
+				remember(filename, text);
+				p.text.put(e.getKey(), text);
+			}
+		}
+
+		p.dataText = readFromFile(dataFile);
+		if (p.dataText != null) try {
+			p.data = (Map) readerEDN.get()
+						.read(p.dataText);
+		} catch (Throwable t) {
+			// we'll try again, and complain, on the main thread
+			p.data = null;
+		}
+		return p;
+	}
+
+	private void fromExternal(External ex, Map<String, Box> specialBoxes, Prefetched prefetched) {
+
+		File dataFile = filenameFor(ex.dataFile);
 
 		try {
 			Class c = this.getClass()
@@ -358,17 +480,22 @@ public class IO {
 			ex.box.properties.put(desiredBoxClass, ex.boxClass);
 		}
 
-		for (Map.Entry<String, String> e : ex.textFiles.entrySet()) {
-			File filename = filenameFor(currentPrefix, e.getValue());
-			String text = readFromFile(filename);
-			ex.box.properties.put(new Dict.Prop<String>(e.getKey()), text);
-		}
+		for (Map.Entry<String, String> e : prefetched.text.entrySet())
+			ex.box.properties.put(new Dict.Prop<String>(e.getKey()), e.getValue());
 
+		for (Map.Entry<String, File> e : prefetched.lazy.entrySet()) {
+			File filename = e.getValue();
+			ex.box.properties.putLazy(new Dict.Prop<String>(e.getKey()), () -> {
+				String text = readFromFile(filename);
+				remember(filename, text);
+				return text;
+			}, filename);
+		}
 
-		String read = readFromFile(dataFile);
+		String read = prefetched.dataText;
 		if (read != null) {
 			try {
-				Map<?, ?> m = (Map) serializeFromString(read);
+				Map<?, ?> m = prefetched.data != null ? prefetched.data : (Map) serializeFromString(read);
 				for (Map.Entry<?, ?> entry : m.entrySet()) {
 					ex.box.properties.put(new Dict.Prop((String) entry.getKey()), entry.getValue());
 				}
@@ -397,6 +524,7 @@ public class IO {
 	 * notes: it's up to the caller to call .loaded() once this box has been connected to the graph
 	 */
 	public Box loadSingleBox(String f, Box root) {
+		waitForWrites(10, TimeUnit.SECONDS);
 
 		Map<String, List<Object>> options = null;
 		if (pluginList != null) try {
@@ -502,19 +630,21 @@ public class IO {
 
 		knownProperties.add("__datafilename__");
 
-		for (Map.Entry<Dict.Prop, Object> e : new LinkedHashMap<>(box.properties.getMap()).entrySet()) {
-			Log.log("io.general",()-> "checking :" + e.getKey()
+		// just the keys, the values of lazily loaded properties don't need to be loaded to find out where they go
+		for (Dict.Prop key : new ArrayList<>(box.properties.getMap()
+							       .keySet())) {
+			Log.log("io.general",()-> "checking :" + key
 							      .getName() + " against " + knownFiles.keySet());
-			if (knownFiles.containsKey(e.getKey()
+			if (knownFiles.containsKey(key
 						    .getName())) {
-				Filespec f = knownFiles.get(e.getKey()
+				Filespec f = knownFiles.get(key
 							     .getName());
 
-				String extantFilename = box.properties.get(new Dict.Prop<String>("__filename__" + e.getKey()
+				String extantFilename = box.properties.get(new Dict.Prop<String>("__filename__" + key
 														   .getName()));
 
 				String fextent = extantFilename;
-				Log.log("io.general", ()->"extant filename is :" + fextent + " for " + e.getKey()
+				Log.log("io.general", ()->"extant filename is :" + fextent + " for " + key
 													   .getName() + " from " + box.properties);
 
 				// this is wrong. Don't set a name if we are just going to use a default; otherwise, when you move the file you have to update it.
@@ -522,15 +652,15 @@ public class IO {
 
 				if (extantFilename == null) {
 					extantFilename = relativize(ex.dataFile + f.getDefaultSuffix(box));
-					box.properties.put(new Dict.Prop<String>("__filename__" + e.getKey()
+					box.properties.put(new Dict.Prop<String>("__filename__" + key
 												   .getName()), relativize(extantFilename));
-					ex.textFiles.put(e.getKey()
+					ex.textFiles.put(key
 							  .getName(), relativize(extantFilename));
 				} else {
-					ex.textFiles.put(e.getKey()
+					ex.textFiles.put(key
 							  .getName(), relativize(extantFilename));
 				}
-				knownProperties.add("__filename__" + e.getKey()
+				knownProperties.add("__filename__" + key
 								      .getName());
 			}
 		}
@@ -560,25 +690,82 @@ public class IO {
 		return ex;
 	}
 
-	public void writeOutDocument(String filename, Document d) throws IOException {
+	/**
+	 * writes out the document and all of its boxes. This returns once the writes are queued; the future completes when everything that needed writing is on disk, or exceptionally (with an
+	 * IOException naming the files) if anything failed to make it there. Failures are also reported through Errors, so callers that don't care when the save finishes can drop the future
+	 */
+	public CompletableFuture<Void> writeOutDocument(String filename, Document d) throws IOException {
 
 		String prefix = new File(filename).getParent() + "/";
 
+		Map<File, CompletableFuture<Void>> writes = new LinkedHashMap<>();
 		for (External e : d.externalList)
-			writeOutExternal(prefix, e);
+			writeOutExternal(prefix, e, writes);
+
+		File f = filenameFor(filename);
+		writes.put(f, writeToFile(f, serializeToString(d)));
+
+		CompletableFuture<Void> all = CompletableFuture.allOf(writes.values()
+									    .toArray(new CompletableFuture[writes.size()]))
+							       .handle((x, t) -> {
+								       if (t != null) throw new CompletionException(failure(writes));
+								       return null;
+							       });
+
+		// error consumers belong to the main thread
+		all.whenComplete((x, t) -> {
+			if (t != null) RunLoop.main.once(() -> Errors.tryToReportTo(t instanceof CompletionException ? t.getCause() : t, "while saving " + filename, null));
+		});
+		return all;
+	}
 
-		writeToFile(filenameFor(filename), serializeToString(d));
+	static private IOException failure(Map<File, CompletableFuture<Void>> writes) {
+		List<String> failed = new ArrayList<>();
+		Throwable first = null;
+		for (Map.Entry<File, CompletableFuture<Void>> e : writes.entrySet()) {
+			if (!e.getValue()
+			      .isCompletedExceptionally()) continue;
+			failed.add(e.getKey()
+				    .getPath());
+			if (first == null) try {
+				e.getValue()
+				 .join();
+			} catch (CompletionException ex) {
+				first = ex.getCause();
+			}
+		}
+		return new IOException("couldn't write " + failed, first);
 	}
 
-	protected void writeOutExternal(String defaultPrefix, External external) throws IOException {
+	/**
+	 * blocks until 'save' (as returned by writeOutDocument) has finished, for at most writeTimeoutMs. Throws if the save failed or didn't finish in time
+	 */
+	public void waitFor(Future<Void> save) throws IOException {
+		try {
+			save.get(writeTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		} catch (TimeoutException | InterruptedException e) {
+			throw new IOException("save didn't finish within " + writeTimeoutMs + "ms", e);
+		}
+	}
+
+	protected void writeOutExternal(String defaultPrefix, External external, Map<File, CompletableFuture<Void>> writes) throws IOException {
 		for (Map.Entry<String, String> e : external.textFiles.entrySet()) {
-			String text = external.box.properties.get(new Dict.Prop<String>(e.getKey()));
-			if (text == null) continue;
+			Dict.Prop<String> prop = new Dict.Prop<String>(e.getKey());
 			File filename = filenameFor(defaultPrefix, e.getValue());
 
+			// never loaded, so it can't have changed --- but if we are writing somewhere else (Save As, Templates) it has to be loaded and written there
+			Object source = external.box.properties.getLazySource(prop);
+			if (source instanceof File && sameFile((File) source, filename)) continue;
+
+			String text = external.box.properties.get(prop);
+			if (text == null) continue;
+
 			System.out.println(" filename for :" + defaultPrefix + " " + e.getValue() + " is " + filename);
 			try {
-				writeToFile(filename, text);
+				writes.put(filename, writeToFile(filename, text));
 			} catch (Exception ex) {
 				System.out.println(" exception thrown while saving out a file :" + filename + " for property :" + e + " in box +" + external.box);
 				ex.printStackTrace();
@@ -600,7 +787,7 @@ public class IO {
 
 			data.put("__boxclass__", external.boxClass);
 
-			writeToFile(dataFile, serializeToString(data));
+			writes.put(dataFile, writeToFile(dataFile, serializeToString(data)));
 		}
 
 		Log.log("io.general", ()->"sweep for persistent, perDocument properties");
@@ -619,8 +806,17 @@ public class IO {
 		}
 	}
 
+	static private boolean sameFile(File a, File b) {
+		try {
+			return a.getCanonicalFile()
+				.equals(b.getCanonicalFile());
+		} catch (IOException e) {
+			return a.getAbsoluteFile()
+				.equals(b.getAbsoluteFile());
+		}
+	}
+
 	private String serializeToString(Object data) {
-		System.out.println(" data :"+data);
 		String written = edn.write(data);
 		Log.log("io.general", () -> "edn is " + written);
 		return written;
@@ -631,14 +827,113 @@ public class IO {
 		return written;
 	}
 
-	private void writeToFile(File filename, String text) throws IOException {
+	/**
+	 * queues a write of 'text' to 'filename', unless it's already there (or already on its way there). The future completes when the file is on disk
+	 */
+	private CompletableFuture<Void> writeToFile(File filename, String text) throws IOException {
+		String digest = digest(text);
+		String key = filename.getAbsolutePath();
+
+		// a queued write wins over whatever is on disk right now
+		Pending queued = pending.get(key);
+		Fingerprint was = fingerprints.get(key);
+		if (queued != null ? queued.digest.equals(digest) : (was != null && was.matches(filename, digest))) {
+			Log.log("io.general", () -> " skipping unchanged :" + filename);
+			filesSkipped++;
+			return queued != null ? queued.done : CompletableFuture.completedFuture(null);
+		}
+
 		Log.log("io.general", ()->" will write :" + text + " to " + filename);
 
+		Pending p = new Pending(digest);
+		pending.put(key, p);
+		writer.execute(() -> {
+			try {
+				writeAtomically(filename, text);
+				fingerprints.put(key, new Fingerprint(filename, digest));
+				filesWritten++;
+				p.done.complete(null);
+			} catch (Throwable t) {
+				// next time round we'll try again
+				fingerprints.remove(key);
+				Log.log("io.error", () -> " exception thrown while writing :" + filename);
+				Log.log("io.error", () -> t);
+				p.done.completeExceptionally(t);
+			} finally {
+				pending.remove(key, p);
+			}
+		});
+		return p.done;
+	}
+
+	static protected void writeAtomically(File filename, String text) throws IOException {
 		if (!filename.getParentFile().exists()) filename.getParentFile().mkdirs();
 
-		BufferedWriter w = new BufferedWriter(new FileWriter(filename));
-		w.append(text);
-		w.close();
+		File temp = new File(filename.getParentFile(), "." + filename.getName() + ".saving");
+		try (BufferedWriter w = Files.newBufferedWriter(temp.toPath(), Charset.defaultCharset())) {
+			w.append(text);
+		}
+
+		try {
+			Files.move(temp.toPath(), filename.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), filename.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * blocks until every write that's been asked for so far has made it to disk (or failed). Returns false if we timed out first
+	 */
+	public boolean waitForWrites(long timeout, TimeUnit unit) {
+		try {
+			writer.submit(() -> {
+			})
+			      .get(timeout, unit);
+			return true;
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * records that 'filename' currently contains 'text', so that saving the same text back doesn't need to touch it
+	 */
+	protected void remember(File filename, String text) {
+		if (filename.exists()) fingerprints.put(filename.getAbsolutePath(), new Fingerprint(filename, digest(text)));
+	}
+
+	static protected String digest(String text) {
+		try {
+			byte[] d = MessageDigest.getInstance("SHA-1")
+						.digest(text.getBytes(StandardCharsets.UTF_8));
+			char[] r = new char[d.length * 2];
+			for (int i = 0; i < d.length; i++) {
+				r[2 * i] = Character.forDigit((d[i] >> 4) & 0xf, 16);
+				r[2 * i + 1] = Character.forDigit(d[i] & 0xf, 16);
+			}
+			return new String(r);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * the hash of what we think is in a file, along with enough of the file's metadata to notice if somebody else has changed it since
+	 */
+	static protected class Fingerprint {
+		final String digest;
+		final long length;
+		final long modified;
+
+		Fingerprint(File f, String digest) {
+			this.digest = digest;
+			this.length = f.length();
+			this.modified = f.lastModified();
+		}
+
+		boolean matches(File f, String digest) {
+			return this.digest.equals(digest) && f.exists() && f.length() == length && f.lastModified() == modified;
+		}
 	}
 
 	public File filenameFor(String value) {
@@ -0,0 +1,100 @@
+package tests;
+
+import com.google.common.collect.MapMaker;
+import field.utility.CompactMap;
+import field.utility.Dict;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the CompactMap that Dict stores its properties in with the (Guava) ConcurrentHashMap it used before, for maps of 2, 8, 20 and 40 Dict.Props. For each size it reports the heap
+ * taken per map (measured over 'maps' of them, values shared so that only the map itself is counted), and the time for a get, for a put that replaces the value of a key that is already there
+ * (by far the most common put on a Box) and for adding and then removing a key.
+ * <p>
+ * There's no JMH here: run main() with the Field classpath (on Java 8) and read the bytes/map and ns/call figures.
+ */
+public class CompactMapBenchmark {
+
+	static final int maps = 20000;
+	static final int calls = 1000000;
+	static final int rounds = 20;
+
+	static final Dict.Prop[] props = new Dict.Prop[64];
+
+	static {
+		for (int i = 0; i < props.length; i++)
+			props[i] = new Dict.Prop<>("benchmark" + i);
+	}
+
+	public static void main(String[] a) {
+		for (int k : new int[]{2, 8, 20, 40}) {
+			run("CompactMap", k, CompactMap::new);
+			run("ConcurrentHashMap", k, () -> new MapMaker().concurrencyLevel(2)
+									  .makeMap());
+		}
+	}
+
+	static void run(String name, int k, Supplier<Map<Dict.Prop, Object>> make) {
+		Object value = "value";
+
+		long before = used();
+		Map[] all = new Map[maps];
+		for (int i = 0; i < maps; i++) {
+			all[i] = make.get();
+			for (int j = 0; j < k; j++)
+				all[i].put(props[j], value);
+		}
+		long after = used();
+		double footprint = (after - before) / (double) maps;
+		// keep them alive until they've been measured
+		if (all[maps - 1].size() != k) throw new IllegalStateException();
+		all = null;
+
+		Map<Dict.Prop, Object> m = make.get();
+		for (int j = 0; j < k; j++)
+			m.put(props[j], value);
+
+		Random r = new Random(k);
+		int[] order = new int[1024];
+		for (int i = 0; i < order.length; i++)
+			order[i] = r.nextInt(k);
+		Integer[] values = new Integer[1024];
+		for (int i = 0; i < values.length; i++)
+			values[i] = i;
+
+		long get = 0, put = 0, churn = 0, sink = 0;
+		for (int round = 0; round < rounds; round++) {
+			long t0 = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				sink += m.get(props[order[i & 1023]]) == null ? 1 : 0;
+			long t1 = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				m.put(props[order[i & 1023]], values[i & 1023]);
+			long t2 = System.nanoTime();
+			for (int i = 0; i < calls / 10; i++) {
+				m.put(props[k], value);
+				m.remove(props[k]);
+			}
+			long t3 = System.nanoTime();
+
+			// the first quarter of the rounds are warm-up
+			if (round >= rounds / 4) {
+				get += t1 - t0;
+				put += t2 - t1;
+				churn += t3 - t2;
+			}
+		}
+		long count = (long) calls * (rounds - rounds / 4);
+		System.out.println(String.format("%2d props | %-17s | %7.0f bytes/map | get %6.1f ns | replace %6.1f ns | add+remove %7.1f ns | (%d)", k, name, footprint, get / (double) count,
+						 put / (double) count, churn * 10 / (double) count, sink));
+	}
+
+	static long used() {
+		Runtime r = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++)
+			System.gc();
+		return r.totalMemory() - r.freeMemory();
+	}
+}
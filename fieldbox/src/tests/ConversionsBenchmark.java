@@ -0,0 +1,85 @@
+package tests;
+
+import field.utility.Conversions;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Times Conversions.convert for the cases that Box.asMap_set, Scene and Util actually hit: a value that already fits, promotion to a List / Map&lt;String, V&gt;, and a value that doesn't fit
+ * and is passed through. Also times getConversion(Object, ...) over a conversion registered with provideConversion.
+ * <p>
+ * There's no JMH here: run main() with the Field classpath (on Java 8) and read the ns/call figures.
+ */
+public class ConversionsBenchmark {
+
+	static final int calls = 1000000;
+	static final int rounds = 20;
+
+	static public class Celsius {
+		final double v;
+
+		public Celsius(double v) {
+			this.v = v;
+		}
+	}
+
+	static public class Kelvin {
+		final double v;
+
+		public Kelvin(double v) {
+			this.v = v;
+		}
+	}
+
+	static public class CelsiusToKelvin implements Function<Celsius, Kelvin> {
+		@Override
+		public Kelvin apply(Celsius c) {
+			return new Kelvin(c.v + 273.15);
+		}
+	}
+
+	public static void main(String[] a) {
+		Conversions.provideConversion(1, new CelsiusToKelvin(), "celsiusToKelvin");
+
+		List<Class> supplier = Collections.singletonList(Supplier.class);
+		List<Class> listOfString = Arrays.asList(List.class, String.class);
+		List<Class> mapOfString = Arrays.asList(Map.class, String.class, Object.class);
+		List<Class> kelvin = Collections.singletonList(Kelvin.class);
+
+		Supplier<String> s = () -> "";
+
+		time("fits", s, supplier);
+		time("list promotion", "a", listOfString);
+		time("map promotion", 1.0, mapOfString);
+		time("pass through", 1.0, supplier);
+
+		long search = 0, sink = 0;
+		for (int round = 0; round < rounds; round++) {
+			long t0 = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				sink += Conversions.getConversion(new Celsius(i), kelvin)
+						   .size();
+			long t1 = System.nanoTime();
+			if (round >= rounds / 4) search += t1 - t0;
+		}
+		long count = (long) calls * (rounds - rounds / 4);
+		System.out.println(String.format("%-16s | getConversion %8.1f ns | (%d)", "graph search", search / (double) count, sink));
+	}
+
+	static void time(String name, Object value, List<Class> fit) {
+		long convert = 0, sink = 0;
+		for (int round = 0; round < rounds; round++) {
+			long t0 = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				sink += System.identityHashCode(Conversions.convert(value, fit)) & 1;
+			long t1 = System.nanoTime();
+
+			// the first quarter of the rounds are warm-up
+			if (round >= rounds / 4) convert += t1 - t0;
+		}
+		long count = (long) calls * (rounds - rounds / 4);
+		System.out.println(String.format("%-16s | convert %8.1f ns | (%d)", name, convert / (double) count, sink));
+	}
+}
@@ -0,0 +1,85 @@
+package tests;
+
+import field.utility.Dict;
+import field.utility.Log;
+import field.utility.Rect;
+import fieldbox.boxes.Box;
+import fieldbox.io.IO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Saves documents of 100, 1000 and 5000 boxes, each with 'code' (8k of text) and a few ordinary properties, into a scratch directory. For each size it reports how long the caller is held up
+ * by writeOutDocument and how long it takes for the save to actually reach the disk, for a first save, a save where nothing has changed and a save after 1% of the boxes have been edited.
+ * <p>
+ * There's no JMH here: run main() with the Field classpath (on Java 8) and read the ms figures.
+ */
+public class IOSaveBenchmark {
+
+	static final Dict.Prop<String> code = new Dict.Prop<>("code");
+
+	public static void main(String[] a) throws IOException {
+		// as LoggingDefaults does
+		Log.fallthrough((x, y) -> {
+		});
+
+		File dir = Files.createTempDirectory("field.iosave")
+				.toFile();
+		IO io = new IO(dir.getAbsolutePath());
+		io.addFilespec("code", ".js", "js");
+
+		for (int n : new int[]{100, 1000, 5000})
+			run(io, n);
+	}
+
+	static void run(IO io, int n) throws IOException {
+		Random r = new Random(n);
+		Box root = new Box();
+		Box[] boxes = new Box[n];
+		for (int i = 0; i < n; i++) {
+			boxes[i] = new Box();
+			boxes[i].properties.put(Box.name, "box" + i);
+			boxes[i].properties.put(Box.frame, new Rect(r.nextFloat() * 1000, r.nextFloat() * 1000, 100, 100));
+			boxes[i].properties.put(code, text(r, 8 * 1024));
+			root.connect(boxes[i]);
+		}
+
+		String filename = IO.WORKSPACE + "/bench" + n + "/bench" + n + ".field2";
+		String subdirectory = "bench" + n;
+
+		time(io, n, "first save", filename, subdirectory, root);
+		time(io, n, "unchanged", filename, subdirectory, root);
+		for (int i = 0; i < Math.max(1, n / 100); i++)
+			boxes[r.nextInt(n)].properties.put(code, text(r, 8 * 1024));
+		time(io, n, "1% edited", filename, subdirectory, root);
+	}
+
+	static void time(IO io, int n, String name, String filename, String subdirectory, Box root) throws IOException {
+		long t0 = System.nanoTime();
+		IO.Document d = io.compileDocument(subdirectory, root, Collections.singletonMap(root, ">>root<<"));
+		long t1 = System.nanoTime();
+		CompletableFuture<Void> saved = io.writeOutDocument(filename, d);
+		long t2 = System.nanoTime();
+		io.waitFor(saved);
+		long t3 = System.nanoTime();
+
+		System.out.println(String.format("%5d boxes | %-10s | compile %7.1f ms | writeOutDocument returns %7.1f ms | on disk %7.1f ms", n, name, (t1 - t0) / 1e6, (t2 - t1) / 1e6,
+						 (t3 - t1) / 1e6));
+	}
+
+	static String text(Random r, int length) {
+		StringBuilder s = new StringBuilder(length);
+		while (s.length() < length)
+			s.append("var x")
+			 .append(r.nextInt(1000))
+			 .append(" = ")
+			 .append(r.nextDouble())
+			 .append("\n");
+		return s.toString();
+	}
+}
@@ -0,0 +1,113 @@
+package tests;
+
+import field.utility.Dict;
+import field.utility.Log;
+import fieldbox.boxes.Box;
+
+import java.util.Optional;
+
+/**
+ * Times the inherited property lookups that Box.first and Box.find do, against the breadth-first walk they did before they were cached, for graphs of increasing depth and fan-out. Each graph
+ * is a spine 'depth' boxes deep below a root that carries the property, with 'fanOut' children at every level (only one of which carries on down), so there are depth * fanOut + 1 boxes.
+ * <p>
+ * first is looked up from the deepest box (upwards, so it walks the spine), find with both() from the same box (which walks everything). 'miss' is the cost of a lookup straight after the
+ * topology has changed (a connect or disconnect anywhere in the graph), when the cached entry has to be recomputed.
+ * <p>
+ * There's no JMH here: run main() with the Field classpath (on Java 8) and read the ns/lookup figures.
+ */
+public class InheritedLookupBenchmark {
+
+	static public final Dict.Prop<String> inheritedValue = new Dict.Prop<>("inheritedValue").type()
+											   .toCannon()
+											   .doc("benchmark property, set on the root");
+
+	static final int calls = 200000;
+	static final int rounds = 20;
+
+	public static void main(String[] a) {
+		// as LoggingDefaults does
+		Log.fallthrough((x, y) -> {
+		});
+
+		for (int depth : new int[]{2, 8, 32})
+			for (int fanOut : new int[]{2, 8, 32})
+				run(depth, fanOut);
+	}
+
+	static void run(int depth, int fanOut) {
+		Box root = new Box();
+		root.properties.put(inheritedValue, "root");
+
+		Box at = root;
+		for (int d = 0; d < depth; d++) {
+			Box next = null;
+			for (int f = 0; f < fanOut; f++) {
+				Box c = new Box();
+				at.connect(c);
+				if (f == 0) next = c;
+			}
+			at = next;
+		}
+		Box leaf = at;
+		Box spare = new Box();
+
+		// walking everything is slow enough on the larger graphs that it gets fewer calls
+		int findCalls = Math.max(1000, calls / (depth * fanOut));
+
+		long walkFirst = 0, cachedFirst = 0, walkFind = 0, cachedFind = 0, missFirst = 0, sink = 0;
+		for (int round = 0; round < rounds; round++) {
+			long t0 = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				sink += leaf.breadthFirst(leaf.upwards())
+					    .map(x -> x.properties.get(inheritedValue))
+					    .filter(x -> x != null)
+					    .findFirst()
+					    .map(String::length)
+					    .orElse(0);
+			long t1 = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				sink += leaf.first(inheritedValue)
+					    .map(String::length)
+					    .orElse(0);
+			long t2 = System.nanoTime();
+			for (int i = 0; i < findCalls; i++)
+				sink += leaf.breadthFirst(leaf.both())
+					    .map(x -> x.properties.get(inheritedValue))
+					    .filter(x -> x != null)
+					    .count();
+			long t3 = System.nanoTime();
+			for (int i = 0; i < findCalls; i++)
+				sink += leaf.find(inheritedValue, leaf.both())
+					    .count();
+			long t4 = System.nanoTime();
+
+			// each lookup follows a change to the topology, so none of them hit the cache
+			long miss = 0;
+			for (int i = 0; i < findCalls; i++) {
+				if ((i & 1) == 0) root.connect(spare);
+				else root.disconnect(spare);
+				long m0 = System.nanoTime();
+				Optional<String> o = leaf.first(inheritedValue);
+				miss += System.nanoTime() - m0;
+				sink += o.map(String::length)
+					 .orElse(0);
+			}
+
+			// the first quarter of the rounds are warm-up
+			if (round >= rounds / 4) {
+				walkFirst += t1 - t0;
+				cachedFirst += t2 - t1;
+				walkFind += t3 - t2;
+				cachedFind += t4 - t3;
+				missFirst += miss;
+			}
+		}
+
+		int timedRounds = rounds - rounds / 4;
+		double count = (double) calls * timedRounds;
+		double findCount = (double) findCalls * timedRounds;
+		System.out.println(String.format("depth %2d, fan-out %2d (%4d boxes) | first: walk %7.0f ns, cached %5.0f ns, miss %7.0f ns | find both(): walk %8.0f ns, cached %6.0f ns | (%d)",
+						 depth, fanOut, depth * fanOut + 1, walkFirst / count, cachedFirst / count, missFirst / findCount, walkFind / findCount, cachedFind / findCount,
+						 sink));
+	}
+}
@@ -0,0 +1,143 @@
+package tests;
+
+import field.app.RunLoop;
+import field.message.MessageQueue;
+import field.utility.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks MessageQueue: ordering and exact-address routing, that producers blocked by a full queue park (rather than spin) and are let through as room is made, that the queue doesn't hold on to
+ * messages it has delivered, and that stop() takes a main-thread queue's consumer off the main loop.
+ * <p>
+ * There's no JUnit here: run main() with the Field classpath (on Java 8). It throws on the first thing that's wrong.
+ */
+public class MessageQueueTest {
+
+	public static void main(String[] a) throws Exception {
+		// as LoggingDefaults does
+		Log.fallthrough((x, y) -> {
+		});
+
+		ordering();
+		blocking();
+		releases();
+		stopDetaches();
+		System.out.println("MessageQueueTest: all passed");
+	}
+
+	static void ordering() throws InterruptedException {
+		MessageQueue<Integer, String> q = new MessageQueue<>(MessageQueue.Delivery.dispatcher);
+		List<Integer> exact = Collections.synchronizedList(new ArrayList<>());
+		List<Integer> predicate = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(1);
+		q.registerExact("a", exact::add);
+		q.register(x -> x.startsWith("b"), m -> {
+			predicate.add(m);
+			if (m == 999) done.countDown();
+		});
+		for (int i = 0; i < 1000; i++)
+			q.accept(i % 2 == 0 ? "a" : "b" + i, i);
+
+		check(done.await(5, TimeUnit.SECONDS), "everything delivered");
+		for (int i = 0; i < exact.size(); i++)
+			check(exact.get(i) == 2 * i, "exact handler sees its messages in order");
+		for (int i = 0; i < predicate.size(); i++)
+			check(predicate.get(i) == 2 * i + 1, "predicate handler sees its messages in order");
+		check(exact.size() == 500 && predicate.size() == 500, "nothing lost or misrouted");
+		q.stop();
+		System.out.println(" ordering ok");
+	}
+
+	static void blocking() throws InterruptedException {
+		MessageQueue<Integer, String> q = new MessageQueue<>(MessageQueue.Delivery.dispatcher);
+		q.setCapacity(4, MessageQueue.Overflow.block);
+		q.blockMs = 10000;
+
+		CountDownLatch hold = new CountDownLatch(1);
+		List<Integer> got = Collections.synchronizedList(new ArrayList<>());
+		q.registerExact("x", m -> {
+			try {
+				hold.await();
+			} catch (InterruptedException e) {
+			}
+			got.add(m);
+		});
+
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < 20; i++)
+				q.accept("x", i);
+		});
+		producer.start();
+
+		// the handler is stuck, so the producer fills the queue and then has to wait
+		long until = System.currentTimeMillis() + 5000;
+		while (producer.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < until) Thread.sleep(1);
+		check(producer.getState() == Thread.State.TIMED_WAITING, "a blocked producer parks, was " + producer.getState());
+
+		hold.countDown();
+		producer.join(5000);
+		check(!producer.isAlive(), "a blocked producer is let through once there's room");
+
+		until = System.currentTimeMillis() + 5000;
+		while (got.size() < 20 && System.currentTimeMillis() < until) Thread.sleep(1);
+		check(got.size() == 20, "nothing dropped, got " + got.size());
+		check(q.getStats().dropped.get() == 0, "nothing counted as dropped");
+		q.stop();
+		System.out.println(" blocking ok");
+	}
+
+	static void releases() throws InterruptedException {
+		MessageQueue<Object, String> q = new MessageQueue<>(MessageQueue.Delivery.dispatcher);
+		CountDownLatch done = new CountDownLatch(1);
+		q.registerExact("x", m -> done.countDown());
+
+		Object message = new Object();
+		WeakReference<Object> w = new WeakReference<>(message);
+		q.accept("x", message);
+		message = null;
+		check(done.await(5, TimeUnit.SECONDS), "delivered");
+
+		check(collected(w), "the last message delivered isn't kept alive by the queue");
+		q.stop();
+		System.out.println(" releases ok");
+	}
+
+	static void stopDetaches() throws InterruptedException {
+		MessageQueue<Object, String> q = new MessageQueue<>(MessageQueue.Delivery.mainThread);
+		List<Object> got = new ArrayList<>();
+		q.registerExact("x", got::add);
+		q.accept("x", "hello");
+		RunLoop.main.getLoop()
+			    .updateAll();
+		check(got.size() == 1, "a main thread queue is drained by the main loop");
+
+		WeakReference<Object> w = new WeakReference<>(q);
+		q.stop();
+		q = null;
+		// the consumer notices the stop and detaches itself at the next update (and the Scene lets go of it at the one after)
+		RunLoop.main.getLoop()
+			    .updateAll();
+		RunLoop.main.getLoop()
+			    .updateAll();
+		check(collected(w), "after stop() the main loop no longer refers to the queue");
+		System.out.println(" stop detaches ok");
+	}
+
+	static boolean collected(WeakReference<?> w) throws InterruptedException {
+		for (int i = 0; i < 20 && w.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		return w.get() == null;
+	}
+
+	static void check(boolean b, String what) {
+		if (!b) throw new AssertionError(what);
+	}
+}
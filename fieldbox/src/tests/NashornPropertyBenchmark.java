@@ -0,0 +1,86 @@
+package tests;
+
+import field.nashorn.api.scripting.NashornScriptEngineFactory;
+import field.utility.Dict;
+import field.utility.Log;
+import fieldbox.boxes.Box;
+import fieldbox.boxes.plugins.Missing;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * Times reading '_.someProperty' from JavaScript, the way a script in a box does, in an engine set up like fieldnashorn.Nashorn's (fieldlinker.Linker has to be found by the ServiceLoader,
+ * so fieldlinker/META-INF needs to be on the classpath). Reads are timed for a property set on '_' itself, one inherited from a parent, one that was first made by a script (and so only has an
+ * interned Prop), and the same property looked up by a name that isn't a constant (_[name]), which can't be specialized at link time. A read of an ordinary JavaScript object is there for
+ * scale, and '_.someProperty' is timed again with Missing's read log paused, to show what keeping that log costs.
+ * <p>
+ * There's no JMH here: run main() with the Field classpath (on Java 8) and read the ns/read figures.
+ */
+public class NashornPropertyBenchmark {
+
+	static public final Dict.Prop<Number> someProperty = new Dict.Prop<>("someProperty").type()
+									   .toCannon()
+									   .doc("benchmark property");
+	static public final Dict.Prop<Number> inheritedProperty = new Dict.Prop<>("inheritedProperty").type()
+											 .toCannon()
+											 .doc("benchmark property, set on the parent");
+
+	static final int calls = 1000000;
+	static final int rounds = 20;
+
+	public static void main(String[] a) throws ScriptException, NoSuchMethodException {
+		// as LoggingDefaults does
+		Log.fallthrough((x, y) -> {
+		});
+
+		ScriptEngine engine = new NashornScriptEngineFactory().getScriptEngine("-scripting", "--optimistic-types=true");
+
+		Box parent = new Box();
+		Box box = new Box();
+		parent.connect(box);
+		parent.properties.put(inheritedProperty, 1.0);
+		box.properties.put(someProperty, 1.0);
+
+		engine.eval("function plain(o, n) { var s = 0; for (var i = 0; i < n; i++) s += o.someProperty; return s }");
+		engine.eval("function own(_, n) { var s = 0; for (var i = 0; i < n; i++) s += _.someProperty; return s }");
+		engine.eval("function inherited(_, n) { var s = 0; for (var i = 0; i < n; i++) s += _.inheritedProperty; return s }");
+		engine.eval("function scripted(_, n) { var s = 0; for (var i = 0; i < n; i++) s += _.scriptedProperty; return s }");
+		engine.eval("function named(_, k, n) { var s = 0; for (var i = 0; i < n; i++) s += _[k]; return s }");
+		engine.eval("function setUp(_) { _.scriptedProperty = 1.0 }");
+
+		Invocable invocable = (Invocable) engine;
+		invocable.invokeFunction("setUp", box);
+		Object o = engine.eval("({someProperty: 1.0})");
+
+		time(invocable, "js object", "plain", o);
+		time(invocable, "_.someProperty", "own", box);
+		time(invocable, "inherited", "inherited", box);
+		time(invocable, "made by script", "scripted", box);
+		time(invocable, "_[name]", "named", box, "someProperty");
+
+		Missing.pause();
+		time(invocable, "Missing paused", "own", box);
+		Missing.play();
+	}
+
+	static void time(Invocable invocable, String name, String function, Object... receiver) throws ScriptException, NoSuchMethodException {
+		Object[] args = new Object[receiver.length + 1];
+		System.arraycopy(receiver, 0, args, 0, receiver.length);
+		args[receiver.length] = calls;
+
+		long read = 0;
+		double sink = 0;
+		for (int round = 0; round < rounds; round++) {
+			long t0 = System.nanoTime();
+			sink += ((Number) invocable.invokeFunction(function, args)).doubleValue();
+			long t1 = System.nanoTime();
+
+			// the first quarter of the rounds are warm-up
+			if (round >= rounds / 4) read += t1 - t0;
+		}
+		long count = (long) calls * (rounds - rounds / 4);
+		System.out.println(String.format("%-16s | read %8.1f ns | (%.0f)", name, read / (double) count, sink));
+	}
+}
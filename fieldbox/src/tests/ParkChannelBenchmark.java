@@ -0,0 +1,64 @@
+package tests;
+
+import field.app.ThreadSync;
+
+import java.util.function.Supplier;
+
+/**
+ * Measures how many ThreadSync.yield round trips a second a fiber and the thread that services it can make through each kind of ThreadSync.Channel. A stand-in fiber thread does what yield does
+ * (put to 'output', take from 'input') and this thread does what serviceAndCull does (take from 'output', put to 'input'), with QueueChannel (the original BlockingQueue) and with ParkChannel at
+ * a few different spin counts.
+ * <p>
+ * How much spinning helps depends on how many cores there are for the two threads to sit on (Runtime.availableProcessors() is printed first). There's no JMH here: run main() with the Field
+ * classpath (on Java 8) and read the yields/s figures.
+ */
+public class ParkChannelBenchmark {
+
+	static final int yields = 200000;
+	static final int rounds = 8;
+
+	public static void main(String[] a) throws InterruptedException {
+		System.out.println(Runtime.getRuntime()
+					  .availableProcessors() + " processors");
+
+		run("QueueChannel", ThreadSync.QueueChannel::new);
+		for (int spins : new int[]{0, 256, 4096}) {
+			ThreadSync.ParkChannel.spins = spins;
+			run("ParkChannel, " + spins + " spins", ThreadSync.ParkChannel::new);
+		}
+	}
+
+	static void run(String name, Supplier<ThreadSync.Channel> make) throws InterruptedException {
+		long total = 0;
+		for (int round = 0; round < rounds; round++) {
+			ThreadSync.Channel output = make.get();
+			ThreadSync.Channel input = make.get();
+
+			Thread fiber = new Thread(() -> {
+				try {
+					for (int i = 0; i < yields; i++) {
+						output.put(i);
+						input.take();
+					}
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+
+			long t0 = System.nanoTime();
+			fiber.start();
+			for (int i = 0; i < yields; i++) {
+				Object o = output.take();
+				if (!o.equals(i)) throw new IllegalStateException(o + " " + i);
+				input.put(ThreadSync.NULL);
+			}
+			fiber.join();
+			long t1 = System.nanoTime();
+
+			// the first quarter of the rounds are warm-up
+			if (round >= rounds / 4) total += t1 - t0;
+		}
+		double seconds = total / 1e9;
+		System.out.println(String.format("%-24s | %9.0f yields/s", name, (double) yields * (rounds - rounds / 4) / seconds));
+	}
+}
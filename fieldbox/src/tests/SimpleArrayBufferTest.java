@@ -0,0 +1,161 @@
+package tests;
+
+import field.graphics.GraphicsContext;
+import field.graphics.SimpleArrayBuffer;
+import field.utility.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+
+/**
+ * Checks what SimpleArrayBuffer sends to OpenGL, against a stub SimpleArrayBuffer.GL that records every call and keeps its own copy of the buffer's storage: the setup calls, a complete upload the
+ * first time, what's new when the limit grows, only the dirty ranges after that (merged down to maxRanges), a complete upload again after floats(false), and the delete. Whatever was uploaded has to match what was written.
+ * <p>
+ * There's no JUnit here: run main() with the Field classpath (on Java 8). It throws on the first thing that's wrong.
+ */
+public class SimpleArrayBufferTest {
+
+	static class Recording implements SimpleArrayBuffer.GL {
+		final List<String> calls = new ArrayList<>();
+		ByteBuffer storage;
+		int bound = 0;
+
+		@Override
+		public int genBuffer() {
+			calls.add("gen");
+			return 7;
+		}
+
+		@Override
+		public void bindBuffer(int binding, int name) {
+			calls.add("bind " + name);
+			bound = name;
+		}
+
+		@Override
+		public void bufferData(int binding, long bytes) {
+			calls.add("data " + bytes);
+			storage = ByteBuffer.allocate((int) bytes)
+					    .order(ByteOrder.nativeOrder());
+		}
+
+		@Override
+		public void bufferSubData(int binding, long offset, ByteBuffer data) {
+			check(bound == 7, "uploads happen with the buffer bound");
+			calls.add("sub " + offset + " " + data.remaining());
+			ByteBuffer d = data.duplicate();
+			storage.position((int) offset);
+			storage.put(d);
+			storage.clear();
+		}
+
+		@Override
+		public void bufferSubData(int binding, long offset, FloatBuffer data) {
+			calls.add("subFloats " + offset + " " + data.remaining());
+		}
+
+		@Override
+		public void attribPointer(int attribute, int dimension, long offset) {
+			calls.add("pointer " + attribute + " " + dimension + " " + offset);
+		}
+
+		@Override
+		public void attribDivisor(int attribute, int divisor) {
+			calls.add("divisor " + attribute + " " + divisor);
+		}
+
+		@Override
+		public void deleteBuffer(int name) {
+			calls.add("delete " + name);
+		}
+
+		List<String> take() {
+			List<String> r = new ArrayList<>(calls);
+			calls.clear();
+			return r;
+		}
+	}
+
+	public static void main(String[] a) {
+		// as LoggingDefaults does
+		Log.fallthrough((x, y) -> {
+		});
+
+		Recording gl = new Recording();
+		SimpleArrayBuffer.gl = gl;
+		GraphicsContext.newContext();
+
+		int size = 100, dimension = 2;
+		SimpleArrayBuffer b = new SimpleArrayBuffer(size, GL_ARRAY_BUFFER, 1, dimension, 0);
+		FloatBuffer f = b.floats(false);
+		for (int i = 0; i < size * dimension; i++)
+			f.put(i, i);
+
+		check(b.clean(size / 2), "first clean uploads");
+		expect(gl.take(), "gen", "bind 7", "data 800", "pointer 1 2 0", "bind 0", "bind 7", "sub 0 400");
+		same(gl, b, size / 2);
+
+		// growing the limit uploads what's new, even though nothing was marked dirty
+		check(b.clean(size), "a larger limit uploads");
+		expect(gl.take(), "bind 7", "sub 400 400");
+		same(gl, b, size);
+
+		check(!b.clean(size), "nothing to do when nothing has changed");
+		expect(gl.take());
+
+		// a couple of vertices written in place
+		f = b.floats(true);
+		f.put(20, -1);
+		f.put(21, -2);
+		f.put(22, -3);
+		b.dirty(10, 12);
+		check(b.clean(size), "dirty ranges upload");
+		expect(gl.take(), "bind 7", "sub 80 16");
+		same(gl, b, size);
+
+		// more separate ranges than maxRanges, the closest get merged
+		for (int v : new int[]{0, 10, 20, 30, 40, 90}) {
+			f.put(v * dimension, 1000 + v);
+			b.dirty(v, v + 1);
+		}
+		check(b.clean(size), "several dirty ranges upload");
+		List<String> calls = gl.take();
+		check(calls.get(0)
+			   .equals("bind 7"), "binds first");
+		check(calls.size() - 1 == SimpleArrayBuffer.maxRanges, "ranges merged down to maxRanges, got " + calls);
+		same(gl, b, size);
+
+		// floats(false) means the whole thing
+		b.floats(false)
+		 .put(5, 55);
+		check(b.clean(size), "a write through floats(false) uploads");
+		expect(gl.take(), "bind 7", "sub 0 800");
+		same(gl, b, size);
+
+		b.destroy();
+		expect(gl.take(), "delete 7");
+
+		System.out.println("SimpleArrayBufferTest: all passed");
+	}
+
+	static void same(Recording gl, SimpleArrayBuffer b, int limit) {
+		FloatBuffer uploaded = gl.storage.asFloatBuffer();
+		FloatBuffer here = b.floats(true);
+		for (int i = 0; i < limit * b.getDimension(); i++)
+			check(uploaded.get(i) == here.get(i), "uploaded contents match at float " + i + ": " + uploaded.get(i) + " vs " + here.get(i));
+	}
+
+	static void expect(List<String> calls, String... expected) {
+		check(calls.equals(Arrays.asList(expected)), "expected " + Arrays.asList(expected) + " got " + calls);
+	}
+
+	static void check(boolean b, String what) {
+		if (!b) throw new AssertionError(what);
+	}
+}
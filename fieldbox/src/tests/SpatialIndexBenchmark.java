@@ -0,0 +1,131 @@
+package tests;
+
+import field.linalg.Vec2;
+import field.utility.Rect;
+import fieldbox.boxes.Box;
+import fieldbox.boxes.SpatialIndex;
+
+import java.util.Random;
+
+/**
+ * Times point and rectangle queries over 100, 1000 and 10000 boxes, walking the graph (what FrameManipulation.hit and Intersects.startAt do without an index) against SpatialIndex.
+ * <p>
+ * Each round stands in for one update cycle: 1% of the frames are moved with a put, another 1% are changed in place, one box is connected and one disconnected. The cost of bringing the index
+ * up to date after that (journal, reconcile and the once-per-cycle revalidation) is reported separately as 'tick', next to what a full rebuild costs.
+ * <p>
+ * There's no JMH here: run main() with the Field classpath (on Java 8) and read the figures.
+ */
+public class SpatialIndexBenchmark {
+
+	static final int queries = 10000;
+	static final int rounds = 80;
+
+	public static void main(String[] a) {
+		for (int n : new int[]{100, 1000, 10000})
+			run(n);
+	}
+
+	static void run(int n) {
+		Random r = new Random(n);
+		float extent = (float) Math.sqrt(n) * 200;
+
+		Box root = new Box();
+		Box[] boxes = new Box[n];
+		for (int i = 0; i < n; i++) {
+			boxes[i] = new Box();
+			boxes[i].properties.put(Box.frame, randomFrame(r, extent));
+			root.connect(boxes[i]);
+		}
+		SpatialIndex index = new SpatialIndex(root);
+		index.connect(root);
+
+		// walking the graph is slow enough at 10000 boxes that it gets fewer queries
+		int walkQueries = Math.min(queries, Math.max(100, 1000000 / n));
+
+		Vec2[] points = new Vec2[queries];
+		Rect[] rects = new Rect[queries];
+		for (int i = 0; i < queries; i++) {
+			points[i] = new Vec2(r.nextFloat() * extent, r.nextFloat() * extent);
+			rects[i] = new Rect(points[i].x, points[i].y, 50 + r.nextFloat() * 400, 50 + r.nextFloat() * 400);
+		}
+
+		long walkAt = 0, indexAt = 0, walkWithin = 0, indexWithin = 0, tick = 0, rebuild = 0;
+		long sink = 0;
+
+		for (int round = 0; round < rounds; round++) {
+			for (int i = 0; i < Math.max(1, n / 100); i++) {
+				Box b = boxes[r.nextInt(n)];
+				b.properties.put(Box.frame, b.properties.get(Box.frame)
+								   .translate(new Vec2(r.nextFloat() * 100 - 50, r.nextFloat() * 100 - 50)));
+				boxes[r.nextInt(n)].properties.get(Box.frame).x += r.nextFloat() * 100 - 50;
+			}
+			int replaced = r.nextInt(n);
+			root.disconnect(boxes[replaced]);
+			boxes[replaced] = new Box();
+			boxes[replaced].properties.put(Box.frame, randomFrame(r, extent));
+			root.connect(boxes[replaced]);
+
+			// the first quarter of the rounds are warm-up
+			boolean timed = round >= rounds / 4;
+
+			long t0 = System.nanoTime();
+			index.revalidate();
+			index.update();
+			long t1 = System.nanoTime();
+			for (int i = 0; i < walkQueries; i++)
+				sink += walk(root, points[i]);
+			long t2 = System.nanoTime();
+			for (Vec2 p : points)
+				sink += index.at(p)
+					     .size();
+			long t3 = System.nanoTime();
+			for (int i = 0; i < walkQueries; i++)
+				sink += walk(root, rects[i]);
+			long t4 = System.nanoTime();
+			for (Rect q : rects)
+				sink += index.within(q)
+					     .size();
+			long t5 = System.nanoTime();
+			index.rebuild();
+			long t6 = System.nanoTime();
+
+			if (timed) {
+				tick += t1 - t0;
+				walkAt += t2 - t1;
+				indexAt += t3 - t2;
+				walkWithin += t4 - t3;
+				indexWithin += t5 - t4;
+				rebuild += t6 - t5;
+			}
+		}
+
+		int timedRounds = rounds - rounds / 4;
+		long count = (long) queries * timedRounds;
+		long walkCount = (long) walkQueries * timedRounds;
+		System.out.println(String.format("%6d boxes | at: walk %9.0f ns, index %7.0f ns | within: walk %9.0f ns, index %7.0f ns | tick %7.1f us, rebuild %7.1f us | (%d)", n,
+						 walkAt / (double) walkCount, indexAt / (double) count, walkWithin / (double) walkCount, indexWithin / (double) count, tick / 1000.0 / timedRounds,
+						 rebuild / 1000.0 / timedRounds, sink));
+	}
+
+	static Rect randomFrame(Random r, float extent) {
+		return new Rect(r.nextFloat() * extent, r.nextFloat() * extent, 100 + r.nextFloat() * 200, 50 + r.nextFloat() * 150);
+	}
+
+	static int walk(Box root, Vec2 p) {
+		int[] c = {0};
+		root.forEachBreadthFirst(root.both(), b -> {
+			Rect f = b.properties.get(Box.frame);
+			if (f != null && f.intersects(p)) c[0]++;
+		});
+		return c[0];
+	}
+
+	static int walk(Box root, Rect q) {
+		int[] c = {0};
+		root.forEachBreadthFirst(root.both(), b -> {
+			Rect f = b.properties.get(Box.frame);
+			if (f != null && f.intersects(q)) c[0]++;
+		});
+		return c[0];
+	}
+}
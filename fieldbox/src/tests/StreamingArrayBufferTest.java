@@ -0,0 +1,217 @@
+package tests;
+
+import field.graphics.GraphicsContext;
+import field.graphics.StreamingArrayBuffer;
+import field.utility.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+
+/**
+ * Checks StreamingArrayBuffer's ring against a stub StreamingArrayBuffer.GL whose fences only signal when we say so: that each new version goes into the next slice around, that the slice we
+ * leave gets fenced, that a slice whose fence has signalled is reused (and its fence deleted), that coming around to a slice that's still in use orphans the storage and starts again at the first
+ * slice (counting a stall and dropping every fence), and that destroy() deletes what's left.
+ * <p>
+ * There's no JUnit here: run main() with the Field classpath (on Java 8). It throws on the first thing that's wrong.
+ */
+public class StreamingArrayBufferTest {
+
+	static class Recording implements StreamingArrayBuffer.GL {
+		final List<String> calls = new ArrayList<>();
+		final Set<Long> live = new HashSet<>();
+		final Set<Long> signaled = new HashSet<>();
+		long nextFence = 1;
+
+		@Override
+		public int genBuffer() {
+			calls.add("gen");
+			return 7;
+		}
+
+		@Override
+		public void bindBuffer(int binding, int name) {
+			calls.add("bind " + name);
+		}
+
+		@Override
+		public void bufferData(int binding, long bytes) {
+			calls.add("data " + bytes);
+		}
+
+		@Override
+		public void bufferSubData(int binding, long offset, ByteBuffer data) {
+			calls.add("sub " + offset + " " + data.remaining());
+		}
+
+		@Override
+		public void attribPointer(int attribute, int dimension, long offset) {
+			calls.add("pointer " + attribute + " " + dimension + " " + offset);
+		}
+
+		@Override
+		public void attribDivisor(int attribute, int divisor) {
+			calls.add("divisor " + attribute + " " + divisor);
+		}
+
+		@Override
+		public long fence() {
+			long f = nextFence++;
+			calls.add("fence " + f);
+			live.add(f);
+			return f;
+		}
+
+		@Override
+		public boolean isSignaled(long fence) {
+			check(live.contains(fence), "asked about a fence that isn't live " + fence);
+			return signaled.contains(fence);
+		}
+
+		@Override
+		public void deleteFence(long fence) {
+			check(live.remove(fence), "deleted a fence that isn't live " + fence);
+			calls.add("deleteFence " + fence);
+		}
+
+		@Override
+		public void deleteBuffer(int name) {
+			calls.add("delete " + name);
+		}
+
+		List<String> take() {
+			List<String> r = new ArrayList<>(calls);
+			calls.clear();
+			return r;
+		}
+	}
+
+	public static void main(String[] a) {
+		// as LoggingDefaults does
+		Log.fallthrough((x, y) -> {
+		});
+
+		ring();
+		buffer();
+		System.out.println("StreamingArrayBufferTest: all passed");
+	}
+
+	static void ring() {
+		Recording gl = new Recording();
+		StreamingArrayBuffer.Ring r = new StreamingArrayBuffer.Ring(3);
+
+		// first time around, nothing is fenced yet
+		check(r.advance(gl) == 0 && !r.orphaned, "starts at slice 0");
+		expect(gl.take());
+		check(r.advance(gl) == 1 && !r.orphaned, "then slice 1");
+		expect(gl.take(), "fence 1");
+		check(r.advance(gl) == 2 && !r.orphaned, "then slice 2");
+		expect(gl.take(), "fence 2");
+
+		// back to slice 0, which the GPU has finished with
+		gl.signaled.add(1L);
+		check(r.advance(gl) == 0 && !r.orphaned, "a finished slice is reused");
+		expect(gl.take(), "fence 3", "deleteFence 1");
+		check(r.current() == 0, "current() is the slice just returned");
+
+		// slice 1 is still being read
+		check(r.advance(gl) == 0 && r.orphaned, "a slice still in use orphans and starts again at 0");
+		List<String> calls = gl.take();
+		check(calls.get(0)
+			   .equals("fence 4"), "the slice we leave is fenced first, got " + calls);
+		check(calls.containsAll(Arrays.asList("deleteFence 2", "deleteFence 3", "deleteFence 4")) && calls.size() == 4, "orphaning drops every fence, got " + calls);
+		check(gl.live.isEmpty(), "no fences left live after orphaning");
+
+		// and around we go again as if fresh
+		check(r.advance(gl) == 1 && !r.orphaned, "carries on after orphaning");
+		expect(gl.take(), "fence 5");
+
+		r.drop(gl);
+		expect(gl.take(), "deleteFence 5");
+		check(gl.live.isEmpty(), "drop() deletes every fence");
+
+		// a ring of one slice has to wait for (or orphan past) itself every time
+		StreamingArrayBuffer.Ring one = new StreamingArrayBuffer.Ring(1);
+		check(one.advance(gl) == 0 && !one.orphaned, "single slice, first");
+		check(one.advance(gl) == 0 && one.orphaned, "single slice, still in use");
+		gl.take();
+		gl.signaled.add(gl.nextFence);
+		check(one.advance(gl) == 0 && !one.orphaned, "single slice, finished with");
+		one.drop(gl);
+		check(gl.live.isEmpty(), "single slice, nothing left");
+
+		System.out.println(" ring ok");
+	}
+
+	static void buffer() {
+		Recording gl = new Recording();
+		StreamingArrayBuffer.gl = gl;
+		StreamingArrayBuffer.slices = 3;
+		GraphicsContext.newContext();
+
+		int size = 10, dimension = 2;
+		long slice = 4 * size * dimension;
+		StreamingArrayBuffer b = new StreamingArrayBuffer(size, GL_ARRAY_BUFFER, 1, dimension, 0);
+
+		b.floats(false)
+		 .put(0, 1);
+		check(b.clean(size), "first clean streams");
+		expect(gl.take(), "gen", "bind 7", "data " + 3 * slice, "pointer 1 2 0", "bind 0", "bind 7", "sub 0 " + slice, "pointer 1 2 0", "bind 0");
+
+		check(!b.clean(size), "nothing to do when nothing has changed");
+		expect(gl.take());
+
+		// each new version goes into the next slice, and the attribute follows it
+		b.dirty(0, 1);
+		check(b.clean(size), "second version");
+		expect(gl.take(), "bind 7", "fence 1", "sub " + slice + " " + slice, "pointer 1 2 " + slice, "bind 0");
+
+		// a smaller limit sends less, but still moves on
+		b.dirty(0, 1);
+		check(b.clean(size / 2), "third version");
+		expect(gl.take(), "bind 7", "fence 2", "sub " + 2 * slice + " " + slice / 2, "pointer 1 2 " + 2 * slice, "bind 0");
+
+		// slice 0 is still in use, so the storage is orphaned
+		int stalls = StreamingArrayBuffer.stalls;
+		b.dirty(0, 1);
+		check(b.clean(size), "fourth version");
+		List<String> calls = gl.take();
+		check(calls.containsAll(Arrays.asList("fence 3", "deleteFence 1", "deleteFence 2", "deleteFence 3", "data " + 3 * slice, "sub 0 " + slice, "pointer 1 2 0")), "orphaned, got " + calls);
+		check(calls.indexOf("data " + 3 * slice) < calls.indexOf("sub 0 " + slice), "orphaned before writing, got " + calls);
+		check(StreamingArrayBuffer.stalls == stalls + 1, "a stall is counted");
+
+		// around again, and this time the GPU keeps up
+		b.dirty(0, 1);
+		check(b.clean(size), "fifth version");
+		expect(gl.take(), "bind 7", "fence 4", "sub " + slice + " " + slice, "pointer 1 2 " + slice, "bind 0");
+		b.dirty(0, 1);
+		check(b.clean(size), "sixth version");
+		expect(gl.take(), "bind 7", "fence 5", "sub " + 2 * slice + " " + slice, "pointer 1 2 " + 2 * slice, "bind 0");
+		gl.signaled.add(4L);
+		b.dirty(0, 1);
+		check(b.clean(size), "seventh version");
+		expect(gl.take(), "bind 7", "fence 6", "deleteFence 4", "sub 0 " + slice, "pointer 1 2 0", "bind 0");
+		check(StreamingArrayBuffer.stalls == stalls + 1, "no stall when the GPU has caught up");
+
+		b.destroy();
+		calls = gl.take();
+		check(calls.containsAll(Arrays.asList("deleteFence 5", "deleteFence 6")) && calls.get(calls.size() - 1)
+												 .equals("delete 7"), "destroy deletes the fences and the buffer, got " + calls);
+		check(gl.live.isEmpty(), "no fences left after destroy");
+
+		System.out.println(" buffer ok");
+	}
+
+	static void expect(List<String> calls, String... expected) {
+		check(calls.equals(Arrays.asList(expected)), "expected " + Arrays.asList(expected) + " got " + calls);
+	}
+
+	static void check(boolean b, String what) {
+		if (!b) throw new AssertionError(what);
+	}
+}
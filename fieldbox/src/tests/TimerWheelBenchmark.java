@@ -0,0 +1,95 @@
+package tests;
+
+import field.app.TimerWheel;
+import field.graphics.Scene;
+import field.utility.Log;
+
+import java.util.Random;
+
+/**
+ * Keeps 100000 timers pending (due at random over the next million ticks, and, separately, over the next ten minutes) and reports what that costs: to schedule one, to cancel one and to advance
+ * by a tick (including running whatever falls due in it). For comparison, 'performs' times a tick of a Scene with the same 100000 callbacks attached as the Performs that RunLoop.delayTicks
+ * used to attach, each of which was asked every tick whether it was due yet.
+ * <p>
+ * There's no JMH here: run main() with the Field classpath (on Java 8) and read the figures.
+ */
+public class TimerWheelBenchmark {
+
+	static final int pending = 100000;
+	static final int rounds = 8;
+	static final int ticks = 100000;
+	static final int sceneTicks = 200;
+
+	static int fired = 0;
+
+	public static void main(String[] a) {
+		// as LoggingDefaults does
+		Log.fallthrough((x, y) -> {
+		});
+
+		Random r = new Random(1);
+		Runnable fire = () -> fired++;
+
+		long schedule = 0, cancel = 0, tick = 0, ms = 0;
+		for (int round = 0; round < rounds; round++) {
+			TimerWheel w = new TimerWheel(0, 0);
+			TimerWheel.Timer[] timers = new TimerWheel.Timer[pending];
+
+			long t0 = System.nanoTime();
+			for (int i = 0; i < pending; i++)
+				timers[i] = w.atTick(fire, 1 + r.nextInt(1000000));
+			long t1 = System.nanoTime();
+			for (int i = 0; i < ticks; i++)
+				w.advance(i + 1, 0);
+			long t2 = System.nanoTime();
+			for (int i = 0; i < pending; i++)
+				timers[i].cancel();
+			long t3 = System.nanoTime();
+
+			// the same again in milliseconds, advanced 16ms at a time
+			for (int i = 0; i < pending; i++)
+				w.atMillis(fire, 1 + r.nextInt(600000));
+			long t4 = System.nanoTime();
+			for (int i = 0; i < ticks; i++)
+				w.advance(ticks, (i + 1) * 16L);
+			long t5 = System.nanoTime();
+
+			// the first quarter of the rounds are warm-up
+			if (round >= rounds / 4) {
+				schedule += t1 - t0;
+				tick += t2 - t1;
+				cancel += t3 - t2;
+				ms += t5 - t4;
+			}
+		}
+		int timed = rounds - rounds / 4;
+		System.out.println(String.format("timer wheel | schedule %6.1f ns | cancel %6.1f ns | tick %8.1f ns | 16ms step %8.1f ns | (%d fired)", schedule / (double) pending / timed,
+						 cancel / (double) pending / timed, tick / (double) ticks / timed, ms / (double) ticks / timed, fired));
+
+		long scene = 0;
+		for (int round = 0; round < rounds; round++) {
+			Scene s = new Scene();
+			for (int i = 0; i < pending; i++) {
+				int due = 1 + r.nextInt(1000000);
+				s.attach(new Scene.Perform() {
+					int t = 0;
+
+					@Override
+					public boolean perform(int pass) {
+						if (t++ > due) {
+							fire.run();
+							return false;
+						}
+						return true;
+					}
+				});
+			}
+			long t0 = System.nanoTime();
+			for (int i = 0; i < sceneTicks; i++)
+				s.updateAll();
+			long t1 = System.nanoTime();
+			if (round >= rounds / 4) scene += t1 - t0;
+		}
+		System.out.println(String.format("performs    | tick %8.1f ns", scene / (double) sceneTicks / timed));
+	}
+}
@@ -154,7 +154,7 @@ public class TextEditor extends Box implements IO.Loaded {
 			find(Watches.watches, both()).forEach(w -> {
 
 				w.getQueue()
-				 .register(x -> x.equals("selection.changed"), c -> {
+				 .registerExact("selection.changed", c -> {
 					 Log.log("shy", () -> "selection is now" + selection().count());
 
 					 System.out.println(" SELECTION is currently " + selection().collect(Collectors.toList()));
@@ -135,7 +135,7 @@ public class TextEditor_boxBrowser extends Box implements IO.Loaded {
 		find(Watches.watches, both()).forEach(w -> {
 
 			w.getQueue()
-			 .register(x -> x.equals("selection.changed"), c -> {
+			 .registerExact("selection.changed", c -> {
 				 Log.log("shy", () -> "selection is now" + selection().count());
 
 
@@ -209,14 +209,14 @@ public class TextEditor_boxBrowser extends Box implements IO.Loaded {
 			});
 		}
 		textEditor.hide();
-		textEditor.disconnected = true;
+		textEditor.setDisconnected(true);
 		show();
 	}
 
 	public void disable() {
 		hide();
 		enabled = false;
-		textEditor.disconnected = false;
+		textEditor.setDisconnected(false);
 	}
 
 
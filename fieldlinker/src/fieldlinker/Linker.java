@@ -10,11 +10,19 @@ import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
-import java.util.Arrays;
-import java.util.Collections;
+import java.lang.invoke.SwitchPoint;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- *
+ * Links property access, calls and 'new' on AsMap receivers from Nashorn.
+ * <p>
+ * Property gets and sets are specialized per property name: the receiver gets to turn the name into a key once, at link time (see AsMap.asMap_key), and the call site calls asMap_getKeyed /
+ * asMap_setKeyed with that key bound in. Each of these call sites hangs off a SwitchPoint for its property name, so invalidate(name) sends them all back through the linker. Receivers whose class
+ * overrides asMap_get (or asMap_set) below where asMap_getKeyed (asMap_setKeyed) is declared are linked through the plain methods, as they always were.
+ * <p>
+ * How often each call site has been linked (and relinked) is kept in 'sites', see report().
  */
 public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFactory {
 
@@ -45,16 +53,87 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 		default Object asMap_call(Object o) {
 			return asMap_call(o, Collections.EMPTY_MAP);
 		}
+
+		/**
+		 * called once, when a call site that gets or sets property 'p' is linked. Whatever is returned is handed back to asMap_getKeyed / asMap_setKeyed every time that site runs, for any
+		 * receiver of the same class, so it mustn't depend on this particular instance
+		 */
+		default Object asMap_key(String p) {
+			return p;
+		}
+
+		default Object asMap_getKeyed(Object key, String p) {
+			return asMap_get(p);
+		}
+
+		default Object asMap_setKeyed(Object key, String p, Object o) {
+			return asMap_set(p, o);
+		}
+	}
+
+	/**
+	 * link statistics for a call site
+	 */
+	static public class Site {
+		public final String description;
+		public final AtomicInteger links = new AtomicInteger();
+		public final AtomicInteger relinks = new AtomicInteger();
+
+		Site(String description) {
+			this.description = description;
+		}
+
+		@Override
+		public String toString() {
+			return description + " linked " + links + " relinked " + relinks;
+		}
+	}
+
+	static protected final Map<Object, Site> sites = Collections.synchronizedMap(new WeakHashMap<>());
+	static protected final Map<String, SwitchPoint> switchPoints = new ConcurrentHashMap<>();
+
+	/**
+	 * sends every call site that has been specialized for property 'name' back through the linker the next time it runs. Call this when the meaning of 'name' changes (for example, when a
+	 * different canonical Dict.Prop is installed for it).
+	 */
+	static public void invalidate(String name) {
+		SwitchPoint p = switchPoints.remove(name);
+		if (p != null) SwitchPoint.invalidateAll(new SwitchPoint[]{p});
+	}
+
+	static protected SwitchPoint switchPointFor(String name) {
+		return switchPoints.computeIfAbsent(name, k -> new SwitchPoint());
+	}
+
+	/**
+	 * the call sites that we've linked, most relinked first
+	 */
+	static public List<Site> report() {
+		List<Site> r;
+		synchronized (sites) {
+			r = new ArrayList<>(sites.values());
+		}
+		r.sort((a, b) -> Integer.compare(b.relinks.get(), a.relinks.get()));
+		return r;
+	}
+
+	static protected void count(LinkRequest linkRequest) {
+		Object token = linkRequest.getCallSiteToken();
+		if (token == null) return;
+		Site s = sites.computeIfAbsent(token, k -> new Site(linkRequest.getCallSiteDescriptor()
+											  .getName()));
+		if (s.links.getAndIncrement() > 0) s.relinks.incrementAndGet();
 	}
 
 
 	public Linker() {
-		System.err.println(" linker has been instantiated " + disabled + " " + debug);
+		if (debug) System.err.println(" linker has been instantiated " + disabled + " " + debug);
 	}
 
 	@Override
 	public GuardedInvocation getGuardedInvocation(LinkRequest linkRequest, LinkerServices linkerServices) throws Exception {
 		if (disabled) return null;
+		count(linkRequest);
 		if (debug) {
 			System.err.println("LINKER getGuardedInvocation :" + linkRequest + " " + linkerServices);
 			System.err.println(" " + Arrays.asList(linkRequest.getArguments()));
@@ -80,13 +159,8 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 			if (rec instanceof AsMap && ((AsMap) rec).asMap_isProperty(propertyName)) {
 
-				System.err.println(" linking AsMap/get 2" + rec);
-				MethodHandle get = MethodHandles.lookup()
-								.findVirtual(rec.getClass(), "asMap_get", MethodType.methodType(Object.class, String.class));
-
-				get = MethodHandles.insertArguments(get, 1, propertyName);
-
-				return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
+				if (debug) System.err.println(" linking AsMap/get 2" + rec);
+				return propertyGet(rec, propertyName);
 			}
 		} else if (linkRequest.getCallSiteDescriptor()
 				      .getNameToken(CallSiteDescriptor.OPERATOR)
@@ -96,7 +170,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 			if (rec instanceof AsMap) {
 
-				System.err.println(" linking AsMap/call " + rec);
+				if (debug) System.err.println(" linking AsMap/call " + rec);
 				MethodHandle get = MethodHandles.lookup()
 								.findVirtual(rec.getClass(), "asMap_call", MethodType.methodType(Object.class, Object.class, Object.class));
 				return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
@@ -109,7 +183,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 			if (rec instanceof AsMap) {
 
-				System.err.println(" linking AsMap/call " + rec);
+				if (debug) System.err.println(" linking AsMap/call " + rec);
 				MethodHandle get = MethodHandles.lookup()
 								.findVirtual(rec.getClass(), "asMap_call", MethodType.methodType(Object.class, Object.class));
 				return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
@@ -122,7 +196,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 			if (rec instanceof AsMap) {
 
-				System.err.println(" linking AsMap/new " + rec);
+				if (debug) System.err.println(" linking AsMap/new " + rec);
 				MethodHandle get = MethodHandles.lookup()
 								.findVirtual(rec.getClass(), "asMap_new", MethodType.methodType(Object.class, Object.class));
 				return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
@@ -135,7 +209,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 			if (rec instanceof AsMap) {
 
-				System.err.println(" linking AsMap/new " + rec);
+				if (debug) System.err.println(" linking AsMap/new " + rec);
 				MethodHandle get = MethodHandles.lookup()
 								.findVirtual(rec.getClass(), "asMap_new", MethodType.methodType(Object.class, Object.class, Object.class));
 				return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
@@ -152,13 +226,8 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 			if (rec instanceof AsMap && ((AsMap) rec).asMap_isProperty(propertyName)) {
 
-				System.err.println(" linking AsMap/get 1" + rec+" admits to property "+propertyName);
-				MethodHandle get = MethodHandles.lookup()
-								.findVirtual(rec.getClass(), "asMap_get", MethodType.methodType(Object.class, String.class));
-
-				get = MethodHandles.insertArguments(get, 1, propertyName);
-
-				return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
+				if (debug) System.err.println(" linking AsMap/get 1" + rec+" admits to property "+propertyName);
+				return propertyGet(rec, propertyName);
 			}
 		} else if (linkRequest.getCallSiteDescriptor()
 				      .getNameToken(CallSiteDescriptor.OPERATOR)
@@ -169,13 +238,8 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 			if (rec instanceof AsMap && ((AsMap) rec).asMap_isProperty(propertyName)) {
 
-				System.err.println(" linking AsMap/set " + rec);
-				MethodHandle get = MethodHandles.lookup()
-								.findVirtual(implementingClassFor(rec.getClass()), "asMap_set", MethodType.methodType(Object.class, String.class, Object.class));
-
-				get = MethodHandles.insertArguments(get, 1, propertyName);
-
-				return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
+				if (debug) System.err.println(" linking AsMap/set " + rec);
+				return propertySet(rec, propertyName);
 			}
 
 		} else if (linkRequest.getCallSiteDescriptor()
@@ -187,7 +251,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 				if (rec instanceof AsMap) {
 
-					System.err.println(" linking AsMap/setElement " + rec);
+					if (debug) System.err.println(" linking AsMap/setElement " + rec);
 					MethodHandle get = MethodHandles.lookup()
 									.findVirtual(implementingClassFor(rec.getClass()), "asMap_setElement", MethodType.methodType(Object.class, Object.class, Object.class));
 
@@ -201,7 +265,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 
 				if (rec instanceof AsMap) {
 
-					System.err.println(" linking AsMap/setElement " + rec);
+					if (debug) System.err.println(" linking AsMap/setElement " + rec);
 					MethodHandle get = MethodHandles.lookup()
 									.findVirtual(implementingClassFor(rec.getClass()), "asMap_setElement", MethodType.methodType(Object.class, Object.class, Object.class));
 
@@ -223,7 +287,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 				{
 
 					if (rec instanceof AsMap) {
-						System.err.println(" linking AsMap/property get " + rec);
+						if (debug) System.err.println(" linking AsMap/property get " + rec);
 						MethodHandle get = MethodHandles.lookup()
 										.findVirtual(rec.getClass(), "asMap_getElement", MethodType.methodType(Object.class, Integer.TYPE));
 
@@ -234,7 +298,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 				else
 				{
 					if (rec instanceof AsMap) {
-						System.err.println(" linking AsMap/property get " + rec);
+						if (debug) System.err.println(" linking AsMap/property get " + rec);
 						MethodHandle get = MethodHandles.lookup()
 										.findVirtual(rec.getClass(), "asMap_getElement", MethodType.methodType(Object.class, Object.class));
 
@@ -250,7 +314,7 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 				String propertyName = linkRequest.getCallSiteDescriptor()
 								 .getNameToken(CallSiteDescriptor.NAME_OPERAND);
 				if (rec instanceof AsMap) {
-					System.err.println(" linking AsMap/property get " + rec);
+					if (debug) System.err.println(" linking AsMap/property get " + rec);
 					MethodHandle get = MethodHandles.lookup()
 									.findVirtual(rec.getClass(), "asMap_getElement", MethodType.methodType(Object.class, Object.class));
 
@@ -266,6 +330,70 @@ public class Linker implements GuardingDynamicLinker, GuardingTypeConverterFacto
 		return null;
 	}
 
+	/**
+	 * links a get of 'propertyName' on 'rec', through asMap_getKeyed if we can, otherwise through plain asMap_get
+	 */
+	protected GuardedInvocation propertyGet(Object rec, String propertyName) throws NoSuchMethodException, IllegalAccessException {
+		MethodHandle get;
+		if (keyedGet.get(rec.getClass())) {
+			get = MethodHandles.lookup()
+					   .findVirtual(rec.getClass(), "asMap_getKeyed", MethodType.methodType(Object.class, Object.class, String.class));
+			get = MethodHandles.insertArguments(get, 1, ((AsMap) rec).asMap_key(propertyName), propertyName);
+			return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)), switchPointFor(propertyName));
+		}
+
+		get = MethodHandles.lookup()
+				   .findVirtual(rec.getClass(), "asMap_get", MethodType.methodType(Object.class, String.class));
+		get = MethodHandles.insertArguments(get, 1, propertyName);
+		return new GuardedInvocation(get, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
+	}
+
+	/**
+	 * links a set of 'propertyName' on 'rec', through asMap_setKeyed if we can, otherwise through plain asMap_set
+	 */
+	protected GuardedInvocation propertySet(Object rec, String propertyName) throws NoSuchMethodException, IllegalAccessException {
+		MethodHandle set;
+		if (keyedSet.get(rec.getClass())) {
+			set = MethodHandles.lookup()
+					   .findVirtual(implementingClassFor(rec.getClass()), "asMap_setKeyed", MethodType.methodType(Object.class, Object.class, String.class, Object.class));
+			set = MethodHandles.insertArguments(set, 1, ((AsMap) rec).asMap_key(propertyName), propertyName);
+			return new GuardedInvocation(set, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)), switchPointFor(propertyName));
+		}
+
+		set = MethodHandles.lookup()
+				   .findVirtual(implementingClassFor(rec.getClass()), "asMap_set", MethodType.methodType(Object.class, String.class, Object.class));
+		set = MethodHandles.insertArguments(set, 1, propertyName);
+		return new GuardedInvocation(set, Guards.isInstance(rec.getClass(), MethodType.methodType(Boolean.TYPE, Object.class)));
+	}
+
+	// a class can only be linked through asMap_getKeyed if that's declared no higher up than its asMap_get. Otherwise a subclass (Scene, Shader, ...) has overridden asMap_get and knows
+	// nothing about keys, and asMap_getKeyed would go straight past it. Likewise for asMap_set
+	static protected final ClassValue<Boolean> keyedGet = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return declaredNoHigher(type, "asMap_get", new Class[]{String.class}, "asMap_getKeyed", new Class[]{Object.class, String.class});
+		}
+	};
+
+	static protected final ClassValue<Boolean> keyedSet = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return declaredNoHigher(type, "asMap_set", new Class[]{String.class, Object.class}, "asMap_setKeyed", new Class[]{Object.class, String.class, Object.class});
+		}
+	};
+
+	static private boolean declaredNoHigher(Class<?> type, String plain, Class[] plainArgs, String keyed, Class[] keyedArgs) {
+		try {
+			Class<?> p = type.getMethod(plain, plainArgs)
+					 .getDeclaringClass();
+			Class<?> k = type.getMethod(keyed, keyedArgs)
+					 .getDeclaringClass();
+			return p.isAssignableFrom(k);
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
 	private Class<?> implementingClassFor(Class<? extends Object> aClass) {
 		if (aClass==null) return null;
 
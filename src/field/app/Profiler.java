@@ -0,0 +1,244 @@
+package field.app;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Opt-in frame timing for the main loop: how long each Perform takes at each pass of a Scene update, how long each Boxes 'insideRunLoop' entry takes and how long each phase of
+ * RunLoop.enterMainLoop takes.
+ * <p>
+ * Every timing goes into a log2 histogram for whatever was timed (a Perform, a named insideRunLoop entry, ...) at that pass, and, when 'trace' is set, into a ring of the most recent
+ * 'traceCapacity' events which can be written out as Chrome trace-event JSON (load it into chrome://tracing or Perfetto).
+ * <p>
+ * When 'enabled' is false begin() returns 0 and end(0, ...) returns immediately, so the cost of leaving the calls in place is a field read.
+ */
+public class Profiler {
+
+	static public volatile boolean enabled = System.getProperty("field.profile") != null;
+
+	/**
+	 * also record individual events for export with writeChromeTrace
+	 */
+	static public volatile boolean trace = true;
+
+	static public int traceCapacity = 1 << 16;
+
+	static public final String scene = "scene";
+	static public final String insideRunLoop = "insideRunLoop";
+	static public final String mainLoop = "mainLoop";
+
+	/**
+	 * durations bucketed by their log2 (in nanoseconds)
+	 */
+	static public class Histogram {
+		public final long[] buckets = new long[64];
+		public long count;
+		public long total;
+		public long max;
+
+		void add(long ns) {
+			buckets[63 - Long.numberOfLeadingZeros(Math.max(1, ns))]++;
+			count++;
+			total += ns;
+			max = Math.max(max, ns);
+		}
+
+		public double meanMs() {
+			return count == 0 ? 0 : total / (double) count / 1e6;
+		}
+
+		/**
+		 * an upper bound (to within a factor of two) on the 'p'th percentile, in milliseconds
+		 */
+		public double percentileMs(double p) {
+			long want = (long) Math.ceil(p * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= Math.max(1, want)) return Math.min(max, 2L << i) / 1e6;
+			}
+			return max / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("n=%d mean=%.3fms p50<%.3fms p99<%.3fms max=%.3fms total=%.1fms", count, meanMs(), percentileMs(0.5), percentileMs(0.99), max / 1e6, total / 1e6);
+		}
+	}
+
+	/**
+	 * something that is timed, along with its histograms by pass
+	 */
+	static public class Site {
+		public final String category;
+		public final String name;
+		public final Map<Integer, Histogram> byPass = new TreeMap<>();
+
+		Site(String category, String name) {
+			this.category = category;
+			this.name = name;
+		}
+
+		public Histogram total() {
+			Histogram h = new Histogram();
+			for (Histogram p : byPass.values()) {
+				for (int i = 0; i < h.buckets.length; i++)
+					h.buckets[i] += p.buckets[i];
+				h.count += p.count;
+				h.total += p.total;
+				h.max = Math.max(h.max, p.max);
+			}
+			return h;
+		}
+	}
+
+	static private final Map<Object, Site> sites = new WeakHashMap<>();
+
+	// the trace ring
+	static private long[] traceStart;
+	static private long[] traceDuration;
+	static private Site[] traceSite;
+	static private int[] tracePass;
+	static private long[] traceThread;
+	static private int traceAt = 0;
+	static private int traceCount = 0;
+
+	static private final long origin = System.nanoTime();
+
+	/**
+	 * returns a start time for end(...), or 0 if we aren't profiling
+	 */
+	static public long begin() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * records the time since 'start' against 'what' (a Perform, a key, ...) at 'pass'. 'name' is used to describe 'what' the first time that it's seen, if it's null then what.toString() is
+	 * used instead.
+	 */
+	static public void end(long start, String category, Object what, int pass, String name) {
+		if (start == 0) return;
+		long now = System.nanoTime();
+		long d = now - start;
+
+		synchronized (sites) {
+			Site s = sites.get(what);
+			if (s == null) sites.put(what, s = new Site(category, name != null ? name : describe(what)));
+			s.byPass.computeIfAbsent(pass, k -> new Histogram())
+				.add(d);
+
+			if (trace) {
+				if (traceStart == null || traceStart.length != traceCapacity) allocateTrace();
+				traceStart[traceAt] = start;
+				traceDuration[traceAt] = d;
+				traceSite[traceAt] = s;
+				tracePass[traceAt] = pass;
+				traceThread[traceAt] = Thread.currentThread()
+							     .getId();
+				traceAt = (traceAt + 1) % traceStart.length;
+				traceCount = Math.min(traceCount + 1, traceStart.length);
+			}
+		}
+	}
+
+	static public void end(long start, String category, Object what, int pass) {
+		end(start, category, what, pass, null);
+	}
+
+	static private String describe(Object what) {
+		String s = String.valueOf(what);
+		return s.length() > 120 ? s.substring(0, 120) + "..." : s;
+	}
+
+	static private void allocateTrace() {
+		traceStart = new long[traceCapacity];
+		traceDuration = new long[traceCapacity];
+		traceSite = new Site[traceCapacity];
+		tracePass = new int[traceCapacity];
+		traceThread = new long[traceCapacity];
+		traceAt = 0;
+		traceCount = 0;
+	}
+
+	/**
+	 * everything timed so far, most total time first
+	 */
+	static public List<Site> sites() {
+		List<Site> r;
+		synchronized (sites) {
+			r = new ArrayList<>(sites.values());
+		}
+		r.sort((a, b) -> Long.compare(b.total().total, a.total().total));
+		return r;
+	}
+
+	/**
+	 * a table of the 'n' things that have taken the most time
+	 */
+	static public String report(int n) {
+		StringBuilder b = new StringBuilder();
+		synchronized (sites) {
+			List<Site> all = sites();
+			for (Site s : all.subList(0, Math.min(n, all.size()))) {
+				b.append(s.category)
+				 .append(" ")
+				 .append(s.name)
+				 .append("\n");
+				s.byPass.forEach((k, v) -> b.append("    pass ")
+							    .append(k)
+							    .append(" ")
+							    .append(v)
+							    .append("\n"));
+			}
+		}
+		return b.toString();
+	}
+
+	static public void reset() {
+		synchronized (sites) {
+			sites.clear();
+			traceAt = 0;
+			traceCount = 0;
+			if (traceSite != null) Arrays.fill(traceSite, null);
+		}
+	}
+
+	/**
+	 * writes the trace ring out as Chrome trace-event JSON
+	 */
+	static public void writeChromeTrace(String filename) throws IOException {
+		try (Writer w = new FileWriter(filename)) {
+			writeChromeTrace(w);
+		}
+	}
+
+	static public void writeChromeTrace(Writer w) throws IOException {
+		synchronized (sites) {
+			w.write("{\"traceEvents\":[\n");
+			int n = traceStart == null ? 0 : traceCount;
+			int first = n == 0 ? 0 : (traceAt - n + traceStart.length) % traceStart.length;
+			for (int j = 0; j < n; j++) {
+				int i = (first + j) % traceStart.length;
+				Site s = traceSite[i];
+				w.write(String.format(Locale.ROOT, "{\"name\":%s,\"cat\":%s,\"ph\":\"X\",\"ts\":%.3f,\"dur\":%.3f,\"pid\":1,\"tid\":%d,\"args\":{\"pass\":%d}}%s\n", quote(s.name), quote(s.category),
+						      (traceStart[i] - origin) / 1e3, traceDuration[i] / 1e3, traceThread[i], tracePass[i], j == n - 1 ? "" : ","));
+			}
+			w.write("],\"displayTimeUnit\":\"ms\"}\n");
+		}
+	}
+
+	static private String quote(String s) {
+		StringBuilder b = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') b.append('\\')
+						    .append(c);
+			else if (c < 0x20) b.append(String.format("\\u%04x", (int) c));
+			else b.append(c);
+		}
+		return b.append('"')
+			.toString();
+	}
+}
@@ -1,13 +1,14 @@
 package field.app;
 
 import field.graphics.Scene;
-import fieldbox.execution.Errors;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -22,7 +23,98 @@ public class RunLoop {
 	static public long tick = 0;
 	protected final Thread shutdownThread;
 	public Scene mainLoop = new Scene();
-	public Set<Object> shouldSleep = Collections.synchronizedSet(new LinkedHashSet<>());
+
+	/**
+	 * things that have work waiting for the main loop (despite the name, while this isn't empty the main loop doesn't wait for the next frame). Adding to this wakes the main loop up.
+	 */
+	public Set<Object> shouldSleep = Collections.synchronizedSet(new LinkedHashSet<Object>() {
+		@Override
+		public boolean add(Object o) {
+			boolean r = super.add(o);
+			wake();
+			return r;
+		}
+	});
+
+	/**
+	 * the time that the main loop aims to take for each tick. Set to 0 to run flat out. Ticks that finish early wait out the rest of it; ticks that overrun don't try to catch up.
+	 */
+	public long frameIntervalNanos = interval(Integer.parseInt(System.getProperty("field.fps", "60")));
+
+	/**
+	 * we park until this long before a deadline and then yield until we reach it (parkNanos is rarely more accurate than this)
+	 */
+	public long spinNanos = 500_000;
+
+	/**
+	 * when true, and nothing has called requestFrame() (or added itself to 'shouldSleep') since the last tick, the main loop waits for up to 'idleNanos' (or until the next timer is due)
+	 * rather than a frame interval. Drawing.dirty, window input, windows that aren't lazily repainted and once / delay / nTimes all ask for frames
+	 */
+	public boolean idleWhenQuiet = true;
+	public long idleNanos = 250_000_000L;
+
+	/**
+	 * run every 'idlePollNanos' while the main loop is idling (with the lock held), for things that have to be polled from the main thread to notice that there's work to do (a Window's
+	 * glfwPollEvents). They call requestFrame() to end the idle
+	 */
+	public final List<Runnable> idlePollers = new CopyOnWriteArrayList<>();
+	public long idlePollNanos = 8_000_000L;
+
+	public final Stats stats = new Stats();
+
+	/**
+	 * delay, delayTicks and nTimes are scheduled here, it's advanced at pass 0 of every tick
+	 */
+	public final TimerWheel timers = new TimerWheel(tick, System.currentTimeMillis());
+
+	/**
+	 * timing for the main loop
+	 */
+	static public class Stats {
+		public long frames;
+		/**
+		 * how many ticks took longer than frameIntervalNanos
+		 */
+		public long overBudget;
+		public long idleFrames;
+		public long workNanos;
+		public long waitNanos;
+		public long lastWorkNanos;
+		public long maxWorkNanos;
+		/**
+		 * exponentially smoothed time spent working, per tick
+		 */
+		public double averageWorkNanos;
+
+		void work(long ns, long budget) {
+			frames++;
+			workNanos += ns;
+			lastWorkNanos = ns;
+			maxWorkNanos = Math.max(maxWorkNanos, ns);
+			averageWorkNanos = frames == 1 ? ns : averageWorkNanos * 0.95 + ns * 0.05;
+			if (budget > 0 && ns > budget) overBudget++;
+		}
+
+		public void reset() {
+			frames = overBudget = idleFrames = workNanos = waitNanos = lastWorkNanos = maxWorkNanos = 0;
+			averageWorkNanos = 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d frames, %.2fms average, %.2fms max, %d over budget, %d idle, %.1f%% waiting", frames, averageWorkNanos / 1e6, maxWorkNanos / 1e6, overBudget, idleFrames,
+					     100.0 * waitNanos / Math.max(1, waitNanos + workNanos));
+		}
+	}
+
+	volatile boolean frameRequested = true;
+	volatile boolean woken = false;
+	volatile boolean idling = false;
+
+	static private long interval(int fps) {
+		return fps <= 0 ? 0 : 1_000_000_000L / fps;
+	}
+
 	Thread mainThread = null;
 	List<Runnable> onExit = new LinkedList<>();
 	AtomicBoolean exitStarted = new AtomicBoolean(false);
@@ -30,6 +122,8 @@ public class RunLoop {
 	protected RunLoop() {
 		Runtime.getRuntime()
 		       .addShutdownHook(shutdownThread = new Thread(() -> exit()));
+
+		mainLoop.attach(0, "__timers__", (pass) -> timers.advance(tick, System.currentTimeMillis()));
 	}
 
 	public Scene getLoop() {
@@ -43,28 +137,128 @@ public class RunLoop {
 	public void enterMainLoop() {
 		mainThread = Thread.currentThread();
 
+		long deadline = System.nanoTime();
 		while (true) {
+			long start = Profiler.begin();
+			long began = System.nanoTime();
 			try {
 				tick++;
+				frameRequested = false;
+				// cleared here rather than when we start waiting, so that a wake() that arrives during the tick isn't lost
+				woken = false;
 
 				if (lock.tryLock(1, TimeUnit.DAYS)) {
-					mainLoop.updateAll();
-					ThreadSync.get()
-						  .serviceAndCull();
-				} else {
+					try {
+						long at = Profiler.begin();
+						Profiler.end(start, Profiler.mainLoop, "lock", 0);
+						mainLoop.updateAll();
+						Profiler.end(at, Profiler.mainLoop, "updateAll", 0);
+
+						at = Profiler.begin();
+						ThreadSync.get()
+							  .serviceAndCull();
+						Profiler.end(at, Profiler.mainLoop, "serviceAndCull", 0);
+					} finally {
+						RunLoop.lock.unlock();
+					}
 				}
-				if (shouldSleep.size() == 0) Thread.sleep(2);
 			} catch (Throwable t) {
 				System.err.println(" exception thrown in main loop");
 				t.printStackTrace();
-			} finally {
-				RunLoop.lock.unlock();
 			}
 
+			long finished = System.nanoTime();
+			stats.work(finished - began, frameIntervalNanos);
+
+			// we wait outside of the lock, so that other threads can take it
+			if (shouldSleep.size() == 0) {
+				long at = Profiler.begin();
+				long frameDeadline = Math.max(deadline + frameIntervalNanos, finished);
+				long idleDeadline = frameDeadline;
+				if (idleWhenQuiet && !frameRequested) {
+					// don't sleep through the next timer
+					long ms = timers.millisUntilNext(System.currentTimeMillis());
+					if (ms > 0) idleDeadline = Math.max(deadline + (ms >= idleNanos / 1_000_000L ? idleNanos : ms * 1_000_000L), frameDeadline);
+				}
+
+				idling = idleDeadline > frameDeadline;
+				boolean idled = waitUntil(frameDeadline, idleDeadline);
+				idling = false;
+				if (idled) stats.idleFrames++;
+
+				// woken early, the next frame is timed from now
+				deadline = Math.min(idled ? idleDeadline : frameDeadline, System.nanoTime());
+				stats.waitNanos += System.nanoTime() - finished;
+				Profiler.end(at, Profiler.mainLoop, "sleep", 0);
+			} else deadline = finished;
+
+			Profiler.end(start, Profiler.mainLoop, "frame", 0);
+		}
+	}
+
+	/**
+	 * parks the main thread until 'idleUntil' (System.nanoTime()), or, once something has called requestFrame(), until 'deadline'. Returns early if something calls wake(). While idling
+	 * we don't bother spinning for accuracy, but we do run the idlePollers. Returns true if we idled all the way
+	 */
+	protected boolean waitUntil(long deadline, long idleUntil) {
+		boolean idle = idleUntil > deadline;
+		long pollAt = System.nanoTime() + idlePollNanos;
+		while (!woken) {
+			// a frame was asked for, we keep to the frame rate rather than rushing to it
+			if (idle && frameRequested) idle = false;
+
+			long now = System.nanoTime();
+			long remaining = (idle ? idleUntil : deadline) - now;
+			if (remaining <= 0) break;
+			if (idle && idlePollers.size() > 0) {
+				if (now - pollAt >= 0) {
+					poll();
+					pollAt = now + idlePollNanos;
+				} else LockSupport.parkNanos(this, Math.min(remaining, pollAt - now));
+			} else if (idle || remaining > spinNanos) LockSupport.parkNanos(this, idle ? remaining : remaining - spinNanos);
+			else Thread.yield();
+		}
+		return idle && !woken;
+	}
+
+	private void poll() {
+		if (!lock.tryLock()) return;
+		try {
+			for (Runnable r : idlePollers) {
+				try {
+					r.run();
+				} catch (Throwable t) {
+					System.err.println(" exception thrown in idle poller");
+					t.printStackTrace();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * wakes the main loop if it's waiting for the next frame (or idling). Can be called from any thread
+	 */
+	public void wake() {
+		woken = true;
+		Thread m = mainThread;
+		if (m != null) LockSupport.unpark(m);
+	}
+
+	/**
+	 * asks for another tick; when 'idleWhenQuiet' is set this is what keeps the main loop running at frameIntervalNanos rather than idling
+	 */
+	public void requestFrame() {
+		frameRequested = true;
+		if (idling) {
+			Thread m = mainThread;
+			if (m != null) LockSupport.unpark(m);
 		}
 	}
 
 	public void once(Runnable r) {
+		requestFrame();
 		mainLoop.attach(i -> {
 			try {
 				r.run();
@@ -80,97 +274,29 @@ public class RunLoop {
 		});
 	}
 
-	public void nTimes(Runnable p0, int n) {
-		mainLoop.attach(new Scene.Perform() {
-			int t = 0;
-
-			@Override
-			public boolean perform(int pass) {
-				p0.run();
-				return t++ < n;
-			}
-
-			Errors.ErrorConsumer ec = Errors.errors.get();
-
-			@Override
-			public void setErrorConsumer(Errors.ErrorConsumer c) {
-				this.ec = ec;
-			}
-
-			@Override
-			public Errors.ErrorConsumer getErrorConsumer() {
-				if (p0 instanceof Errors.ErrorConsumer)
-					return ((Errors.ErrorConsumer)p0);
-				if (p0 instanceof Errors.SavesErrorConsumer)
-					return ((Errors.SavesErrorConsumer)p0).getErrorConsumer();
-				return ec;
-			}
-		});
+	/**
+	 * runs p0 at each of the next n+1 ticks. Returns a Timer that can be cancelled
+	 */
+	public TimerWheel.Timer nTimes(Runnable p0, int n) {
+		requestFrame();
+		return timers.everyTick(p0, tick + 1, Math.max(1, n + 1));
 	}
 
-	public void delay(Runnable p0, int ms) {
-		long now = System.currentTimeMillis();
-
-		mainLoop.attach(new Scene.Perform() {
-			int t = 0;
-
-			@Override
-			public boolean perform(int pass) {
-				if (System.currentTimeMillis() - now > ms) {
-					p0.run();
-					return false;
-				}
-				return true;
-			}
-
-			Errors.ErrorConsumer ec = Errors.errors.get();
-
-			@Override
-			public void setErrorConsumer(Errors.ErrorConsumer c) {
-				this.ec = ec;
-			}
-
-			@Override
-			public Errors.ErrorConsumer getErrorConsumer() {
-				if (p0 instanceof Errors.ErrorConsumer)
-					return ((Errors.ErrorConsumer)p0);
-				if (p0 instanceof Errors.SavesErrorConsumer)
-					return ((Errors.SavesErrorConsumer)p0).getErrorConsumer();
-				return ec;
-			}
-		});
+	/**
+	 * runs p0 once more than 'ms' milliseconds have passed. Returns a Timer that can be cancelled
+	 */
+	public TimerWheel.Timer delay(Runnable p0, int ms) {
+		// an idle main loop has to wake up earlier than it was going to
+		requestFrame();
+		return timers.atMillis(p0, System.currentTimeMillis() + ms + 1);
 	}
 
-	public void delayTicks(Runnable p0, int ticks) {
-
-		mainLoop.attach(new Scene.Perform() {
-			int t = 0;
-
-			@Override
-			public boolean perform(int pass) {
-				if (t++ > ticks) {
-					p0.run();
-					return false;
-				}
-				return true;
-			}
-
-			Errors.ErrorConsumer ec = Errors.errors.get();
-
-			@Override
-			public void setErrorConsumer(Errors.ErrorConsumer c) {
-				this.ec = ec;
-			}
-
-			@Override
-			public Errors.ErrorConsumer getErrorConsumer() {
-				if (p0 instanceof Errors.ErrorConsumer)
-					return ((Errors.ErrorConsumer)p0);
-				if (p0 instanceof Errors.SavesErrorConsumer)
-					return ((Errors.SavesErrorConsumer)p0).getErrorConsumer();
-				return ec;
-			}
-		});
+	/**
+	 * runs p0 once 'ticks' ticks have passed. Returns a Timer that can be cancelled
+	 */
+	public TimerWheel.Timer delayTicks(Runnable p0, int ticks) {
+		requestFrame();
+		return timers.atTick(p0, tick + ticks + 1);
 	}
 
 	public void exit() {
@@ -8,6 +8,7 @@ import field.utility.Util;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -21,6 +22,12 @@ import java.util.stream.Stream;
 public class ThreadSync {
 	static public final boolean enabled = Options.dict()
 						     .isTrue(new Dict.Prop("threaded"), false);
+
+	/**
+	 * hand values between fibers and the main thread with ParkChannel (spin briefly, then LockSupport.park) rather than with a BlockingQueue. Set with the 'parkHandoff' option
+	 */
+	static public final boolean parkHandoff = Options.dict()
+							  .isTrue(new Dict.Prop("parkHandoff"), false);
 	static private final ExecutorService executor = Executors.newCachedThreadPool();
 	static public Object NULL = new Object();
 	static ThreadLocal<Fiber> fiber = new ThreadLocal<>();
@@ -301,9 +308,134 @@ public class ThreadSync {
 		}
 	}
 
+	/**
+	 * how values are passed between a Fiber and the thread that services it. There's only ever one thread putting and one thread taking
+	 */
+	public interface Channel {
+		void put(Object o) throws InterruptedException;
+
+		Object take() throws InterruptedException;
+
+		Object poll();
+
+		Object peek();
+	}
+
+	static public Channel newChannel() {
+		return parkHandoff ? new ParkChannel() : new QueueChannel();
+	}
+
+	/**
+	 * the original, a two element BlockingQueue
+	 */
+	static public class QueueChannel implements Channel {
+		final BlockingQueue q = new LinkedBlockingDeque<>(2);
+
+		@Override
+		public void put(Object o) throws InterruptedException {
+			q.put(o);
+		}
+
+		@Override
+		public Object take() throws InterruptedException {
+			return q.take();
+		}
+
+		@Override
+		public Object poll() {
+			return q.poll();
+		}
+
+		@Override
+		public Object peek() {
+			return q.peek();
+		}
+	}
+
+	/**
+	 * A two element single-producer single-consumer ring that needs no locks. A thread that has to wait spins for a short while (a yield usually gets answered within a few microseconds) before
+	 * parking with LockSupport; the other side unparks it. Both put and take respond to interruption just as BlockingQueue does, which is how fibers get stopped. tests.ParkChannelBenchmark
+ * compares this with QueueChannel.
+	 */
+	static public class ParkChannel implements Channel {
+		// spinning can't help when the other side has no core of its own to answer on (as in SynchronousQueue)
+		static public int spins = Runtime.getRuntime()
+						 .availableProcessors() > 1 ? 256 : 0;
+
+		private final Object[] slots = new Object[2];
+		private volatile long putAt = 0;
+		private volatile long takeAt = 0;
+		private volatile Thread putter;
+		private volatile Thread taker;
+
+		@Override
+		public void put(Object o) throws InterruptedException {
+			if (putAt - takeAt == slots.length) {
+				for (int i = 0; i < spins && putAt - takeAt == slots.length; i++) ;
+				if (putAt - takeAt == slots.length) {
+					putter = Thread.currentThread();
+					try {
+						while (putAt - takeAt == slots.length) {
+							LockSupport.park(this);
+							if (Thread.interrupted()) throw new InterruptedException();
+						}
+					} finally {
+						putter = null;
+					}
+				}
+			}
+			long p = putAt;
+			slots[(int) (p % slots.length)] = o;
+			putAt = p + 1;
+			Thread t = taker;
+			if (t != null) LockSupport.unpark(t);
+		}
+
+		@Override
+		public Object take() throws InterruptedException {
+			if (putAt == takeAt) {
+				for (int i = 0; i < spins && putAt == takeAt; i++) ;
+				if (putAt == takeAt) {
+					taker = Thread.currentThread();
+					try {
+						while (putAt == takeAt) {
+							LockSupport.park(this);
+							if (Thread.interrupted()) throw new InterruptedException();
+						}
+					} finally {
+						taker = null;
+					}
+				}
+			}
+			return remove();
+		}
+
+		@Override
+		public Object poll() {
+			return putAt == takeAt ? null : remove();
+		}
+
+		@Override
+		public Object peek() {
+			long t = takeAt;
+			return putAt == t ? null : slots[(int) (t % slots.length)];
+		}
+
+		private Object remove() {
+			long t = takeAt;
+			int i = (int) (t % slots.length);
+			Object o = slots[i];
+			slots[i] = null;
+			takeAt = t + 1;
+			Thread p = putter;
+			if (p != null) LockSupport.unpark(p);
+			return o;
+		}
+	}
+
 	public class Fiber<K, V> {
-		public final BlockingQueue output = new LinkedBlockingDeque<>(2);
-		public final BlockingQueue input = new LinkedBlockingDeque<>(2);
+		public final Channel output = newChannel();
+		public final Channel input = newChannel();
 		public Supplier<K> in;
 		public Consumer<V> out;
 
@@ -0,0 +1,287 @@
+package field.app;
+
+import fieldbox.execution.Errors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Callbacks that are due at some point in the future, measured either in RunLoop ticks or in milliseconds. This is what RunLoop.delay, delayTicks and nTimes are built on.
+ * <p>
+ * Each time base is a hierarchical timing wheel: LEVELS rings of 2^BITS slots, the first ring holding timers due within the next 2^BITS units, the next ring the 2^(2*BITS) after that, and so on.
+ * Each slot is an intrusive doubly linked list, so scheduling and cancelling are O(1). Whenever a ring comes back around to zero the slot of the ring above it is emptied and its timers are
+ * redistributed downwards. advance(...) costs one step per unit that has passed, but nothing at all per pending timer, however many of them there are.
+ * <p>
+ * Callbacks are run by advance(...) outside of any lock, so they are free to schedule more timers. Exceptions are reported to the ErrorConsumer that was current when the timer was scheduled (or
+ * the callback's own, if it has one), just like the Performs that these timers replace.
+ */
+public class TimerWheel {
+
+	static public final int BITS = 8;
+	static public final int LEVELS = 4;
+	static private final int SLOTS = 1 << BITS;
+	static private final int MASK = SLOTS - 1;
+	static private final long SPAN = 1L << (BITS * LEVELS);
+
+	/**
+	 * a pending callback. Call cancel() to stop it from running
+	 */
+	public class Timer implements Errors.SavesErrorConsumer {
+		final Runnable r;
+		final Wheel wheel;
+		long deadline;
+		int remaining;
+		Errors.ErrorConsumer ec;
+
+		// intrusive list, 'slot' is null when we're not in one
+		Timer prev, next;
+		Timer[] slots;
+		int slot;
+		boolean done = false;
+
+		Timer(Runnable r, Wheel wheel, long deadline, int remaining) {
+			this.r = r;
+			this.wheel = wheel;
+			this.deadline = deadline;
+			this.remaining = remaining;
+			this.ec = Errors.errors.get();
+		}
+
+		/**
+		 * returns true if this timer hadn't already run (or been cancelled)
+		 */
+		public boolean cancel() {
+			synchronized (TimerWheel.this) {
+				if (done) return false;
+				done = true;
+				unlink(this);
+				wheel.count--;
+				return true;
+			}
+		}
+
+		public boolean isPending() {
+			return !done;
+		}
+
+		@Override
+		public void setErrorConsumer(Errors.ErrorConsumer c) {
+			this.ec = c;
+		}
+
+		@Override
+		public Errors.ErrorConsumer getErrorConsumer() {
+			if (r instanceof Errors.ErrorConsumer) return ((Errors.ErrorConsumer) r);
+			if (r instanceof Errors.SavesErrorConsumer) return ((Errors.SavesErrorConsumer) r).getErrorConsumer();
+			return ec;
+		}
+	}
+
+	/**
+	 * one time base
+	 */
+	protected class Wheel {
+		final String name;
+		final Timer[][] levels = new Timer[LEVELS][SLOTS];
+		// timers that were already due when they were scheduled
+		final Timer[] due = new Timer[1];
+		long current;
+		int count = 0;
+
+		Wheel(String name, long now) {
+			this.name = name;
+			this.current = now;
+		}
+
+		void insert(Timer t) {
+			long delta = t.deadline - current;
+			if (delta <= 0) {
+				link(t, due, 0);
+				return;
+			}
+			// anything further out than the wheels reach is parked in the top level and gets looked at again when that slot comes around
+			long at = delta >= SPAN ? current + SPAN - 1 : t.deadline;
+			int level = 0;
+			while (level < LEVELS - 1 && (at - current) >= (1L << (BITS * (level + 1)))) level++;
+			link(t, levels[level], (int) ((at >>> (BITS * level)) & MASK));
+		}
+
+		/**
+		 * moves time on to 'now', collecting into 'out' everything that becomes due
+		 */
+		void advance(long now, List<Timer> out) {
+			int taken = take(due, 0, out);
+			while (current < now) {
+				if (count == taken) {
+					// nothing left in the wheel, skip straight to 'now'
+					current = now;
+					break;
+				}
+				current++;
+				for (int l = 1; l < LEVELS; l++) {
+					if ((current & ((1L << (BITS * l)) - 1)) != 0) break;
+					Timer[] slots = levels[l];
+					int s = (int) ((current >>> (BITS * l)) & MASK);
+					Timer t = slots[s];
+					slots[s] = null;
+					while (t != null) {
+						Timer n = t.next;
+						t.prev = t.next = null;
+						t.slots = null;
+						if (t.deadline <= current) {
+							out.add(t);
+							taken++;
+						} else insert(t);
+						t = n;
+					}
+				}
+				taken += take(levels[0], (int) (current & MASK), out);
+			}
+		}
+
+		/**
+		 * a lower bound on the earliest deadline in this wheel (Long.MAX_VALUE if it's empty). Looks at the first occupied slot on each level, so it's cheap but not exact
+		 */
+		long earliest() {
+			if (count == 0) return Long.MAX_VALUE;
+			if (due[0] != null) return current;
+			long best = Long.MAX_VALUE;
+			for (int l = 0; l < LEVELS; l++) {
+				long base = current >>> (BITS * l);
+				Timer[] slots = levels[l];
+				// the slot we are in has already been taken (or holds the next time around)
+				for (int i = 1; i <= SLOTS; i++)
+					if (slots[(int) ((base + i) & MASK)] != null) {
+						best = Math.min(best, (base + i) << (BITS * l));
+						break;
+					}
+			}
+			return best;
+		}
+
+		private int take(Timer[] slots, int s, List<Timer> out) {
+			int n = 0;
+			Timer t = slots[s];
+			slots[s] = null;
+			while (t != null) {
+				Timer next = t.next;
+				t.prev = t.next = null;
+				t.slots = null;
+				out.add(t);
+				n++;
+				t = next;
+			}
+			return n;
+		}
+	}
+
+	protected final Wheel ticks;
+	protected final Wheel millis;
+
+	private final List<Timer> running = new ArrayList<>();
+
+	public TimerWheel(long tick, long millis) {
+		this.ticks = new Wheel("ticks", tick);
+		this.millis = new Wheel("millis", millis);
+	}
+
+	/**
+	 * runs 'r' once, on the first advance(...) at or after tick 'deadline'
+	 */
+	public Timer atTick(Runnable r, long deadline) {
+		return schedule(new Timer(r, ticks, deadline, 1));
+	}
+
+	/**
+	 * runs 'r' 'times' times, once at each tick starting with 'first'
+	 */
+	public Timer everyTick(Runnable r, long first, int times) {
+		if (times <= 0) throw new IllegalArgumentException(" can't run something " + times + " times");
+		return schedule(new Timer(r, ticks, first, times));
+	}
+
+	/**
+	 * runs 'r' once, on the first advance(...) at or after 'deadline' (System.currentTimeMillis())
+	 */
+	public Timer atMillis(Runnable r, long deadline) {
+		return schedule(new Timer(r, millis, deadline, 1));
+	}
+
+	/**
+	 * the number of timers that have yet to run
+	 */
+	public synchronized int pending() {
+		return ticks.count + millis.count;
+	}
+
+	/**
+	 * how long (in milliseconds, from 'now') until the next timer might be due. 0 if there are timers waiting on ticks, since ticks only pass while the main loop runs, and Long.MAX_VALUE if
+	 * there's nothing pending at all. This errs on the early side
+	 */
+	public synchronized long millisUntilNext(long now) {
+		if (ticks.count > 0) return 0;
+		long at = millis.earliest();
+		return at == Long.MAX_VALUE ? at : Math.max(0, at - now);
+	}
+
+	private synchronized Timer schedule(Timer t) {
+		t.wheel.count++;
+		t.wheel.insert(t);
+		return t;
+	}
+
+	/**
+	 * moves both time bases forward and runs everything that is now due. Called by RunLoop once per tick
+	 */
+	public void advance(long tick, long now) {
+		List<Timer> run = running;
+		synchronized (this) {
+			run.clear();
+			ticks.advance(tick, run);
+			millis.advance(now, run);
+			for (Timer t : run) {
+				if (--t.remaining <= 0) {
+					t.done = true;
+					t.wheel.count--;
+				}
+			}
+		}
+
+		for (int i = 0; i < run.size(); i++) {
+			Timer t = run.get(i);
+			try {
+				t.r.run();
+			} catch (Throwable e) {
+				Errors.tryToReportTo(e, "exception thrown by callback scheduled on " + t.wheel.name, t);
+			}
+		}
+
+		// repeating timers go around again, unless they were cancelled while they ran
+		synchronized (this) {
+			for (Timer t : run) {
+				if (t.done) continue;
+				t.deadline = t.wheel.current + 1;
+				t.wheel.insert(t);
+			}
+			run.clear();
+		}
+	}
+
+	static private void link(Timer t, Timer[] slots, int s) {
+		t.slots = slots;
+		t.slot = s;
+		t.prev = null;
+		t.next = slots[s];
+		if (t.next != null) t.next.prev = t;
+		slots[s] = t;
+	}
+
+	static private void unlink(Timer t) {
+		if (t.slots == null) return;
+		if (t.prev != null) t.prev.next = t.next;
+		else t.slots[t.slot] = t.next;
+		if (t.next != null) t.next.prev = t.prev;
+		t.prev = t.next = null;
+		t.slots = null;
+	}
+}
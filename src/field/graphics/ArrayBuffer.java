@@ -11,8 +11,8 @@ import java.nio.IntBuffer;
  * amount of space it doesn't matter which).
  * <p>
  * An Array buffer also keeps track of it's dirty state --- what part of the CPU backed piece of memory needs to be reuploaded to OpenGL because it's
- * changed. Right now the caching strategy is quite simple, there's a range at the beginning of the buffer that's potentially dirty because it's been
- * written to
+ * changed. Writing through floats() or ints() dirties everything up to the limit, while writers that know what they've touched (MeshBuilder) can
+ * call dirty(from, to) instead and have just those elements reuploaded.
  * <p>
  * Currently we have exactly one implementation --- SimpleArrayBuffer -- but more have been seen in the wild (for example an ArrayBuffer that streams
  * animation data from Memory mapped files from disk).
@@ -65,6 +65,14 @@ public interface ArrayBuffer {
 	 */
 	IntBuffer ints(boolean readOnly);
 
+	/**
+	 * Marks elements [from, to) as written to. Use this together with floats(true) / ints(true) when you know exactly what you've changed. Buffers that
+	 * don't track dirty ranges treat this as a write to the whole buffer.
+	 */
+	default void dirty(int from, int to) {
+		floats(false);
+	}
+
 	/**
 	 * Replaces this buffer with a buffer of an identical class, but of a different size. Size here is in elements (that is, floats / ints *
 	 * dimension).
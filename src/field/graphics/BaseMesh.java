@@ -92,6 +92,32 @@ public class BaseMesh extends Scene implements Scene.Perform {
 	ArrayBuffer elements;
 	ArrayBuffer[] buffers = new ArrayBuffer[16];
 	ArrayBufferFactory arrayBufferFactory = SimpleArrayBuffer::newArrayBuffer;
+	boolean[] streaming = new boolean[16];
+
+	/**
+	 * marks an attribute as being rewritten (more or less) every frame, so that it's uploaded through a StreamingArrayBuffer rather than a SimpleArrayBuffer. Attribute 0 is the vertex position
+	 * itself. Any data already in the attribute is kept.
+	 */
+	public BaseMesh setStreaming(int attribute, boolean streaming) {
+		this.streaming[attribute] = streaming;
+		ArrayBuffer b = buffers[attribute];
+		if (b != null && (b instanceof StreamingArrayBuffer) != streaming) {
+			ArrayBuffer next = newArrayBuffer(b.getSize(), attribute, b.getDimension());
+			next.floats()
+			    .put(b.floats(true));
+			buffers[attribute] = next;
+		}
+		return this;
+	}
+
+	public boolean isStreaming(int attribute) {
+		return streaming[attribute];
+	}
+
+	protected ArrayBuffer newArrayBuffer(int maxVertex, int attribute, int dimension) {
+		if (streaming[attribute]) return StreamingArrayBuffer.newArrayBuffer(maxVertex, GL_ARRAY_BUFFER, attribute, dimension, 0);
+		return arrayBufferFactory.newArrayBuffer(maxVertex, GL_ARRAY_BUFFER, attribute, dimension, 0);
+	}
 
 	/**
 	 * limit the number of vertices sent to OpenGL without truncating the declared size of the storage.
@@ -188,7 +214,7 @@ public class BaseMesh extends Scene implements Scene.Perform {
 
 	public ArrayBuffer buffer(int attribute, int dimension) {
 		if (buffers[attribute] == null && dimension > 0) {
-			buffers[attribute] = arrayBufferFactory.newArrayBuffer(maxVertex, GL_ARRAY_BUFFER, attribute, dimension, 0);
+			buffers[attribute] = newArrayBuffer(maxVertex, attribute, dimension);
 			return buffers[attribute];
 		}
 
@@ -14,11 +14,13 @@ import fieldnashorn.annotations.HiddenInAutocomplete;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.awt.*;
+import java.awt.geom.GeneralPath;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -124,59 +126,80 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 	}
 
 	public FLine moveTo(double x, double y) {
-		return add(new MoveTo(x, y, 0));
+		return moveTo(x, y, 0);
 	}
 
 	public FLine moveTo(Vec2 x) {
-		return add(new MoveTo(x.x, x.y, 0));
+		return moveTo(x.x, x.y, 0);
 	}
 
 	public FLine moveTo(Vec3 x) {
-		return add(new MoveTo(x.x, x.y, x.z));
+		return moveTo(x.x, x.y, x.z);
 	}
 
 	public FLine lineTo(double x, double y) {
-		if (nodes.size() == 0) return moveTo(x, y);
-		return add(new LineTo(x, y, 0));
+		return lineTo(x, y, 0);
 	}
 
 	public FLine lineTo(Vec2 x) {
-		if (nodes.size() == 0) return moveTo(x);
-		return add(new LineTo(x.x, x.y, 0));
+		return lineTo(x.x, x.y, 0);
 	}
 
 	public FLine lineTo(Vec3 x) {
-		if (nodes.size() == 0) return moveTo(x);
-		return add(new LineTo(x.x, x.y, x.z));
+		return lineTo(x.x, x.y, x.z);
 	}
 
 	public FLine moveTo(double x, double y, double z) {
+		if (nodes instanceof Packed && ((Packed) nodes).append(Packed.MOVE, x, y, z)) return this;
 		return add(new MoveTo(x, y, z));
 	}
 
 	public FLine lineTo(double x, double y, double z) {
 		if (nodes.size() == 0) return moveTo(x, y, z);
+		if (nodes instanceof Packed && ((Packed) nodes).append(Packed.LINE, x, y, z)) return this;
 		return add(new LineTo(x, y, z));
 	}
 
 	public FLine cubicTo(double c1x, double c1y, double c2x, double c2y, double x, double y) {
-		if (nodes.size() == 0) return moveTo(x, y);
-		return add(new CubicTo(c1x, c1y, 0, c2x, c2y, 0, x, y, 0));
+		return cubicTo(c1x, c1y, 0, c2x, c2y, 0, x, y, 0);
 	}
 
 	public FLine cubicTo(Vec2 c1, Vec2 c2, Vec2 x) {
-		if (nodes.size() == 0) return moveTo(x);
-		return add(new CubicTo(c1.x, c1.y, 0, c2.x, c2.y, 0, x.x, x.y, 0));
+		return cubicTo(c1.x, c1.y, 0, c2.x, c2.y, 0, x.x, x.y, 0);
 	}
 
 	public FLine cubicTo(double c1x, double c1y, double c1z, double c2x, double c2y, double c2z, double x, double y, double z) {
 		if (nodes.size() == 0) return moveTo(x, y, z);
+		if (nodes instanceof Packed && ((Packed) nodes).appendCubic(c1x, c1y, c1z, c2x, c2y, c2z, x, y, z)) return this;
 		return add(new CubicTo(c1x, c1y, c1z, c2x, c2y, c2z, x, y, z));
 	}
 
 	public FLine cubicTo(Vec3 c1, Vec3 c2, Vec3 x) {
-		if (nodes.size() == 0) return moveTo(x);
-		return add(new CubicTo(c1.x, c1.y, c1.z, c2.x, c2.y, c2.z, x.x, x.y, x.z));
+		return cubicTo(c1.x, c1.y, c1.z, c2.x, c2.y, c2.z, x.x, x.y, x.z);
+	}
+
+	/**
+	 * switches this line over to packed storage (see Packed) if it's empty. Lines built by data(...), dataLines(...) and sampleOver(...) are packed automatically (see packData)
+	 */
+	public FLine packed() {
+		if (nodes.size() == 0 && !(nodes instanceof Packed)) nodes = new Packed();
+		return this;
+	}
+
+	/**
+	 * should data(...), dataLines(...) and sampleOver(...) build packed lines when they start from an empty line
+	 */
+	static public boolean packData = true;
+
+	/**
+	 * true if this line is packed, none of its nodes have been looked at as Node objects and none of its aux properties vary from node to node, in which case we can draw it straight out of its
+	 * arrays
+	 */
+	protected boolean isStreamable() {
+		if (!(nodes instanceof Packed) || !((Packed) nodes).isStreamable()) return false;
+		if (auxProperties != null) for (Object name : auxProperties.values())
+			if (((Packed) nodes).hasColumn("" + name)) return false;
+		return true;
 	}
 
 	/**
@@ -273,6 +296,7 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 	 * If, after all this, you have a List of Vec2 or Vec3 then you get a single line, otherwise a List of List of Vec2 or Vec3 gets you a group of lines
 	 */
 	public FLine dataLines(Collection<Object> input, Function<Object, Object>... transformation) {
+		if (packData) packed();
 		List<Object> m = transform(input, transformation);
 		doDataLines(m);
 
@@ -354,6 +378,7 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 	 * until you run out of Vec3 inputs; 't' — dispatches based on the tag of a TaggedVec3
 	 */
 	public FLine data(String format, Object... input) {
+		if (packData) packed();
 		List<Vec3> f = flattenInput(input);
 
 		int q = 0;
@@ -422,6 +447,7 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 	 * until you run out of Vec3 inputs
 	 */
 	public FLine data(String format, Iterator<Vec3> f) {
+		if (packData) packed();
 
 		// FIXME, duplicative and out of date
 
@@ -657,6 +683,11 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 	}
 
 	public FLine transform(Function<Vec3, Vec3> by) {
+		// going through nodes.get would make a Node for every point of a packed line, for good
+		if (nodes instanceof Packed && ((Packed) nodes).transform(by)) {
+			modify();
+			return this;
+		}
 		for (Node n : nodes) {
 			n.transform(by);
 		}
@@ -686,7 +717,8 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 
 	public FLine duplicate() {
 		FLine fLine = new FLine();
-		for (Node n : this.nodes) {
+		if (isStreamable()) fLine.nodes = fLine.new Packed((Packed) nodes);
+		else for (Node n : this.nodes) {
 			fLine.nodes.add(n.duplicate());
 		}
 		fLine.attributes.putAll(attributes.duplicate());
@@ -723,6 +755,9 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 	}
 
 	public boolean renderToPoints(MeshBuilder m, int fixedSizeForCubic) {
+		FLineRecording r = recordingFor(fixedSizeForCubic);
+		if (r != null) return renderRecording(m, r::toPoints);
+		if (isStreamable()) return renderPackedToPoints(m, fixedSizeForCubic);
 		return renderToPoints(m, this::renderMoveTo, this::renderLineTo, renderCubicTo(fixedSizeForCubic));
 	}
 
@@ -772,6 +807,9 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 
 	public boolean renderToLine(MeshBuilder m, int fixedSizeForCubic) {
 		Log.log("drawing.trace", ()->"renderToLine");
+		FLineRecording r = recordingFor(fixedSizeForCubic);
+		if (r != null) return renderRecording(m, r::toLine);
+		if (isStreamable()) return renderPackedToLine(m, fixedSizeForCubic);
 		return renderToLine(m, this::renderMoveTo, this::renderLineTo, renderCubicTo(fixedSizeForCubic));
 	}
 
@@ -779,9 +817,13 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 		BookmarkCache c = cache_thickening.computeIfAbsent(m, (k) -> new BookmarkCache(m));
 
 		return m.skipTo(c.start, c.end, mod, () -> {
-			Shape s = /*stroke.createStrokedShape*/(flineToJavaShape(this));
-			FLine drawInstead = javaShapeToFLine(s);
-			drawInstead.attributes.putAll(attributes);
+			FLineRecording r = recordingFor(fixedSizeForCubic);
+			FLine drawInstead = r == null ? null : r.stroked;
+			if (drawInstead == null) {
+				Shape s = /*stroke.createStrokedShape*/(flineToJavaShape(this));
+				drawInstead = javaShapeToFLine(s);
+				drawInstead.attributes.putAll(attributes);
+			}
 			drawInstead.renderToMesh(m, fixedSizeForCubic);
 		});
 
@@ -924,9 +966,250 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 
 	@HiddenInAutocomplete
 	public boolean renderToMesh(MeshBuilder m, int fixedSizeForCubic) {
+		FLineRecording r = recordingFor(fixedSizeForCubic);
+		if (r != null) return renderRecording(m, r::toMesh);
+		if (isStreamable()) return renderPackedToMesh(m, fixedSizeForCubic);
 		return renderToMesh(m, this::renderMoveTo, this::renderLineTo, renderCubicTo(fixedSizeForCubic));
 	}
 
+	private transient volatile FLineRecording recording;
+	static private final ThreadLocal<FLineRecording> scratch = ThreadLocal.withInitial(FLineRecording::new);
+
+	/**
+	 * Does the work of renderToLine / renderToMesh / renderToPoints (and, if 'alsoStroke' is set, the outlining part of renderLineToMeshByStroking) without a MeshBuilder, keeping the results
+	 * until this line is next modified. The render methods then just copy those results in. This can be called from any thread (that's the point) as long as nothing is changing this line at
+	 * the same time.
+	 * <p>
+	 * The results are only used if they were made with the same fixedSizeForCubic and aux properties that the render method is called with.
+	 */
+	public synchronized void prepare(int fixedSizeForCubic, boolean alsoStroke) {
+		FLineRecording was = recordingFor(fixedSizeForCubic);
+		if (was != null && (!alsoStroke || was.stroked != null)) return;
+
+		long m = mod;
+		FLineRecording r = scratch.get();
+		r.clear();
+		try {
+			record(r, fixedSizeForCubic);
+			FLineRecording done = r.copy(m, fixedSizeForCubic, auxProperties == null ? null : new LinkedHashMap<>(auxProperties));
+			if (alsoStroke) {
+				FLine s = javaShapeToFLine(flineToJavaShape(this));
+				s.attributes.putAll(attributes);
+				s.prepare(fixedSizeForCubic, false);
+				done.stroked = s;
+			}
+			recording = done;
+		} finally {
+			r.clear();
+		}
+	}
+
+	protected FLineRecording recordingFor(int fixedSizeForCubic) {
+		FLineRecording r = recording;
+		if (r == null || r.mod != mod || r.fixedSize != fixedSizeForCubic) return null;
+		Map<Integer, String> a = auxProperties == null || auxProperties.size() == 0 ? null : auxProperties;
+		Map<Integer, String> b = r.aux == null || r.aux.size() == 0 ? null : r.aux;
+		return Objects.equals(a, b) ? r : null;
+	}
+
+	private void record(FLineRecording r, int fixedSizeForCubic) {
+		record(r, fixedSizeForCubic, 0);
+	}
+
+	private void record(FLineRecording r, int fixedSizeForCubic, float tolerance) {
+		if (isStreamable()) {
+			Packed p = (Packed) nodes;
+			Vec3 o = new Vec3();
+			for (int i = 0; i < p.size; i++) {
+				p.emit(r, i, fixedSizeForCubic, tolerance, o);
+				r.endNode(p.ops[i] == Packed.MOVE);
+			}
+			return;
+		}
+
+		flattenAuxProperties();
+		Curry.Function3<MeshAcceptor, Node, CubicTo, Node> cubicTo = tolerance > 0 ? renderCubicTo_adaptive(tolerance) : renderCubicTo(fixedSizeForCubic);
+		Node a = null;
+		for (int i = 0; i < nodes.size(); i++) {
+			Node b = nodes.get(i);
+			if (b instanceof MoveTo) a = renderMoveTo(r, a, (MoveTo) b);
+			else if (b instanceof LineTo) a = renderLineTo(r, a, (LineTo) b);
+			else if (b instanceof CubicTo) a = cubicTo.apply(r, a, (CubicTo) b);
+			else throw new IllegalArgumentException(" unknown subclass ");
+			r.endNode(b instanceof MoveTo);
+		}
+	}
+
+	protected boolean renderRecording(MeshBuilder m, Consumer<MeshBuilder> replay) {
+		return renderRecording(m, replay, mod);
+	}
+
+	protected boolean renderRecording(MeshBuilder m, Consumer<MeshBuilder> replay, Object hash) {
+		BookmarkCache c = cache.computeIfAbsent(m, (k) -> new BookmarkCache(m));
+
+		return m.skipTo(c.start, c.end, hash, () -> {
+			m.open();
+			try {
+				replay.accept(m);
+			} finally {
+				m.close();
+			}
+		});
+	}
+
+	protected boolean renderPackedToPoints(MeshBuilder m, int fixedSizeForCubic) {
+		BookmarkCache c = cache.computeIfAbsent(m, (k) -> new BookmarkCache(m));
+
+		return m.skipTo(c.start, c.end, mod, () -> {
+			Packed p = (Packed) nodes;
+			Vec3 o = new Vec3();
+			m.open();
+			try {
+				for (int i = 0; i < p.size; i++)
+					p.emit(m, i, fixedSizeForCubic, o);
+			} finally {
+				m.close();
+			}
+		});
+	}
+
+	protected boolean renderPackedToLine(MeshBuilder m, int fixedSizeForCubic) {
+		BookmarkCache c = cache.computeIfAbsent(m, (k) -> new BookmarkCache(m));
+
+		return m.skipTo(c.start, c.end, mod, () -> {
+			Packed p = (Packed) nodes;
+			Vec3 o = new Vec3();
+			m.open();
+			try {
+				MeshBuilder.Bookmark start = null;
+				for (int i = 0; i < p.size; i++) {
+					if (p.ops[i] == Packed.MOVE) {
+						if (start != null) m.nextLine(start.at() + 1);
+						p.emit(m, i, fixedSizeForCubic, o);
+						start = m.bookmark();
+					} else {
+						p.emit(m, i, fixedSizeForCubic, o);
+						if (start == null) start = m.bookmark();
+					}
+				}
+
+				MeshBuilder.Bookmark end = m.bookmark();
+				if (start != null && start.at() != end.at()) m.nextLine(start.at() + 1);
+			} finally {
+				m.close();
+			}
+		});
+	}
+
+	protected boolean renderPackedToMesh(MeshBuilder m, int fixedSizeForCubic) {
+		BookmarkCache c = cache.computeIfAbsent(m, (k) -> new BookmarkCache(m));
+
+		return m.skipTo(c.start, c.end, mod, () -> {
+			Packed p = (Packed) nodes;
+			Vec3 o = new Vec3();
+			MeshBuilder_tesselationSupport ts = m.getTessSupport();
+			m.open();
+			try {
+				MeshBuilder.Bookmark start = null;
+				ts.begin();
+				for (int i = 0; i < p.size; i++) {
+					if (p.ops[i] == Packed.MOVE) {
+						if (start != null) ts.endContour();
+						ts.beginContour();
+						p.emit(ts, i, fixedSizeForCubic, o);
+						start = m.bookmark();
+					} else {
+						p.emit(ts, i, fixedSizeForCubic, o);
+						if (start == null) {
+							start = m.bookmark();
+							ts.beginContour();
+						}
+					}
+				}
+
+				MeshBuilder.Bookmark end = m.bookmark();
+				if (start != null && start.at() != end.at()) ts.endContour();
+				ts.end();
+			} finally {
+				m.close();
+			}
+		});
+	}
+
+	/**
+	 * like renderToLine(m, fixedSizeForCubic) but cubic segments are flattened adaptively to within 'tolerance' (see cubicSegments and toleranceBucket)
+	 */
+	@HiddenInAutocomplete
+	public boolean renderToLineAdaptive(MeshBuilder m, float tolerance) {
+		float t = toleranceBucket(tolerance);
+		return renderRecording(m, adaptive(t)::toLine, new Pair<>(mod, t));
+	}
+
+	/**
+	 * like renderToMesh(m, fixedSizeForCubic) but cubic segments are flattened adaptively to within 'tolerance' (see cubicSegments and toleranceBucket)
+	 */
+	@HiddenInAutocomplete
+	public boolean renderToMeshAdaptive(MeshBuilder m, float tolerance) {
+		float t = toleranceBucket(tolerance);
+		return renderRecording(m, adaptive(t)::toMesh, new Pair<>(mod, t));
+	}
+
+	/**
+	 * like renderToPoints(m, fixedSizeForCubic) but cubic segments are flattened adaptively to within 'tolerance' (see cubicSegments and toleranceBucket)
+	 */
+	@HiddenInAutocomplete
+	public boolean renderToPointsAdaptive(MeshBuilder m, float tolerance) {
+		float t = toleranceBucket(tolerance);
+		return renderRecording(m, adaptive(t)::toPoints, new Pair<>(mod, t));
+	}
+
+	/**
+	 * this line flattened to tolerance 't', cached (for the most recently asked for tolerance) against the modification count of this line and its aux properties
+	 */
+	protected FLineRecording adaptive(float t) {
+		Derived d = derived();
+		FLineRecording r = d.adaptive;
+		if (r != null && d.adaptiveTol == t && Objects.equals(r.aux, auxProperties == null || auxProperties.size() == 0 ? null : auxProperties)) return r;
+
+		FLineRecording s = scratch.get();
+		s.clear();
+		try {
+			record(s, 0, t);
+			r = s.copy(mod, -1, auxProperties == null || auxProperties.size() == 0 ? null : new LinkedHashMap<>(auxProperties));
+		} finally {
+			s.clear();
+		}
+		d.adaptive = r;
+		d.adaptiveTol = t;
+		return r;
+	}
+
+	/**
+	 * the largest number of pieces that an adaptively flattened cubic segment will be cut into
+	 */
+	static public int maxCubicSegments = 256;
+
+	/**
+	 * rounds 'tolerance' down to the nearest power of sqrt(2). Small changes in tolerance (zooming in and out a little, say) then don't change how many vertices a line has, which keeps the
+	 * MeshBuilder caches hitting
+	 */
+	static public float toleranceBucket(float tolerance) {
+		if (!(tolerance > 0)) return 1;
+		return (float) Math.pow(2, Math.floor(2 * Math.log(tolerance) / Math.log(2)) / 2);
+	}
+
+	/**
+	 * how many straight pieces a cubic segment needs to be cut into for them to be no further than 'tolerance' from the curve (Wang's formula, like PathFlattener's flatness test this only
+	 * looks at the control points so it's cheap)
+	 */
+	static public int cubicSegments(double ax, double ay, double az, double c1x, double c1y, double c1z, double c2x, double c2y, double c2z, double bx, double by, double bz, float tolerance) {
+		double d1x = ax - 2 * c1x + c2x, d1y = ay - 2 * c1y + c2y, d1z = az - 2 * c1z + c2z;
+		double d2x = c1x - 2 * c2x + bx, d2y = c1y - 2 * c2y + by, d2z = c1z - 2 * c2z + bz;
+		double m = Math.sqrt(Math.max(d1x * d1x + d1y * d1y + d1z * d1z, d2x * d2x + d2y * d2y + d2z * d2z));
+		int n = (int) Math.ceil(Math.sqrt(0.75 * m / tolerance));
+		return Math.max(1, Math.min(maxCubicSegments, n));
+	}
+
 	@HiddenInAutocomplete
 	public Node renderMoveTo(MeshAcceptor m, Node from, MoveTo to) {
 		if (to.flatAuxData != null) for (int i = 0; i < to.flatAuxData.length; i++) {
@@ -958,27 +1241,38 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 	 */
 	@HiddenInAutocomplete
 	public Curry.Function3<MeshAcceptor, Node, CubicTo, Node> renderCubicTo(int fixedSize) {
-		return (meshBuilder, from, to) -> {
-			Vec3 o = new Vec3();
+		return (meshBuilder, from, to) -> renderCubicTo(meshBuilder, from, to, fixedSize);
+	}
 
-			for (int i = 0; i < fixedSize; i++) {
-				float alpha = (i + 1f) / fixedSize;
-				o = evaluateCubicFrame(from.to.x, from.to.y, from.to.z, to.c1.x, to.c1.y, to.c1.z, to.c2.x, to.c2.y, to.c2.z, to.to.x, to.to.y, to.to.z, alpha, o);
-
-				if (from.flatAuxData != null) for (int j = 0; j < from.flatAuxData.length; j++) {
-					int channel = from.flatAux[j];
-					float[] a = from.flatAuxData[j];
-					float[] b = to.flatAuxData[j];
-					if (a == null && b == null) continue;
-					float[] r = interpolate(alpha, a, b, a == null ? b.length : a.length);
-					if (r != null && channel > 0) meshBuilder.aux(channel, r);
-				}
+	/**
+	 * the (recursive flattening) alternative that the comment above asks for, although rather than recursing we work out up front how many pieces each cubic needs to be within 'tolerance' of
+	 * the curve. The number of vertices only changes when the curve changes shape (or the tolerance does), so the caching still works.
+	 */
+	@HiddenInAutocomplete
+	public Curry.Function3<MeshAcceptor, Node, CubicTo, Node> renderCubicTo_adaptive(float tolerance) {
+		return (meshBuilder, from, to) -> renderCubicTo(meshBuilder, from, to,
+								cubicSegments(from.to.x, from.to.y, from.to.z, to.c1.x, to.c1.y, to.c1.z, to.c2.x, to.c2.y, to.c2.z, to.to.x, to.to.y, to.to.z, tolerance));
+	}
 
-				meshBuilder.nextVertex(o.x, o.y, o.z);
+	protected Node renderCubicTo(MeshAcceptor meshBuilder, Node from, CubicTo to, int fixedSize) {
+		Vec3 o = new Vec3();
+
+		for (int i = 0; i < fixedSize; i++) {
+			float alpha = (i + 1f) / fixedSize;
+			o = evaluateCubicFrame(from.to.x, from.to.y, from.to.z, to.c1.x, to.c1.y, to.c1.z, to.c2.x, to.c2.y, to.c2.z, to.to.x, to.to.y, to.to.z, alpha, o);
+
+			if (from.flatAuxData != null) for (int j = 0; j < from.flatAuxData.length; j++) {
+				int channel = from.flatAux[j];
+				float[] a = from.flatAuxData[j];
+				float[] b = to.flatAuxData[j];
+				if (a == null && b == null) continue;
+				float[] r = interpolate(alpha, a, b, a == null ? b.length : a.length);
+				if (r != null && channel > 0) meshBuilder.aux(channel, r);
 			}
-			return to;
-		};
 
+			meshBuilder.nextVertex(o.x, o.y, o.z);
+		}
+		return to;
 	}
 
 	public FLine byTransforming(Function<Vec3, Vec3> spaceTransform) {
@@ -986,6 +1280,15 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 		FLine f = new FLine();
 		f.attributes = attributes.duplicate();
 
+		if (isStreamable()) {
+			Packed p = f.new Packed((Packed) nodes);
+			p.transform(spaceTransform);
+			f.nodes = p;
+			if (auxProperties != null) f.setAuxProperties(new LinkedHashMap<>(auxProperties));
+			f.modify();
+			return f;
+		}
+
 		for (Node n : nodes) {
 			if (n instanceof MoveTo) f.add(new MoveTo(spaceTransform.apply(n.to)));
 			else if (n instanceof LineTo) f.add(new LineTo(spaceTransform.apply(n.to)));
@@ -1034,6 +1337,157 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 		return mod;
 	}
 
+	/**
+	 * geometry that's derived from the nodes of this line. It's computed lazily and thrown away as a whole when the modification count (or the number of nodes) changes, see modify()
+	 */
+	static protected class Derived {
+		final long mod;
+		final int size;
+
+		boolean hasBounds = false;
+		Rect bounds;
+
+		float flattenerTol = Float.NaN;
+		PathFlattener flattener;
+
+		float flattenedTol = Float.NaN;
+		List<Vec3> flattened;
+
+		GeneralPath path;
+
+		BasicStroke strokedWith;
+		Shape stroked;
+
+		float adaptiveTol = Float.NaN;
+		FLineRecording adaptive;
+
+		Derived(long mod, int size) {
+			this.mod = mod;
+			this.size = size;
+		}
+	}
+
+	private transient volatile Derived derived;
+
+	protected Derived derived() {
+		Derived d = derived;
+		if (d == null || d.mod != mod || d.size != nodes.size()) derived = d = new Derived(mod, nodes.size());
+		return d;
+	}
+
+	/**
+	 * returns the 2d bounding box of this line (including the control points of any cubic segments), or null if this line is empty. This is cached against the modification count of this line
+	 * (see modify()), so the Rect that's returned is shared and must not be changed.
+	 */
+	@HiddenInAutocomplete
+	public Rect bounds() {
+		Derived d = derived();
+		if (d.hasBounds) return d.bounds;
+
+		if (isStreamable()) {
+			d.bounds = ((Packed) nodes).bounds();
+			d.hasBounds = true;
+			return d.bounds;
+		}
+
+		double minx = Double.POSITIVE_INFINITY, miny = Double.POSITIVE_INFINITY;
+		double maxx = Double.NEGATIVE_INFINITY, maxy = Double.NEGATIVE_INFINITY;
+		for (Node n : nodes) {
+			minx = Math.min(minx, n.to.x);
+			miny = Math.min(miny, n.to.y);
+			maxx = Math.max(maxx, n.to.x);
+			maxy = Math.max(maxy, n.to.y);
+			if (n instanceof CubicTo) {
+				CubicTo c = (CubicTo) n;
+				minx = Math.min(minx, Math.min(c.c1.x, c.c2.x));
+				miny = Math.min(miny, Math.min(c.c1.y, c.c2.y));
+				maxx = Math.max(maxx, Math.max(c.c1.x, c.c2.x));
+				maxy = Math.max(maxy, Math.max(c.c1.y, c.c2.y));
+			}
+		}
+
+		d.bounds = nodes.size() == 0 ? null : new Rect(minx, miny, maxx - minx, maxy - miny);
+		d.hasBounds = true;
+		return d.bounds;
+	}
+
+	/**
+	 * returns the arc-length table for this line, flattened to tolerance 'tol'. Cached (for the most recently asked for tolerance) against the modification count of this line.
+	 */
+	@HiddenInAutocomplete
+	public PathFlattener flattener(float tol) {
+		Derived d = derived();
+		if (d.flattener != null && d.flattenerTol == tol) return d.flattener;
+		PathFlattener f = new PathFlattener(this, tol);
+		d.flattenerTol = tol;
+		d.flattener = f;
+		return f;
+	}
+
+	/**
+	 * returns the length of this line, cubic segments flattened to a tolerance of 0.1
+	 */
+	@HiddenInAutocomplete
+	public double arcLength() {
+		return flattener(0.1f).length();
+	}
+
+	/**
+	 * returns this line as a polyline of low curvature positions (cubic segments flattened to tolerance 'tol'). The list is shared and cannot be changed.
+	 */
+	@HiddenInAutocomplete
+	public List<Vec3> flattened(float tol) {
+		Derived d = derived();
+		if (d.flattened != null && d.flattenedTol == tol) return d.flattened;
+
+		List<PathFlattener.Mapping> m = flattener(tol).getMappings();
+		List<Vec3> o = new ArrayList<>(m.size() + 1);
+		for (PathFlattener.Mapping x : m)
+			o.add(x.start);
+		if (m.size() > 0) o.add(m.get(m.size() - 1).end);
+
+		o = Collections.unmodifiableList(o);
+		d.flattenedTol = tol;
+		d.flattened = o;
+		return o;
+	}
+
+	/**
+	 * returns this line as a java.awt.Shape, thickened by the 'thicken' attribute if there is one. Cached against the modification count of this line (and the stroke), so the Shape that's
+	 * returned is shared and must not be changed.
+	 */
+	@HiddenInAutocomplete
+	public Shape shape() {
+		BasicStroke s = attributes.get(StandardFLineDrawing.thicken);
+		if (s == null) return path();
+
+		Derived d = derived();
+		if (d.stroked != null && d.strokedWith == s) return d.stroked;
+		Shape r = s.createStrokedShape(path());
+		d.strokedWith = s;
+		d.stroked = r;
+		return r;
+	}
+
+	/**
+	 * returns this line as a java.awt.Shape, ignoring the 'thicken' attribute. Cached against the modification count of this line, so the Shape that's returned is shared and must not be changed.
+	 */
+	@HiddenInAutocomplete
+	public Shape path() {
+		Derived d = derived();
+		if (d.path != null) return d.path;
+
+		GeneralPath p = new GeneralPath();
+		if (isStreamable()) ((Packed) nodes).appendTo(p);
+		else for (Node n : nodes) {
+			if (n instanceof MoveTo) p.moveTo(n.to.x, n.to.y);
+			else if (n instanceof LineTo) p.lineTo(n.to.x, n.to.y);
+			else if (n instanceof CubicTo) p.curveTo(((CubicTo) n).c1.x, ((CubicTo) n).c1.y, ((CubicTo) n).c2.x, ((CubicTo) n).c2.y, n.to.x, n.to.y);
+		}
+		d.path = p;
+		return p;
+	}
+
 	@Override
 	public FLine get() {
 		return this;
@@ -1078,7 +1532,7 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 
 		if (m.equals("n")) return last();
 
-		Dict.Prop cannon = new Dict.Prop(m).findCannon();
+		Dict.Prop cannon = Dict.Canonical.findCannon(m);
 
 		Object ret = attributes.getOrConstruct(cannon);
 
@@ -1098,7 +1552,7 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 		if (value instanceof ConsString) value = value.toString();
 
 
-		Dict.Prop cannon = new Dict.Prop(name).toCannon();
+		Dict.Prop cannon = Dict.Canonical.intern(name);
 
 		Object converted = convert(value, cannon.getTypeInformation());
 
@@ -1248,7 +1702,7 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 		@HiddenInAutocomplete
 		public Object asMap_get(String m) {
 
-			Dict.Prop cannon = new Dict.Prop(m).findCannon();
+			Dict.Prop cannon = Dict.Canonical.findCannon(m);
 
 			Object ret = attributes.getOrConstruct(cannon);
 
@@ -1274,7 +1728,7 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 
 
 //			Log.log("underscore.debug", " underscore box set :" + name + " to " + value.getClass() + " <" + Function.class.getName() + ">");
-			Dict.Prop cannon = new Dict.Prop(name).toCannon();
+			Dict.Prop cannon = Dict.Canonical.intern(name);
 
 //			Log.log("underscore.debug", " cannonical type information " + cannon.getTypeInformation());
 
@@ -1437,6 +1891,300 @@ public class FLine implements Supplier<FLine>, Linker.AsMap {
 
 	}
 
+	/**
+	 * Packed storage for the nodes of a line: one byte per node for its type, the positions in a single array of doubles, and the control points of cubic segments in another. This is a List of
+	 * Node like any other, but a Node (together with its Vec3's and its attributes) is only made when somebody actually asks for it. Until then lines with hundreds of thousands of points cost a
+	 * few dozen bytes a point and draw straight out of the arrays (see renderPackedToLine etc.).
+	 * <p>
+	 * Once a Node has been handed out it is the authority for that position in the line (it can be changed in place), so we stop drawing from the arrays and go back to drawing Nodes. Anything
+	 * other than appending to the end (inserting, removing, replacing nodes) turns this back into a plain list of Nodes.
+	 * <p>
+	 * Per-node attributes that are set before any Nodes have been made are kept in sparse columns (see setAttribute) and copied into the Nodes as they are made.
+	 * <p>
+	 * So anything that walks 'nodes' (a for loop, a stream, nodes.get(i), last()) ends streaming for good. FLine.transform() and byTransforming() work on the arrays directly, as do drawing,
+	 * bounds() and duplicate(); most of the rest of FLine (and most of FLinesAndJavaShapes) still goes through Nodes.
+	 */
+	public class Packed extends AbstractList<Node> implements RandomAccess {
+		static public final byte MOVE = 0, LINE = 1, CUBIC = 2;
+
+		byte[] ops = new byte[16];
+		double[] to = new double[16 * 3];
+		// index into 'controls' (6 doubles per cubic) for each node, allocated with the first cubic
+		int[] controlAt;
+		double[] controls;
+		int size = 0;
+		int cubics = 0;
+
+		Node[] views;
+		int viewCount = 0;
+
+		Map<Dict.Prop, Object[]> columns;
+
+		List<Node> unpacked;
+
+		public Packed() {
+		}
+
+		protected Packed(Packed from) {
+			ops = Arrays.copyOf(from.ops, from.size);
+			to = Arrays.copyOf(from.to, from.size * 3);
+			if (from.controlAt != null) {
+				controlAt = Arrays.copyOf(from.controlAt, from.size);
+				controls = Arrays.copyOf(from.controls, from.cubics * 6);
+			}
+			size = from.size;
+			cubics = from.cubics;
+			if (from.columns != null) {
+				columns = new LinkedHashMap<>();
+				for (Map.Entry<Dict.Prop, Object[]> e : from.columns.entrySet())
+					columns.put(e.getKey(), e.getValue()
+								 .clone());
+			}
+		}
+
+		public boolean isStreamable() {
+			return unpacked == null && viewCount == 0;
+		}
+
+		protected boolean append(byte op, double x, double y, double z) {
+			if (unpacked != null) return false;
+			ensure(size + 1);
+			ops[size] = op;
+			to[size * 3] = x;
+			to[size * 3 + 1] = y;
+			to[size * 3 + 2] = z;
+			size++;
+			modCount++;
+			modify();
+			return true;
+		}
+
+		protected boolean appendCubic(double c1x, double c1y, double c1z, double c2x, double c2y, double c2z, double x, double y, double z) {
+			if (unpacked != null) return false;
+			ensure(size + 1);
+			if (controlAt == null) {
+				controlAt = new int[ops.length];
+				controls = new double[6 * 16];
+			}
+			if (controls.length < (cubics + 1) * 6) controls = Arrays.copyOf(controls, controls.length * 2);
+			controlAt[size] = cubics * 6;
+			controls[cubics * 6] = c1x;
+			controls[cubics * 6 + 1] = c1y;
+			controls[cubics * 6 + 2] = c1z;
+			controls[cubics * 6 + 3] = c2x;
+			controls[cubics * 6 + 4] = c2y;
+			controls[cubics * 6 + 5] = c2z;
+			cubics++;
+			return append(CUBIC, x, y, z);
+		}
+
+		private void ensure(int n) {
+			if (n <= ops.length) return;
+			int c = Math.max(n, ops.length * 2);
+			ops = Arrays.copyOf(ops, c);
+			to = Arrays.copyOf(to, c * 3);
+			if (controlAt != null) controlAt = Arrays.copyOf(controlAt, c);
+			if (views != null) views = Arrays.copyOf(views, c);
+			if (columns != null) for (Map.Entry<Dict.Prop, Object[]> e : columns.entrySet())
+				e.setValue(Arrays.copyOf(e.getValue(), c));
+		}
+
+		@Override
+		public Node get(int index) {
+			if (unpacked != null) return unpacked.get(index);
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException("" + index + " / " + size);
+			if (views == null) views = new Node[ops.length];
+			Node n = views[index];
+			if (n == null) {
+				int t = index * 3;
+				if (ops[index] == MOVE) n = new MoveTo(to[t], to[t + 1], to[t + 2]);
+				else if (ops[index] == LINE) n = new LineTo(to[t], to[t + 1], to[t + 2]);
+				else {
+					int c = controlAt[index];
+					n = new CubicTo(controls[c], controls[c + 1], controls[c + 2], controls[c + 3], controls[c + 4], controls[c + 5], to[t], to[t + 1], to[t + 2]);
+				}
+				if (columns != null) for (Map.Entry<Dict.Prop, Object[]> e : columns.entrySet()) {
+					Object v = e.getValue()[index];
+					if (v != null) n.attributes.put(e.getKey(), v);
+				}
+				views[index] = n;
+				viewCount++;
+			}
+			return n;
+		}
+
+		@Override
+		public int size() {
+			return unpacked != null ? unpacked.size() : size;
+		}
+
+		@Override
+		public void add(int index, Node n) {
+			if (unpacked != null || index != size) {
+				unpack().add(index, n);
+				modCount++;
+				return;
+			}
+			byte op = n instanceof MoveTo ? MOVE : n instanceof CubicTo ? CUBIC : LINE;
+			if (op == CUBIC) appendCubic(((CubicTo) n).c1.x, ((CubicTo) n).c1.y, ((CubicTo) n).c1.z, ((CubicTo) n).c2.x, ((CubicTo) n).c2.y, ((CubicTo) n).c2.z, n.to.x, n.to.y, n.to.z);
+			else append(op, n.to.x, n.to.y, n.to.z);
+			// the Node we were given is what's in the line now
+			if (views == null) views = new Node[ops.length];
+			views[index] = n;
+			viewCount++;
+		}
+
+		@Override
+		public Node set(int index, Node n) {
+			return unpack().set(index, n);
+		}
+
+		@Override
+		public Node remove(int index) {
+			modCount++;
+			return unpack().remove(index);
+		}
+
+		@Override
+		public void clear() {
+			modCount++;
+			unpacked = null;
+			ops = new byte[16];
+			to = new double[16 * 3];
+			controlAt = null;
+			controls = null;
+			size = cubics = viewCount = 0;
+			views = null;
+			columns = null;
+		}
+
+		/**
+		 * sets a per-node attribute. If the Node hasn't been made yet this goes into a column rather than making it
+		 */
+		public <T> void setAttribute(int index, Dict.Prop<T> p, T value) {
+			if (unpacked != null || (views != null && views[index] != null)) {
+				get(index).attributes.put(p, value);
+				return;
+			}
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException("" + index + " / " + size);
+			if (columns == null) columns = new LinkedHashMap<>();
+			columns.computeIfAbsent(p, k -> new Object[ops.length])[index] = value;
+		}
+
+		public boolean hasColumn(String name) {
+			return columns != null && columns.containsKey(Dict.Canonical.key(name));
+		}
+
+		public <T> T getAttribute(int index, Dict.Prop<T> p) {
+			if (unpacked != null || (views != null && views[index] != null)) return get(index).attributes.get(p);
+			Object[] c = columns == null ? null : columns.get(p);
+			return c == null ? null : (T) c[index];
+		}
+
+		protected List<Node> unpack() {
+			if (unpacked == null) {
+				ArrayList<Node> u = new ArrayList<>(Math.max(16, size));
+				for (int i = 0; i < size; i++)
+					u.add(get(i));
+				unpacked = u;
+				ops = null;
+				to = null;
+				controlAt = null;
+				controls = null;
+				views = null;
+				columns = null;
+			}
+			return unpacked;
+		}
+
+		protected void emit(MeshAcceptor m, int i, int fixedSize, Vec3 o) {
+			emit(m, i, fixedSize, 0, o);
+		}
+
+		/**
+		 * sends the vertices for node 'i' to 'm', cubic segments are sampled 'fixedSize' times, or if 'tolerance' is greater than zero, as many times as cubicSegments says. 'o' is scratch space
+		 */
+		protected void emit(MeshAcceptor m, int i, int fixedSize, float tolerance, Vec3 o) {
+			int t = i * 3;
+			if (ops[i] != CUBIC || i == 0) {
+				m.nextVertex(to[t], to[t + 1], to[t + 2]);
+				return;
+			}
+			int c = controlAt[i];
+			int f = t - 3;
+			if (tolerance > 0)
+				fixedSize = cubicSegments(to[f], to[f + 1], to[f + 2], controls[c], controls[c + 1], controls[c + 2], controls[c + 3], controls[c + 4], controls[c + 5], to[t], to[t + 1], to[t + 2], tolerance);
+			for (int q = 0; q < fixedSize; q++) {
+				float alpha = (q + 1f) / fixedSize;
+				o = evaluateCubicFrame(to[f], to[f + 1], to[f + 2], controls[c], controls[c + 1], controls[c + 2], controls[c + 3], controls[c + 4], controls[c + 5], to[t], to[t + 1], to[t + 2], alpha, o);
+				m.nextVertex(o.x, o.y, o.z);
+			}
+		}
+
+		/**
+		 * transforms every position and control point in place, without making Nodes for them (Nodes that have already been made are transformed themselves). Returns false if this has been
+		 * unpacked, in which case there's nothing here to transform
+		 */
+		protected boolean transform(Function<Vec3, Vec3> by) {
+			if (unpacked != null) return false;
+			Vec3 o = new Vec3();
+			for (int i = 0; i < size; i++) {
+				if (views != null && views[i] != null) {
+					views[i].transform(by);
+					continue;
+				}
+				int t = i * 3;
+				apply(by, o, to, t);
+				if (ops[i] == CUBIC) {
+					apply(by, o, controls, controlAt[i]);
+					apply(by, o, controls, controlAt[i] + 3);
+				}
+			}
+			return true;
+		}
+
+		private void apply(Function<Vec3, Vec3> by, Vec3 o, double[] a, int at) {
+			o.x = a[at];
+			o.y = a[at + 1];
+			o.z = a[at + 2];
+			Vec3 r = by.apply(o);
+			a[at] = r.x;
+			a[at + 1] = r.y;
+			a[at + 2] = r.z;
+		}
+
+		protected Rect bounds() {
+			if (size == 0) return null;
+			double minx = Double.POSITIVE_INFINITY, miny = Double.POSITIVE_INFINITY;
+			double maxx = Double.NEGATIVE_INFINITY, maxy = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < size * 3; i += 3) {
+				minx = Math.min(minx, to[i]);
+				miny = Math.min(miny, to[i + 1]);
+				maxx = Math.max(maxx, to[i]);
+				maxy = Math.max(maxy, to[i + 1]);
+			}
+			for (int i = 0; i < cubics * 6; i += 3) {
+				minx = Math.min(minx, controls[i]);
+				miny = Math.min(miny, controls[i + 1]);
+				maxx = Math.max(maxx, controls[i]);
+				maxy = Math.max(maxy, controls[i + 1]);
+			}
+			return new Rect(minx, miny, maxx - minx, maxy - miny);
+		}
+
+		protected void appendTo(GeneralPath p) {
+			for (int i = 0; i < size; i++) {
+				int t = i * 3;
+				if (ops[i] == MOVE) p.moveTo(to[t], to[t + 1]);
+				else if (ops[i] == LINE) p.lineTo(to[t], to[t + 1]);
+				else {
+					int c = controlAt[i];
+					p.curveTo(controls[c], controls[c + 1], controls[c + 3], controls[c + 4], to[t], to[t + 1]);
+				}
+			}
+		}
+	}
+
 	public class BookmarkCache {
 		MeshBuilder.Bookmark start;
 		MeshBuilder.Bookmark end;
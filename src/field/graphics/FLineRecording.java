@@ -0,0 +1,176 @@
+package field.graphics;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The vertices (and aux values) that an FLine sends to a MeshBuilder, recorded so that they can be produced on one thread and copied into the MeshBuilder on another. See FLine.prepare(...) and
+ * FLineDrawing's preparation of bulkLines.
+ * <p>
+ * Alongside the vertices we keep where each node of the line ended and whether it was a MoveTo, which is all that renderToLine / renderToMesh need to rebuild the line and contour structure. The
+ * replay methods here walk that structure in exactly the same way that FLine's render methods walk nodes, so the MeshBuilder (and its Bookmarks) can't tell the difference.
+ */
+public class FLineRecording implements MeshAcceptor {
+
+	// what this was recorded from
+	long mod;
+	int fixedSize;
+	Map<Integer, String> aux;
+
+	// for thickened lines, the outline that renderLineToMeshByStroking draws instead (already prepared)
+	FLine stroked;
+
+	float[] vertices = new float[3 * 64];
+	int vertexCount = 0;
+
+	int[] auxAt = new int[16];
+	int[] auxChannel = new int[16];
+	float[][] auxValue = new float[16][];
+	int auxCount = 0;
+
+	boolean[] nodeIsMove = new boolean[16];
+	int[] nodeEnd = new int[16];
+	int nodeCount = 0;
+
+	@Override
+	public MeshAcceptor nextVertex(float x, float y, float z) {
+		if (vertices.length < 3 * (vertexCount + 1)) vertices = Arrays.copyOf(vertices, vertices.length * 2);
+		vertices[3 * vertexCount] = x;
+		vertices[3 * vertexCount + 1] = y;
+		vertices[3 * vertexCount + 2] = z;
+		vertexCount++;
+		return this;
+	}
+
+	@Override
+	public MeshAcceptor aux(int channel, float[] value) {
+		if (auxAt.length == auxCount) {
+			auxAt = Arrays.copyOf(auxAt, auxCount * 2);
+			auxChannel = Arrays.copyOf(auxChannel, auxCount * 2);
+			auxValue = Arrays.copyOf(auxValue, auxCount * 2);
+		}
+		// aux values apply to the next vertex
+		auxAt[auxCount] = vertexCount;
+		auxChannel[auxCount] = channel;
+		auxValue[auxCount] = value;
+		auxCount++;
+		return this;
+	}
+
+	/**
+	 * marks the end of the vertices for a node
+	 */
+	public void endNode(boolean isMoveTo) {
+		if (nodeEnd.length == nodeCount) {
+			nodeIsMove = Arrays.copyOf(nodeIsMove, nodeCount * 2);
+			nodeEnd = Arrays.copyOf(nodeEnd, nodeCount * 2);
+		}
+		nodeIsMove[nodeCount] = isMoveTo;
+		nodeEnd[nodeCount] = vertexCount;
+		nodeCount++;
+	}
+
+	public void clear() {
+		vertexCount = 0;
+		Arrays.fill(auxValue, 0, auxCount, null);
+		auxCount = 0;
+		nodeCount = 0;
+		stroked = null;
+	}
+
+	/**
+	 * an exactly sized copy of this recording, so that this one can be reused as scratch space
+	 */
+	public FLineRecording copy(long mod, int fixedSize, Map<Integer, String> aux) {
+		FLineRecording r = new FLineRecording();
+		r.mod = mod;
+		r.fixedSize = fixedSize;
+		r.aux = aux;
+		r.vertices = Arrays.copyOf(vertices, 3 * vertexCount);
+		r.vertexCount = vertexCount;
+		r.auxAt = Arrays.copyOf(auxAt, auxCount);
+		r.auxChannel = Arrays.copyOf(auxChannel, auxCount);
+		r.auxValue = Arrays.copyOf(auxValue, auxCount);
+		r.auxCount = auxCount;
+		r.nodeIsMove = Arrays.copyOf(nodeIsMove, nodeCount);
+		r.nodeEnd = Arrays.copyOf(nodeEnd, nodeCount);
+		r.nodeCount = nodeCount;
+		return r;
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * sends vertices 'from' (inclusive) to 'to' (exclusive) along with their aux values, starting at aux entry 'a'. Returns the next aux entry
+	 */
+	private int emit(MeshAcceptor m, int from, int to, int a) {
+		for (int i = from; i < to; i++) {
+			while (a < auxCount && auxAt[a] == i) {
+				m.aux(auxChannel[a], auxValue[a]);
+				a++;
+			}
+			m.nextVertex(vertices[3 * i], vertices[3 * i + 1], vertices[3 * i + 2]);
+		}
+		return a;
+	}
+
+	/**
+	 * replays this recording as FLine.renderToPoints would. 'm' is already open
+	 */
+	public void toPoints(MeshBuilder m) {
+		emit(m, 0, vertexCount, 0);
+	}
+
+	/**
+	 * replays this recording as FLine.renderToLine would. 'm' is already open
+	 */
+	public void toLine(MeshBuilder m) {
+		MeshBuilder.Bookmark start = null;
+		int v = 0, a = 0;
+		for (int n = 0; n < nodeCount; n++) {
+			if (nodeIsMove[n]) {
+				if (start != null) m.nextLine(start.at() + 1);
+				a = emit(m, v, nodeEnd[n], a);
+				start = m.bookmark();
+			} else {
+				a = emit(m, v, nodeEnd[n], a);
+				if (start == null) start = m.bookmark();
+			}
+			v = nodeEnd[n];
+		}
+
+		MeshBuilder.Bookmark end = m.bookmark();
+		if (start != null && start.at() != end.at()) m.nextLine(start.at() + 1);
+	}
+
+	/**
+	 * replays this recording as FLine.renderToMesh would. 'm' is already open
+	 */
+	public void toMesh(MeshBuilder m) {
+		MeshBuilder_tesselationSupport ts = m.getTessSupport();
+		MeshBuilder.Bookmark start = null;
+		int v = 0, a = 0;
+		ts.begin();
+		for (int n = 0; n < nodeCount; n++) {
+			if (nodeIsMove[n]) {
+				if (start != null) ts.endContour();
+				ts.beginContour();
+				a = emit(ts, v, nodeEnd[n], a);
+				start = m.bookmark();
+			} else {
+				a = emit(ts, v, nodeEnd[n], a);
+				if (start == null) {
+					start = m.bookmark();
+					ts.beginContour();
+				}
+			}
+			v = nodeEnd[n];
+		}
+
+		MeshBuilder.Bookmark end = m.bookmark();
+		if (start != null && start.at() != end.at()) ts.endContour();
+		ts.end();
+	}
+}
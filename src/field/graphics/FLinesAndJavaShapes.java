@@ -44,33 +44,15 @@ public class FLinesAndJavaShapes {
 	private static double ctrlpts[][]
 		    = {{0.0, 0.0, 0.0, 0.5}, {0.0, 0.0, 1.0, -0.5}, {0.0, 0.0, 1.0, -acv, 0.0, acv, 1.0, 0.0, 0.0, 0.5, 1.0, 0.0}, {1.0, -0.5, 1.0, 0.0}, {1.0, -acv, 1.0, 0.0, 1.0, 0.0, 1.0, -acv, 1.0, 0.0, 1.0, -0.5}, {1.0, 0.0, 0.0, 0.5}, {1.0, 0.0, 0.0, acv, 1.0, -acv, 0.0, 0.0, 1.0, -0.5, 0.0, 0.0}, {0.0, 0.5, 0.0, 0.0}, {0.0, acv, 0.0, 0.0, 0.0, 0.0, 0.0, acv, 0.0, 0.0, 0.0, 0.5}, {},};
 
+	/**
+	 * the java.awt.Shape for this FLine, thickened if it has a 'thicken' attribute. This is cached on the FLine (see FLine.shape()), so don't modify it.
+	 */
 	static public Shape flineToJavaShape(FLine f) {
-
-		if (f.attributes.has(StandardFLineDrawing.thicken)) {
-			return f.attributes.get(StandardFLineDrawing.thicken).createStrokedShape(_flineToJavaShape(f));
-		}
-
-		return _flineToJavaShape(f);
+		return f.shape();
 	}
 
 	static public Shape flineToJavaShape_notThickened(FLine f) {
-
-		return _flineToJavaShape(f);
-	}
-
-
-
-	private static GeneralPath _flineToJavaShape(FLine f) {
-		GeneralPath p = new GeneralPath();
-
-		for (FLine.Node n : f.nodes) {
-			if (n instanceof FLine.MoveTo) p.moveTo(n.to.x, n.to.y);
-			else if (n instanceof FLine.LineTo) p.lineTo(n.to.x, n.to.y);
-			else if (n instanceof FLine.CubicTo) p.curveTo(((FLine.CubicTo) n).c1.x, ((FLine.CubicTo) n).c1.y, ((FLine.CubicTo) n).c2.x, ((FLine.CubicTo) n).c2.y, n.to.x, n.to.y);
-
-		}
-		return p;
-
+		return f.path();
 	}
 
 	static public Shape flineToJavaShape(Collection<FLine> f)
@@ -595,16 +577,7 @@ public class FLinesAndJavaShapes {
 	 * A list of low curvature positions out of a FLine
 	 */
 	public List<Vec3> positions(FLine f, float flatness) {
-		Cursor c = new Cursor(f, flatness);
-		List<PathFlattener.Mapping> m = c.getPathFlattener()
-						 .getMappings();
-		List<Vec3> o = m.stream()
-				.map(x -> x.start)
-				.collect(Collectors.toList());
-
-		o.add(m.get(m.size() - 1).end);
-
-		return o;
+		return new ArrayList<>(f.flattened(flatness));
 	}
 
 	/**
@@ -1124,8 +1097,8 @@ public class FLinesAndJavaShapes {
 		}
 
 		protected PathFlattener getPathFlattener() {
-			if (p == null) return p = new PathFlattener(this.on, tol);
-			return p;
+			// cached on the line itself, shared between cursors and thrown away when the line changes
+			return p = on.flattener(tol);
 		}
 
 		private int clamp(int index) {
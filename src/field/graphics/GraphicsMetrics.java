@@ -0,0 +1,182 @@
+package field.graphics;
+
+import field.app.RunLoop;
+
+import java.util.*;
+
+/**
+ * Per-frame counts of how well geometry caching is working and how much data is going to OpenGL, broken down by layer and by whatever owns the geometry (for Field, the Box that's drawing it).
+ * <p>
+ * Counts accumulate into the current Frame; when RunLoop.tick moves on the frame is finished and pushed onto a ring of the last 'historyLength' frames (frames where nothing was counted at all
+ * aren't kept). Attribution is by whatever was last passed to attribute(...) --- FLineDrawing sets this as it dispatches each Box's lines. Uploads to OpenGL happen later, when the scene is drawn,
+ * so they generally end up attributed to nobody; 'verticesRebuilt' (vertices rewritten into a MeshBuilder because a cache was invalid) is the per-Box measure of what is going to be uploaded.
+ * <p>
+ * Nothing is counted until 'enabled' is set.
+ * <p>
+ * Like the rest of the graphics system this is only to be touched from the main thread. MeshBuilder.cacheHits and friends are still incremented for existing code that reads them.
+ */
+public class GraphicsMetrics {
+
+	public enum Counter {
+		cacheHits, cacheMisses_cursor, cacheMisses_externalHash, cacheMisses_internalHash, cacheMisses_tooOld, verticesRebuilt, uploadBytes, uploadCalls, textureBytes, streamedBytes
+	}
+
+	static public final int COUNTERS = Counter.values().length;
+
+	/**
+	 * off by default, so that nothing is counted (or allocated) per frame unless someone is looking. GraphicsStats turns this on when 'showGraphicsStats' is set or a script asks for metrics
+	 */
+	static public boolean enabled = false;
+
+	/**
+	 * how many frames of history to keep
+	 */
+	static public int historyLength = 120;
+
+	static public final String unattributed = "(unattributed)";
+
+	/**
+	 * the counts for a single frame (RunLoop.tick)
+	 */
+	static public class Frame {
+		public final long tick;
+		public final long[] totals = new long[COUNTERS];
+		public final Map<String, long[]> byLayer = new LinkedHashMap<>();
+		public final Map<Object, long[]> byOwner = new LinkedHashMap<>();
+
+		Frame(long tick) {
+			this.tick = tick;
+		}
+
+		public long get(Counter c) {
+			return totals[c.ordinal()];
+		}
+
+		public long get(Counter c, String layer) {
+			long[] l = byLayer.get(layer);
+			return l == null ? 0 : l[c.ordinal()];
+		}
+
+		public long getForOwner(Counter c, Object owner) {
+			long[] l = byOwner.get(owner);
+			return l == null ? 0 : l[c.ordinal()];
+		}
+
+		public long misses() {
+			return misses(totals);
+		}
+
+		/**
+		 * fraction of MeshBuilder bookmarks that were skipped, or 1 if nothing was asked of the cache
+		 */
+		public float hitRate() {
+			return hitRate(totals);
+		}
+
+		public float hitRate(String layer) {
+			long[] l = byLayer.get(layer);
+			return l == null ? 1 : hitRate(l);
+		}
+
+		public float hitRateForOwner(Object owner) {
+			long[] l = byOwner.get(owner);
+			return l == null ? 1 : hitRate(l);
+		}
+
+		static long misses(long[] c) {
+			return c[Counter.cacheMisses_cursor.ordinal()] + c[Counter.cacheMisses_externalHash.ordinal()] + c[Counter.cacheMisses_internalHash.ordinal()] + c[Counter.cacheMisses_tooOld.ordinal()];
+		}
+
+		static float hitRate(long[] c) {
+			long h = c[Counter.cacheHits.ordinal()];
+			long t = h + misses(c);
+			return t == 0 ? 1 : h / (float) t;
+		}
+
+		@Override
+		public String toString() {
+			return "frame " + tick + " cache " + Math.round(100 * hitRate()) + "% (" + get(Counter.cacheHits) + "h / " + misses() + "m) | rebuilt " + get(Counter.verticesRebuilt) + "v | up " + get(
+				    Counter.uploadBytes) + "b in " + get(Counter.uploadCalls) + " | tex " + get(Counter.textureBytes) + "b | streamed " + get(Counter.streamedBytes) + "b";
+		}
+	}
+
+	static private Frame current = new Frame(RunLoop.tick);
+	static private final ArrayDeque<Frame> history = new ArrayDeque<>();
+
+	static private String layer = null;
+	static private Object owner = null;
+
+	/**
+	 * attributes everything counted from now on to this layer and owner (either can be null)
+	 */
+	static public void attribute(String layer, Object owner) {
+		GraphicsMetrics.layer = layer;
+		GraphicsMetrics.owner = owner;
+	}
+
+	static public void attributeLayer(String layer) {
+		GraphicsMetrics.layer = layer;
+	}
+
+	static public void count(Counter c, long n) {
+		if (!enabled || n == 0) return;
+		Frame f = frame();
+		int i = c.ordinal();
+		f.totals[i] += n;
+		f.byLayer.computeIfAbsent(layer == null ? unattributed : layer, k -> new long[COUNTERS])[i] += n;
+		f.byOwner.computeIfAbsent(owner == null ? unattributed : owner, k -> new long[COUNTERS])[i] += n;
+	}
+
+	static private Frame frame() {
+		if (current.tick != RunLoop.tick) {
+			if (current.byLayer.size() > 0) {
+				history.addLast(current);
+				while (history.size() > Math.max(1, historyLength)) history.removeFirst();
+			}
+			current = new Frame(RunLoop.tick);
+		}
+		return current;
+	}
+
+	/**
+	 * the frame that's still being counted
+	 */
+	static public Frame current() {
+		return frame();
+	}
+
+	/**
+	 * the most recently finished frame, or null if nothing has been counted yet
+	 */
+	static public Frame last() {
+		frame();
+		return history.peekLast();
+	}
+
+	/**
+	 * finished frames, oldest first
+	 */
+	static public List<Frame> history() {
+		frame();
+		return new ArrayList<>(history);
+	}
+
+	/**
+	 * sums a counter by owner over the history, largest first
+	 */
+	static public List<Map.Entry<Object, Long>> worstOwners(Counter c, int n) {
+		Map<Object, Long> sum = new LinkedHashMap<>();
+		for (Frame f : history())
+			f.byOwner.forEach((k, v) -> sum.merge(k, v[c.ordinal()], Long::sum));
+
+		List<Map.Entry<Object, Long>> r = new ArrayList<>(sum.entrySet());
+		r.removeIf(x -> x.getValue() == 0);
+		r.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+		return r.subList(0, Math.min(n, r.size()));
+	}
+
+	static public void clear() {
+		history.clear();
+		current = new Frame(RunLoop.tick);
+	}
+}
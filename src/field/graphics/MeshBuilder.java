@@ -6,7 +6,6 @@ import field.linalg.Vec4;
 import field.utility.Log;
 import field.utility.Pair;
 import field.utility.Util;
-import org.lwjgl.opengl.GL15;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
@@ -233,6 +232,8 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 
 	/**
 	 * Can all the calls to nextVertex, nextElement and aux, between these two bookmarks be skipped? Returns true if we have skipped forward, false otherwise.
+	 * <p>
+	 * Skipping writes nothing, so the vertices and elements between the bookmarks are never marked dirty and never get reuploaded to OpenGL.
 	 */
 	public boolean skipTo(Bookmark from, Bookmark to) {
 		if (!from.stillValid() || from.getOuter() != this) return false;
@@ -252,7 +253,9 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 
 		if (!from.stillValid(externalHash) || from.getOuter() != this) {
 			from.reset(externalHash);
+			int v = vertexCursor;
 			updator.accept(this);
+			GraphicsMetrics.count(GraphicsMetrics.Counter.verticesRebuilt, vertexCursor - v);
 			to.reset(externalHash);
 
 			return false;
@@ -561,7 +564,7 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 				throw new IllegalArgumentException(" dimension mismatch in merge " + a.getDimension() + "!=" + b.getDimension());
 			if (b != null) {
 				FloatBuffer left = ensureSize(ii, b.getDimension(), vertexCursor + source.vertexCursor);
-				FloatBuffer right = b.floats();
+				FloatBuffer right = b.floats(true);
 				left.put(right); // fill with blank ?
 			}
 			if (b == null) ensureSize(ii, a.getDimension(), vertexCursor + source.vertexCursor); // fill with blank?
@@ -630,13 +633,15 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 	private FloatBuffer ensureSize(int attribute, int dimension, int num) {
 		ArrayBuffer a = target.buffer(attribute, dimension);
 		if (a == null) {
-			a = target.arrayBufferFactory.newArrayBuffer((int) (num * GROWTH + 1), GL15.GL_ARRAY_BUFFER, attribute, dimension, 0);
+			a = target.newArrayBuffer((int) (num * GROWTH + 1), attribute, dimension);
 		}
 		if (a.getSize() < (num + 1)) {
 			a = a.replaceWithSize((int) ((num + 1) * GROWTH + 1));
 			target.setBuffer(attribute, a);
 		}
-		FloatBuffer f = a.floats();
+		// callers write from vertexCursor up to (at most) num, so that's all that needs uploading
+		a.dirty(vertexCursor, Math.max(vertexCursor, num) + 1);
+		FloatBuffer f = a.floats(true);
 		f.clear();
 		f.position(dimension * vertexCursor);
 		return f;
@@ -645,7 +650,7 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 	private ArrayBuffer ensureExists(int attribute, int dimension, int num) {
 		ArrayBuffer a = target.buffer(attribute, dimension);
 		if (a == null) {
-			a = target.arrayBufferFactory.newArrayBuffer((int) (num * GROWTH + 1), GL15.GL_ARRAY_BUFFER, attribute, dimension, 0);
+			a = target.newArrayBuffer((int) (num * GROWTH + 1), attribute, dimension);
 		}
 		if (a.getSize() < (num + 1)) {
 			a = a.replaceWithSize((int) ((num + 1) * GROWTH + 1));
@@ -663,7 +668,8 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 			a = a.replaceWithSize((int) ((num + 1) * GROWTH + 1));
 			target.setElements(a);
 		}
-		IntBuffer f = a.ints();
+		a.dirty(elementCursor, Math.max(elementCursor, num) + 1);
+		IntBuffer f = a.ints(true);
 		f.clear();
 		f.position(dimension * elementCursor);
 		return f;
@@ -713,6 +719,7 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 			if (buildNumber < MeshBuilder.this.buildNumber - 1) {
 				Log.log("cache", () -> " buildNumber, build was out of date " + buildNumber + " " + MeshBuilder.this.buildNumber);
 				cacheMisses_tooOld++;
+				GraphicsMetrics.count(GraphicsMetrics.Counter.cacheMisses_tooOld, 1);
 				return false;
 			}
 
@@ -725,11 +732,13 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 				Log.log("cache",
 					() -> " CURSORS vertex cursor was :" + vertexCursor + " / " + MeshBuilder.this.vertexCursor + "  " + elementCursor + " / " + MeshBuilder.this.elementCursor);
 				cacheMisses_cursor++;
+				GraphicsMetrics.count(GraphicsMetrics.Counter.cacheMisses_cursor, 1);
 				return false;
 			}
 			if (!Util.safeEq(this.externalHash, externalHash)) {
 				Log.log("cache", () -> " externalHash " + this.externalHash + " " + externalHash);
 				cacheMisses_externalHash++;
+				GraphicsMetrics.count(GraphicsMetrics.Counter.cacheMisses_externalHash, 1);
 				return false;
 			}
 
@@ -737,9 +746,11 @@ public class MeshBuilder implements MeshAcceptor, Bracketable {
 			if (!h2.equals(hash)) {
 				Log.log("cache", () -> " internalHash " + h2 + " " + hash);
 				cacheMisses_internalHash++;
+				GraphicsMetrics.count(GraphicsMetrics.Counter.cacheMisses_internalHash, 1);
 				return false;
 			}
 			cacheHits++;
+			GraphicsMetrics.count(GraphicsMetrics.Counter.cacheHits, 1);
 			Log.log("cache", ()->"succeeded");
 			return true;
 		}
@@ -2,6 +2,7 @@ package field.graphics;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import field.app.Profiler;
 import field.utility.*;
 import fieldbox.boxes.Box;
 import fieldbox.execution.Completion;
@@ -37,6 +38,14 @@ public class Scene extends Box implements Linker.AsMap {
 	BiMap<String, Consumer<Integer>> tagged = HashBiMap.create();
 	List<Throwable> exceptions = new ArrayList<Throwable>();
 
+	// incremented by attach and detach; together with what's in our children's 'passes' it tells us if 'flattened' is still good
+	int structure = 0;
+	Flattened flattened = null;
+
+	// things detached while we are part way through an update, so that they aren't run for the rest of it
+	Set<Consumer<Integer>> tombstones = null;
+	int updating = 0;
+
 	/**
 	 * utility, takes a consumer and returns a version that runs only once every "count" iterations
 	 */
@@ -58,6 +67,7 @@ public class Scene extends Box implements Linker.AsMap {
 	public boolean attach(int pass, Consumer<Integer> p) {
 		Set<Consumer<Integer>> c = scene.get(pass);
 		if (c == null) scene.put(pass, c = new LinkedHashSet<Consumer<Integer>>());
+		attached(p);
 		return c.add(p);
 	}
 
@@ -76,6 +86,7 @@ public class Scene extends Box implements Linker.AsMap {
 		Set<Consumer<Integer>> c = scene.computeIfAbsent(pass, k -> new LinkedHashSet<>());
 
 		tagged.put(tag, p);
+		attached(p);
 
 		return c.add(p);
 	}
@@ -97,6 +108,7 @@ public class Scene extends Box implements Linker.AsMap {
 		}
 
 		tagged.put(tag, p);
+		attached(p);
 
 		return pp;
 	}
@@ -114,6 +126,16 @@ public class Scene extends Box implements Linker.AsMap {
 		if (removed.size()==0)
 			System.err.println(" removed a Perform that wasn't their");
 
+		structure++;
+		if (updating > 0) {
+			if (tombstones == null) tombstones = Collections.newSetFromMap(new IdentityHashMap<>());
+			tombstones.add(p);
+		}
+	}
+
+	private void attached(Consumer<Integer> p) {
+		structure++;
+		if (tombstones != null) tombstones.remove(p);
 	}
 
 	/**
@@ -169,6 +191,82 @@ public class Scene extends Box implements Linker.AsMap {
 		return t;
 	}
 
+	/**
+	 * Every Consumer that update() will call, in order, along with the pass that it's called for. Built by merging our own passes with our children's 'passes' and kept until either attach /
+	 * detach is called or what's in our children's 'passes' changes.
+	 */
+	static protected class Flattened {
+		final int structure;
+		final Box[] children;
+		final LinkedHashMapAndArrayList[] childPasses;
+		final int[] childVersions;
+
+		final Consumer<Integer>[] order;
+		final int[] pass;
+
+		Flattened(int structure, Box[] children, LinkedHashMapAndArrayList[] childPasses, int[] childVersions, Consumer<Integer>[] order, int[] pass) {
+			this.structure = structure;
+			this.children = children;
+			this.childPasses = childPasses;
+			this.childVersions = childVersions;
+			this.order = order;
+			this.pass = pass;
+		}
+	}
+
+	protected Flattened flatten() {
+		Flattened f = flattened;
+		if (f != null && stillValid(f)) return f;
+
+		TreeMap<Integer, Set<Consumer<Integer>>> c1 = collectChildrenPasses();
+		if (c1 == null) c1 = new TreeMap<>();
+
+		for (Map.Entry<Integer, Set<Consumer<Integer>>> c2 : scene.entrySet()) {
+			c1.computeIfAbsent(c2.getKey(), k -> new LinkedHashSet<>())
+			  .addAll(c2.getValue());
+		}
+
+		int n = 0;
+		for (Set<Consumer<Integer>> s : c1.values())
+			n += s.size();
+
+		Consumer<Integer>[] order = new Consumer[n];
+		int[] pass = new int[n];
+		int k = 0;
+		for (Map.Entry<Integer, Set<Consumer<Integer>>> e : c1.entrySet()) {
+			for (Consumer<Integer> c : e.getValue()) {
+				order[k] = c;
+				pass[k++] = e.getKey();
+			}
+		}
+
+		Collection<Box> ch = children();
+		Box[] children = ch.toArray(new Box[ch.size()]);
+		LinkedHashMapAndArrayList[] childPasses = new LinkedHashMapAndArrayList[children.length];
+		int[] childVersions = new int[children.length];
+		for (int i = 0; i < children.length; i++) {
+			childPasses[i] = children[i].properties.get(passes);
+			childVersions[i] = childPasses[i] == null ? 0 : childPasses[i].getVersion();
+		}
+
+		return flattened = new Flattened(structure, children, childPasses, childVersions, order, pass);
+	}
+
+	private boolean stillValid(Flattened f) {
+		if (f.structure != structure) return false;
+		Collection<Box> ch = children();
+		if (ch.size() != f.children.length) return false;
+		int i = 0;
+		for (Box b : ch) {
+			if (b != f.children[i]) return false;
+			LinkedHashMapAndArrayList p = b.properties.get(passes);
+			if (p != f.childPasses[i]) return false;
+			if (p != null && p.getVersion() != f.childVersions[i]) return false;
+			i++;
+		}
+		return true;
+	}
+
 
 	/**
 	 * updates everything in the scene. This is the main entry point for performing a complete update cycle.
@@ -191,35 +289,27 @@ public class Scene extends Box implements Linker.AsMap {
 
 		boolean ret = true;
 
+		updating++;
 		try {
 
-			TreeMap<Integer, Set<Consumer<Integer>>> c1 = collectChildrenPasses();
-			if (c1 == null) c1 = new TreeMap<>();
-
-			for (Map.Entry<Integer, Set<Consumer<Integer>>> c2 : scene.entrySet()) {
-				if (c1.get(c2.getKey()) == null) c1.put(c2.getKey(), c2.getValue());
-				else c1.get(c2.getKey())
-				       .addAll(c2.getValue());
-			}
-
-			TreeMap<Integer, Set<Consumer<Integer>>> scene = c1;
+			// 'flattened' is never modified, only replaced, so attach and detach during traversal are fine; anything detached is tombstoned until we're done
+			Flattened f = flatten();
 
-			for (Integer i : new LinkedHashSet<>(scene.keySet())) {
-				Log.log("graphics.trace", () -> this + " pass " + i + " -> " + scene.get(i));
-				while (!a.isEmpty() && i >= a.peek().first) ret = wrappedCall(a.poll().second);
+			for (int k = 0; k < f.order.length; k++) {
+				int i = f.pass[k];
+				if (k == 0 || f.pass[k - 1] != i) {
+					Log.log("graphics.trace", () -> this + " pass " + i + " -> " + scene.get(i));
+					while (!a.isEmpty() && i >= a.peek().first) ret = wrappedCall(a.poll().second);
+				}
 
-				ArrayList<Consumer<Integer>> previously = new ArrayList<>(scene.get(i));
+				Consumer<Integer> n = f.order[k];
+				if (tombstones != null && tombstones.contains(n)) continue;
 
-				Iterator<Consumer<Integer>> ic = previously.iterator();
-				while (ic.hasNext()) {
-					Consumer<Integer> n = ic.next();
-					GraphicsContext.checkError(() -> "on "+n);
-					if (!wrappedCall(n, i)) {
-						detach(n);
-					}
-					GraphicsContext.checkError(() -> "on "+n);
+				GraphicsContext.checkError(() -> "on "+n);
+				if (!wrappedCall(n, i)) {
+					detach(n);
 				}
-
+				GraphicsContext.checkError(() -> "on "+n);
 			}
 
 			while (!a.isEmpty()) ret = wrappedCall(a.poll().second);
@@ -235,6 +325,8 @@ public class Scene extends Box implements Linker.AsMap {
 		} catch (NullPointerException e) {
 			e.printStackTrace();
 //			System.exit(0);
+		} finally {
+			if (--updating == 0) tombstones = null;
 		}
 
 		return ret;
@@ -246,6 +338,7 @@ public class Scene extends Box implements Linker.AsMap {
 
 	private boolean wrappedCall(Consumer<Integer> c, Integer i) {
 		if (c == null) return false;
+		long start = Profiler.begin();
 		try {
 			if (c instanceof Perform)
 				return ((Perform) c).perform(i);
@@ -258,6 +351,8 @@ public class Scene extends Box implements Linker.AsMap {
 			else return false;
 			return true;
 		} finally {
+			if (start != 0) Profiler.end(start, Profiler.scene, c, i, tagged.inverse()
+										.get(c));
 			try {
 				GraphicsContext.checkError(() -> "error on " + c);
 			}
@@ -15,10 +15,93 @@ import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 
 /**
  * An OpenGL Vertex Buffer backed by a ByteBuffer. Useful for VertexArrays and ElementArrays
+ * <p>
+ * Writes that come through dirty(from, to) are kept as a handful of ranges and only those ranges are sent to OpenGL. Writes through floats(false) or
+ * ints(false) still cause everything up to the limit to be uploaded.
+ * <p>
+ * All of the OpenGL calls go through 'gl', so that what gets uploaded can be checked against a stub.
  */
 public class SimpleArrayBuffer implements ArrayBuffer {
 
+	/**
+	 * bytes uploaded to OpenGL by all SimpleArrayBuffers (Open resets this every frame)
+	 */
 	static public int uploadBytes = 0;
+
+	/**
+	 * calls to glBufferSubData made by all SimpleArrayBuffers
+	 */
+	static public int uploadCalls = 0;
+
+	/**
+	 * the most ranges we'll upload separately per buffer, after that nearby ranges get merged
+	 */
+	static public int maxRanges = 4;
+
+	/**
+	 * the OpenGL calls we make, so that they can be recorded (or faked) without a GPU
+	 */
+	public interface GL {
+		int genBuffer();
+
+		void bindBuffer(int binding, int name);
+
+		void bufferData(int binding, long bytes);
+
+		void bufferSubData(int binding, long offset, ByteBuffer data);
+
+		void bufferSubData(int binding, long offset, FloatBuffer data);
+
+		void attribPointer(int attribute, int dimension, long offset);
+
+		void attribDivisor(int attribute, int divisor);
+
+		void deleteBuffer(int name);
+	}
+
+	static public GL gl = new GL() {
+		@Override
+		public int genBuffer() {
+			return glGenBuffers();
+		}
+
+		@Override
+		public void bindBuffer(int binding, int name) {
+			glBindBuffer(binding, name);
+		}
+
+		@Override
+		public void bufferData(int binding, long bytes) {
+			glBufferData(binding, bytes, GL_STATIC_DRAW);
+		}
+
+		@Override
+		public void bufferSubData(int binding, long offset, ByteBuffer data) {
+			glBufferSubData(binding, offset, data);
+		}
+
+		@Override
+		public void bufferSubData(int binding, long offset, FloatBuffer data) {
+			glBufferSubData(binding, offset, data);
+		}
+
+		@Override
+		public void attribPointer(int attribute, int dimension, long offset) {
+			glEnableVertexAttribArray(attribute);
+			glVertexAttribPointer(attribute, dimension, GL_FLOAT, false, 0, offset);
+		}
+
+		@Override
+		public void attribDivisor(int attribute, int divisor) {
+			glVertexAttribDivisorARB(attribute, divisor);
+		}
+
+		@Override
+		public void deleteBuffer(int name) {
+			glDeleteBuffers(name);
+		}
+	};
+
 	final int divisor;
 	private final FloatBuffer dataAsFloat;
 	private final IntBuffer dataAsInt;
@@ -29,6 +112,14 @@ public class SimpleArrayBuffer implements ArrayBuffer {
 	ByteBuffer data;
 	int mod = 0;
 	private FloatBuffer customStorage = null;
+
+	// what's changed since 'rangesSince', unless 'allDirty' in which case everything has
+	private final DirtyRanges ranges = new DirtyRanges(maxRanges);
+	private boolean allDirty = true;
+	private int rangesSince = 0;
+
+	private long uploadedBytes = 0;
+
 	public SimpleArrayBuffer(int size, int binding, int attribute, int dimension, int divisor) {
 		this.size = size;
 		this.binding = binding;
@@ -53,6 +144,7 @@ public class SimpleArrayBuffer implements ArrayBuffer {
 	public void setCustomStorage(FloatBuffer customStorage) {
 		this.customStorage = customStorage;
 		mod++;
+		allDirty = true;
 	}
 
 	@Override
@@ -62,13 +154,32 @@ public class SimpleArrayBuffer implements ArrayBuffer {
 		Log.log("graphics.trace", ()-> "       clean " + finalState);
 		if (state == null) GraphicsContext.put(this, state = setup());
 		if (state.mod != mod || state.limit < limit) {
-			upload(state, limit);
+			// a context that was up to date when we started collecting ranges only needs the ranges, anybody else gets everything
+			if (state.mod == rangesSince && !allDirty && customStorage == null) uploadRanges(state, limit);
+			else upload(state, limit);
 			state.mod = mod;
+
+			allDirty = false;
+			ranges.clear();
+			rangesSince = mod;
 			return true;
 		}
 		return false;
 	}
 
+	@Override
+	public void dirty(int from, int to) {
+		mod++;
+		if (!allDirty) ranges.add(Math.max(0, from), Math.min(size, to));
+	}
+
+	/**
+	 * the total number of bytes this buffer has sent to OpenGL
+	 */
+	public long getUploadedBytes() {
+		return uploadedBytes;
+	}
+
 	@Override
 	public int getSize() {
 		return size;
@@ -107,20 +218,26 @@ public class SimpleArrayBuffer implements ArrayBuffer {
 		State s = GraphicsContext.get(this);
 		if (s != null) {
 			GraphicsContext.invalidateInThisContext(this);
-			glDeleteBuffers(s.name);
+			gl.deleteBuffer(s.name);
 		}
 	}
 
 	@Override
 	public FloatBuffer floats(boolean readOnly) {
-		if (!readOnly) mod++;
+		if (!readOnly) {
+			mod++;
+			allDirty = true;
+		}
 		return dataAsFloat.rewind()
 						.limit(dimension * size);
 	}
 
 	@Override
 	public IntBuffer ints(boolean readOnly) {
-		if (!readOnly) mod++;
+		if (!readOnly) {
+			mod++;
+			allDirty = true;
+		}
 		return dataAsInt.rewind()
 					    .limit(dimension * size);
 	}
@@ -128,29 +245,28 @@ public class SimpleArrayBuffer implements ArrayBuffer {
 	private State setup() {
 		State s = new State();
 
-		s.name = glGenBuffers();
+		s.name = gl.genBuffer();
 
-		glBindBuffer(binding, s.name);
+		gl.bindBuffer(binding, s.name);
 
-		if (divisor != 0) glVertexAttribDivisorARB(attribute, divisor);
+		if (divisor != 0) gl.attribDivisor(attribute, divisor);
 
-		glBufferData(binding, size * 4 * dimension, GL_STATIC_DRAW);
+		gl.bufferData(binding, size * 4 * dimension);
 
 		if (attribute == -1) {
 
 		} else {
-			glEnableVertexAttribArray(attribute);
-			glVertexAttribPointer(attribute, dimension, GL_FLOAT, false, 0, 0);
+			gl.attribPointer(attribute, dimension, 0);
 		}
 
-		glBindBuffer(binding, 0);
+		gl.bindBuffer(binding, 0);
 
 		return s;
 	}
 
 	private void upload(State s, int limit) {
 
-		glBindBuffer(binding, s.name);
+		gl.bindBuffer(binding, s.name);
 		data.rewind();
 		data.limit(4 * limit * dimension);
 
@@ -158,14 +274,45 @@ public class SimpleArrayBuffer implements ArrayBuffer {
 
 		if (customStorage != null) {
 			if (customStorage.limit() < (limit * dimension)) Log.log("graphics.error", ()->"ERROR: not enough data in bound storage, attribute " + attribute);
-			else glBufferSubData(binding, 0, customStorage);
+			else gl.bufferSubData(binding, 0, customStorage);
 		} else {
-			glBufferSubData(binding, 0, data);
+			gl.bufferSubData(binding, 0, data);
 		}
+		uploadCalls++;
 		uploadBytes += 4 * limit * dimension;
+		GraphicsMetrics.count(GraphicsMetrics.Counter.uploadCalls, 1);
+		GraphicsMetrics.count(GraphicsMetrics.Counter.uploadBytes, 4 * limit * dimension);
+		uploadedBytes += 4 * limit * dimension;
 
 	}
 
+	private void uploadRanges(State s, int limit) {
+
+		gl.bindBuffer(binding, s.name);
+
+		// anything between what we uploaded last time and this limit might not be on the card
+		if (s.limit < limit) ranges.add(s.limit, limit);
+		s.limit = limit;
+
+		for (int i = 0; i < ranges.size(); i++) {
+			int from = ranges.from(i);
+			int to = Math.min(ranges.to(i), limit);
+			if (to <= from) continue;
+
+			data.clear();
+			data.limit(4 * to * dimension);
+			data.position(4 * from * dimension);
+			gl.bufferSubData(binding, 4L * from * dimension, data);
+
+			uploadCalls++;
+			uploadBytes += 4 * (to - from) * dimension;
+			GraphicsMetrics.count(GraphicsMetrics.Counter.uploadCalls, 1);
+			GraphicsMetrics.count(GraphicsMetrics.Counter.uploadBytes, 4 * (to - from) * dimension);
+			uploadedBytes += 4 * (to - from) * dimension;
+		}
+		data.clear();
+	}
+
 	@Override
 	public ArrayBuffer replaceWithSize(int size) {
 		SimpleArrayBuffer next = new SimpleArrayBuffer(size, binding, attribute, dimension, divisor);
@@ -200,4 +347,86 @@ public class SimpleArrayBuffer implements ArrayBuffer {
 		int limit = 0;
 	}
 
+	/**
+	 * a small, sorted set of disjoint [from, to) ranges. Overlapping and touching ranges are merged as they are added and when there are more than 'max'
+	 * of them the two closest together are merged (uploading a little clean data is cheaper than another trip into OpenGL)
+	 */
+	static public class DirtyRanges {
+		private final int max;
+		private final int[] from;
+		private final int[] to;
+		private int count = 0;
+
+		public DirtyRanges(int max) {
+			this.max = Math.max(1, max);
+			this.from = new int[this.max + 1];
+			this.to = new int[this.max + 1];
+		}
+
+		public void add(int f, int t) {
+			if (t <= f) return;
+
+			// by far the most common case, MeshBuilder appending vertex after vertex
+			if (count > 0 && f >= from[count - 1] && f <= to[count - 1]) {
+				to[count - 1] = Math.max(to[count - 1], t);
+				return;
+			}
+
+			int i = 0;
+			while (i < count && to[i] < f) i++;
+
+			int j = i;
+			while (j < count && from[j] <= t) {
+				f = Math.min(f, from[j]);
+				t = Math.max(t, to[j]);
+				j++;
+			}
+
+			int removed = j - i;
+			if (removed == 0) {
+				System.arraycopy(from, i, from, i + 1, count - i);
+				System.arraycopy(to, i, to, i + 1, count - i);
+			} else if (removed > 1) {
+				System.arraycopy(from, j, from, i + 1, count - j);
+				System.arraycopy(to, j, to, i + 1, count - j);
+			}
+			from[i] = f;
+			to[i] = t;
+			count += 1 - removed;
+
+			if (count > max) mergeClosest();
+		}
+
+		private void mergeClosest() {
+			int best = 0;
+			for (int k = 1; k < count - 1; k++)
+				if (from[k + 1] - to[k] < from[best + 1] - to[best]) best = k;
+
+			to[best] = to[best + 1];
+			System.arraycopy(from, best + 2, from, best + 1, count - best - 2);
+			System.arraycopy(to, best + 2, to, best + 1, count - best - 2);
+			count--;
+		}
+
+		public int size() {
+			return count;
+		}
+
+		public int from(int i) {
+			return from[i];
+		}
+
+		public int to(int i) {
+			return to[i];
+		}
+
+		public boolean isEmpty() {
+			return count == 0;
+		}
+
+		public void clear() {
+			count = 0;
+		}
+	}
+
 }
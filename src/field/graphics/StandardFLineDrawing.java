@@ -72,12 +72,38 @@ public class StandardFLineDrawing {
 													      .toCannon()
 													      .doc("a list of color spans for doing multi-color, multi-font runs of text");
 
+	static public final Dict.Prop<Number> flatness = new Dict.Prop<>("flatness").type()
+										     .toCannon()
+										     .doc("if set, curves on this line are cut into as many pieces as they need to be within this many pixels of the real curve (rather than a fixed 20 pieces each)");
+
 	static public final Dict.Prop<Number> pointSize = new Dict.Prop<>("pointSize").type()
 										      .toCannon()
 										      .doc("sets the size of the point (if this line is drawn .pointed=1). This can be applied per vertex or per line.");
 
 
+	/**
+	 * does as much of the work of dispatchLine as can be done away from the MeshBuilders (see FLine.prepare). Safe to call from a worker thread, as long as nothing else is changing 'fline'
+	 */
+	static public void prepare(FLine fline) {
+		synchronized (fline) {
+			// adaptive flattening depends on the zoom, which we don't know here. It has its own cache (see FLine.renderToLineAdaptive)
+			if (fline.attributes.has(flatness)) return;
+			BasicStroke s = fline.attributes.getOr(thicken, () -> null);
+			// the same aux properties that dispatchLine will ask for, otherwise what we prepare won't match
+			if (s == null && fline.attributes.isTrue(stroked, true)) fline.addAuxProperties(1, color.getName());
+			if (fline.attributes.isTrue(pointed, false)) fline.addAuxProperties(2, pointSize.getName());
+			fline.prepare(20, s != null);
+		}
+	}
+
 	static public void dispatchLine(FLine fline, MeshBuilder mesh, MeshBuilder line, MeshBuilder points, Optional<TextDrawing> ot, String layerName) {
+		dispatchLine(fline, mesh, line, points, ot, layerName, 1);
+	}
+
+	/**
+	 * 'pixelsPerUnit' is the current zoom, it converts a line's 'flatness' from pixels into drawing units
+	 */
+	static public void dispatchLine(FLine fline, MeshBuilder mesh, MeshBuilder line, MeshBuilder points, Optional<TextDrawing> ot, String layerName, float pixelsPerUnit) {
 
 
 		Log.log("drawing.trace", ()->"dispatching line :" + fline);
@@ -86,6 +112,9 @@ public class StandardFLineDrawing {
 		Vec4 fc = new Vec4(fline.attributes.getOr(fillColor, () -> fline.attributes.getOr(color, () -> new Vec4(0, 0, 0, 1))).get());
 		Vec4 pc = new Vec4(fline.attributes.getOr(pointColor, () -> fline.attributes.getOr(color, () -> new Vec4(0, 0, 0, 1))).get());
 
+		Number fl = fline.attributes.get(flatness);
+		float tolerance = fl == null ? 0 : fl.floatValue() / pixelsPerUnit;
+
 		float op = fline.attributes.getOr(opacity, () -> 1f);
 		sc.w *= op;
 		fc.w *= op;
@@ -104,15 +133,20 @@ public class StandardFLineDrawing {
 			if (fline.attributes.isTrue(stroked, true) && line != null)
 			{
 				fline.addAuxProperties(1, color.getName());
-				fline.renderToLine(line, 20);
+				if (tolerance > 0) fline.renderToLineAdaptive(line, tolerance);
+				else fline.renderToLine(line, 20);
 			}
 		}
-		if (fline.attributes.isTrue(filled, false) && mesh != null) fline.renderToMesh(mesh, 20);
+		if (fline.attributes.isTrue(filled, false) && mesh != null) {
+			if (tolerance > 0) fline.renderToMeshAdaptive(mesh, tolerance);
+			else fline.renderToMesh(mesh, 20);
+		}
 		if (fline.attributes.isTrue(pointed, false) && points != null) {
 			float ps = fline.attributes.getFloat(pointSize, 0f);
 			points.aux(2, ps);
 			fline.addAuxProperties(2, pointSize.getName());
-			fline.renderToPoints(points, 20);
+			if (tolerance > 0) fline.renderToPointsAdaptive(points, tolerance);
+			else fline.renderToPoints(points, 20);
 			points.aux(2, ps);
 		}
 		if (fline.attributes.isTrue(hasText, false) && ot.isPresent()) {
@@ -0,0 +1,372 @@
+package field.graphics;
+
+import field.app.RunLoop;
+import field.utility.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.ARBInstancedArrays.glVertexAttribDivisorARB;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * An OpenGL Vertex Buffer for data that changes (more or less) every frame --- animated lines, particles and so on. Use BaseMesh.setStreaming(attribute, true) to pick this for a particular
+ * attribute.
+ * <p>
+ * SimpleArrayBuffer keeps a single GL_STATIC_DRAW buffer and overwrites it in place, which makes the driver wait for any drawing that's still reading the old contents. This buffer allocates
+ * 'slices' copies of its storage inside one GL_STREAM_DRAW buffer and writes each new version of the data into the next slice around the ring, repointing the vertex attribute at it. A fence
+ * is dropped behind each slice as we leave it. Should the ring come back around to a slice that the GPU still hasn't finished with then, rather than wait, we orphan the whole buffer (glBufferData
+ * with no data, the driver hands us fresh storage) and start again at the first slice.
+ * <p>
+ * Only vertex attributes can stream, element buffers can't (their offset would have to go to glDrawElements). Persistently mapped buffers need ARB_buffer_storage which the OpenGL 4.1 contexts
+ * that we run on don't have, hence orphaning.
+ * <p>
+ * All of the OpenGL calls go through 'gl', so the ring can be exercised against a stub.
+ */
+public class StreamingArrayBuffer implements ArrayBuffer {
+
+	/**
+	 * how many copies of the storage to cycle through
+	 */
+	static public int slices = 3;
+
+	/**
+	 * total bytes sent to OpenGL by all StreamingArrayBuffers
+	 */
+	static public long bytesStreamed = 0;
+
+	/**
+	 * bytes sent to OpenGL by all StreamingArrayBuffers during the last complete frame (RunLoop.tick)
+	 */
+	static public long bytesStreamedLastFrame = 0;
+
+	/**
+	 * the number of times a ring came around to a slice that the GPU was still reading from. Each of these would have been a stall; we orphan instead
+	 */
+	static public int stalls = 0;
+
+	static private long frameBytes = 0;
+	static private long frameAt = -1;
+
+	/**
+	 * the OpenGL calls we make, so that they can be recorded (or faked) without a GPU
+	 */
+	public interface GL {
+		int genBuffer();
+
+		void bindBuffer(int binding, int name);
+
+		void bufferData(int binding, long bytes);
+
+		void bufferSubData(int binding, long offset, ByteBuffer data);
+
+		void attribPointer(int attribute, int dimension, long offset);
+
+		void attribDivisor(int attribute, int divisor);
+
+		long fence();
+
+		boolean isSignaled(long fence);
+
+		void deleteFence(long fence);
+
+		void deleteBuffer(int name);
+	}
+
+	static public GL gl = new GL() {
+		@Override
+		public int genBuffer() {
+			return glGenBuffers();
+		}
+
+		@Override
+		public void bindBuffer(int binding, int name) {
+			glBindBuffer(binding, name);
+		}
+
+		@Override
+		public void bufferData(int binding, long bytes) {
+			glBufferData(binding, bytes, GL_STREAM_DRAW);
+		}
+
+		@Override
+		public void bufferSubData(int binding, long offset, ByteBuffer data) {
+			glBufferSubData(binding, offset, data);
+		}
+
+		@Override
+		public void attribPointer(int attribute, int dimension, long offset) {
+			glEnableVertexAttribArray(attribute);
+			glVertexAttribPointer(attribute, dimension, GL_FLOAT, false, 0, offset);
+		}
+
+		@Override
+		public void attribDivisor(int attribute, int divisor) {
+			glVertexAttribDivisorARB(attribute, divisor);
+		}
+
+		@Override
+		public long fence() {
+			return glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		}
+
+		@Override
+		public boolean isSignaled(long fence) {
+			int r = glClientWaitSync(fence, 0, 0);
+			return r == GL_ALREADY_SIGNALED || r == GL_CONDITION_SATISFIED;
+		}
+
+		@Override
+		public void deleteFence(long fence) {
+			glDeleteSync(fence);
+		}
+
+		@Override
+		public void deleteBuffer(int name) {
+			glDeleteBuffers(name);
+		}
+	};
+
+	final int divisor;
+	private final FloatBuffer dataAsFloat;
+	private final IntBuffer dataAsInt;
+	private final int size;
+	private final int binding;
+	private final int attribute;
+	private final int dimension;
+	ByteBuffer data;
+	int mod = 0;
+
+	public StreamingArrayBuffer(int size, int binding, int attribute, int dimension, int divisor) {
+		if (binding != GL_ARRAY_BUFFER) throw new IllegalArgumentException(" can only stream vertex attributes, not binding " + binding);
+
+		this.size = size;
+		this.binding = binding;
+		this.attribute = attribute;
+		this.dimension = dimension;
+		this.divisor = divisor;
+
+		data = ByteBuffer.allocateDirect(4 * size * dimension)
+				 .order(ByteOrder.nativeOrder());
+		dataAsFloat = data.asFloatBuffer();
+		dataAsInt = data.asIntBuffer();
+	}
+
+	static public ArrayBuffer newArrayBuffer(int maxVertex, int binding, int attribute, int dimension, int divisor) {
+		return new StreamingArrayBuffer(maxVertex, binding, attribute, dimension, divisor);
+	}
+
+	/**
+	 * copies the contents of 'from' into a new StreamingArrayBuffer of the same size
+	 */
+	static public StreamingArrayBuffer copyOf(ArrayBuffer from) {
+		StreamingArrayBuffer next = new StreamingArrayBuffer(from.getSize(), from.getBinding(), from.getAttribute(), from.getDimension(), 0);
+		next.floats()
+		    .put(from.floats(true));
+		return next;
+	}
+
+	@Override
+	public boolean clean(int limit) {
+		State state = GraphicsContext.get(this);
+		if (state == null) GraphicsContext.put(this, state = setup());
+		if (state.mod != mod || state.limit < limit) {
+			stream(state, limit);
+			state.mod = mod;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public int getBinding() {
+		return binding;
+	}
+
+	@Override
+	public int getAttribute() {
+		return attribute;
+	}
+
+	@Override
+	public int getDimension() {
+		return dimension;
+	}
+
+	@Override
+	public FloatBuffer floats(boolean readOnly) {
+		if (!readOnly) mod++;
+		return dataAsFloat.rewind()
+				  .limit(dimension * size);
+	}
+
+	@Override
+	public IntBuffer ints(boolean readOnly) {
+		if (!readOnly) mod++;
+		return dataAsInt.rewind()
+				.limit(dimension * size);
+	}
+
+	@Override
+	public void dirty(int from, int to) {
+		// every new version goes into a fresh slice in its entirety, there's nothing to be gained from tracking ranges
+		mod++;
+	}
+
+	public void destroy() {
+		State s = GraphicsContext.get(this);
+		if (s != null) {
+			GraphicsContext.invalidateInThisContext(this);
+			s.ring.drop(gl);
+			gl.deleteBuffer(s.name);
+		}
+	}
+
+	protected long sliceBytes() {
+		return 4L * size * dimension;
+	}
+
+	private State setup() {
+		State s = new State();
+		s.ring = new Ring(slices);
+		s.name = gl.genBuffer();
+
+		gl.bindBuffer(binding, s.name);
+		if (divisor != 0) gl.attribDivisor(attribute, divisor);
+		gl.bufferData(binding, sliceBytes() * s.ring.slices);
+		gl.attribPointer(attribute, dimension, 0);
+		gl.bindBuffer(binding, 0);
+
+		return s;
+	}
+
+	private void stream(State s, int limit) {
+		gl.bindBuffer(binding, s.name);
+
+		int slice = s.ring.advance(gl);
+		if (s.ring.orphaned) {
+			Log.log("graphics.trace", () -> " orphaning streaming buffer for attribute " + attribute);
+			gl.bufferData(binding, sliceBytes() * s.ring.slices);
+			stalls++;
+		}
+
+		long offset = slice * sliceBytes();
+
+		data.clear();
+		data.limit(4 * limit * dimension);
+		gl.bufferSubData(binding, offset, data);
+		data.clear();
+
+		gl.attribPointer(attribute, dimension, offset);
+		gl.bindBuffer(binding, 0);
+
+		s.limit = limit;
+		count(4L * limit * dimension);
+	}
+
+	static private void count(long bytes) {
+		if (frameAt != RunLoop.tick) {
+			bytesStreamedLastFrame = frameBytes;
+			frameBytes = 0;
+			frameAt = RunLoop.tick;
+		}
+		frameBytes += bytes;
+		bytesStreamed += bytes;
+		GraphicsMetrics.count(GraphicsMetrics.Counter.streamedBytes, bytes);
+	}
+
+	@Override
+	public ArrayBuffer replaceWithSize(int size) {
+		StreamingArrayBuffer next = new StreamingArrayBuffer(size, binding, attribute, dimension, divisor);
+
+		int min = Math.min(size, this.size);
+		next.data.clear();
+		this.data.clear();
+		this.data.limit(4 * min * dimension);
+		next.data.limit(4 * min * dimension);
+
+		next.data.put(this.data);
+		next.data.clear();
+		this.data.clear();
+
+		return next;
+	}
+
+	@Override
+	protected void finalize() throws Throwable {
+		GraphicsContext.postQueueInAllContexts(() -> this.destroy());
+	}
+
+	public class State {
+		int name = -1;
+		int mod = -1;
+		int limit = 0;
+		Ring ring;
+	}
+
+	/**
+	 * Which slice to write into next, and which slices the GPU might still be reading from.
+	 */
+	static public class Ring {
+		public final int slices;
+		private final long[] fences;
+		private int current = -1;
+
+		/**
+		 * set by advance() when the next slice was still in use and the storage has to be orphaned before it can be written to
+		 */
+		public boolean orphaned = false;
+
+		public Ring(int slices) {
+			this.slices = Math.max(1, slices);
+			this.fences = new long[this.slices];
+		}
+
+		/**
+		 * fences the slice that we're leaving and returns the next one
+		 */
+		public int advance(GL gl) {
+			if (current >= 0 && fences[current] == 0) fences[current] = gl.fence();
+
+			int next = (current + 1) % slices;
+			orphaned = false;
+
+			long f = fences[next];
+			if (f != 0) {
+				if (gl.isSignaled(f)) {
+					gl.deleteFence(f);
+					fences[next] = 0;
+				} else {
+					// the GPU hasn't caught up. Fresh storage means nothing is in use anymore
+					drop(gl);
+					orphaned = true;
+					next = 0;
+				}
+			}
+			return current = next;
+		}
+
+		public int current() {
+			return current;
+		}
+
+		public void drop(GL gl) {
+			for (int i = 0; i < fences.length; i++) {
+				if (fences[i] != 0) gl.deleteFence(fences[i]);
+				fences[i] = 0;
+			}
+		}
+	}
+
+}
@@ -163,6 +163,7 @@ public class Texture extends BaseScene<Texture.State> implements Scene.Perform,
 			s.old.rewind();
 
 			bytesUploaded += s.old.limit();
+			GraphicsMetrics.count(GraphicsMetrics.Counter.textureBytes, s.old.limit());
 			GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
 			GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
 			Log.log("graphics.trace", ()->"uploaded part 1");
@@ -234,6 +235,7 @@ public class Texture extends BaseScene<Texture.State> implements Scene.Perform,
 			s.old.rewind();
 
 			bytesUploaded += s.old.limit();
+			GraphicsMetrics.count(GraphicsMetrics.Counter.textureBytes, s.old.limit());
 
 			GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
 			GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
@@ -53,6 +53,7 @@ public class Window implements ProvidesGraphicsContext {
 	private final CanonicalModifierKeys modifiers;
 	private final GLCapabilities glcontext;
 	private final Consumer<Integer> perform = (i) -> loop();
+	private final Runnable poller = this::pollEvents;
 	volatile boolean isThreaded = false;
 	protected GraphicsContext graphicsContext;
 	protected long window;
@@ -77,6 +78,24 @@ public class Window implements ProvidesGraphicsContext {
 	static public boolean doubleBuffered = Options.dict()
 						      .isTrue(new Dict.Prop("doubleBuffered"), true);
 
+	/**
+	 * when true, mouse motion (and scroll) events that arrive between dispatches are merged into one transition, see dispatchInput(). Button, key, character and drop events are never merged,
+	 * and anything pending is dispatched before them so that ordering is preserved. Turn off with the 'coalesceInput' option
+	 */
+	static public boolean coalesceInput = Options.dict()
+						     .isTrue(new Dict.Prop("coalesceInput"), true);
+
+	/**
+	 * merged motion and scroll are dispatched once per update of this window, or, if this is greater than 0, at most once every this many milliseconds
+	 */
+	static public int inputDispatchMs = 0;
+
+	// raw motion and scroll that hasn't been dispatched yet
+	private final List<Vec2> pendingMotion = new ArrayList<>();
+	private double pendingScrollX, pendingScrollY;
+	private boolean scrollPending = false;
+	private long lastDispatchAt = 0;
+
 	static public Window shareContext = null;
 	protected final Window shareContextAtConstruction ;
 
@@ -152,6 +171,8 @@ public class Window implements ProvidesGraphicsContext {
 
 		RunLoop.main.getLoop()
 			    .attach(0, perform);
+		// an idle main loop still has to notice input
+		RunLoop.main.idlePollers.add(poller);
 
 
 		Glfw.glfwSetInputMode(window, Glfw.GLFW_STICKY_MOUSE_BUTTONS, GL11.GL_TRUE);
@@ -194,6 +215,7 @@ public class Window implements ProvidesGraphicsContext {
 		if (shareContextAtConstruction!=null) throw new IllegalArgumentException(" can't multithread a window if it's sharing a context on construciton. Set Window.shareContext to null before creating window");
 		RunLoop.main.getLoop()
 			    .detach(perform);
+		RunLoop.main.idlePollers.remove(poller);
 		isThreaded = true;
 
 
@@ -295,14 +317,17 @@ public class Window implements ProvidesGraphicsContext {
 					setBounds((int) r.x, (int) r.y, (int) r.w, (int) r.h - 1);
 				}
 			}
+			// anything left over from last time, if we are waiting for inputDispatchMs
+			dispatchInput(false);
+
 			if (!needsRepainting()) {
-				if (!isThreaded) glfwPollEvents();
+				pollEvents();
 				return;
 			}
 
 			if (renderControl.skipRender()) {
 				System.out.println(" skipping render ");
-				if (!isThreaded) glfwPollEvents();
+				pollEvents();
 				return;
 			}
 
@@ -334,13 +359,65 @@ public class Window implements ProvidesGraphicsContext {
 				swapControl.swap(window);
 			}
 
-			if (!isThreaded) glfwPollEvents();
+			pollEvents();
 		} finally {
 			currentWindow.set(null);
 		}
 
 	}
 
+	protected void pollEvents() {
+		if (!isThreaded) glfwPollEvents();
+		dispatchInput(false);
+		// animating, or holding on to input until inputDispatchMs has passed
+		if (!isThreaded && !disabled && (!lazyRepainting || pendingMotion.size() > 0 || scrollPending)) RunLoop.main.requestFrame();
+	}
+
+	/**
+	 * dispatches merged mouse motion and scroll. Unless 'force' is set this waits for inputDispatchMs to have passed since last time
+	 */
+	protected void dispatchInput(boolean force) {
+		if (pendingMotion.size() == 0 && !scrollPending) return;
+		long now = System.currentTimeMillis();
+		if (!force && inputDispatchMs > 0 && now - lastDispatchAt < inputDispatchMs) return;
+		lastDispatchAt = now;
+
+		dispatchMotion();
+		dispatchScroll();
+	}
+
+	private void dispatchMotion() {
+		if (pendingMotion.size() == 0) return;
+		List<Vec2> raw = new ArrayList<>(pendingMotion);
+		pendingMotion.clear();
+		Vec2 last = raw.get(raw.size() - 1);
+		fireMotion(last.x, last.y, raw);
+	}
+
+	private void dispatchScroll() {
+		if (!scrollPending) return;
+		scrollPending = false;
+		double sx = pendingScrollX, sy = pendingScrollY;
+		pendingScrollX = pendingScrollY = 0;
+		fireScroll(sx, sy);
+	}
+
+	private void fireMotion(double x, double y, List<Vec2> raw) {
+		MouseState next = mouseState.withPosition(x, y);
+		next.raw = raw;
+		fireMouseTransition(mouseState, next);
+		mouseState = next;
+	}
+
+	private void fireScroll(double scrollX, double scrollY) {
+		MouseState next = mouseState.withScroll(scrollX, scrollY);
+		next.keyboardState = keyboardState;
+		fireMouseTransitionNoMods(mouseState, next);
+		next = mouseState.withScroll(0, 0);
+		mouseState = next;
+		next.keyboardState = keyboardState;
+	}
+
 	long frame;
 	public boolean dontSwap = false;
 
@@ -375,6 +452,7 @@ public class Window implements ProvidesGraphicsContext {
 	 */
 	public void requestRepaint() {
 		needsRepainting = true;
+		RunLoop.main.requestFrame();
 	}
 
 	/**
@@ -631,11 +709,14 @@ public class Window implements ProvidesGraphicsContext {
 
 			@Override
 			public void windowRefresh(long window) {
+				RunLoop.main.requestFrame();
 			}
 
 			@Override
 			public void mouseButton(long window, int button, boolean pressed, int mods) {
 				if (window == Window.this.window) {
+					RunLoop.main.requestFrame();
+					dispatchInput(true);
 					MouseState next = mouseState.withButton(button, pressed, mods);
 					fireMouseTransition(mouseState, next);
 					mouseState = next;
@@ -644,34 +725,43 @@ public class Window implements ProvidesGraphicsContext {
 
 			@Override
 			public void windowFocus(long window, boolean focused) {
+				RunLoop.main.requestFrame();
 				keyboardState.keysDown.clear();
 			}
 
 			@Override
 			public void scroll(long window, double scrollX, double scrollY) {
 				if (window == Window.this.window) {
-					MouseState next = mouseState.withScroll(scrollX, scrollY);
-					next.keyboardState = keyboardState;
-					fireMouseTransitionNoMods(mouseState, next);
-					next = mouseState.withScroll(0, 0);
-					mouseState = next;
-					next.keyboardState = keyboardState;
+					RunLoop.main.requestFrame();
+					if (!coalesceInput || isThreaded) {
+						fireScroll(scrollX, scrollY);
+						return;
+					}
+					dispatchMotion();
+					pendingScrollX += scrollX;
+					pendingScrollY += scrollY;
+					scrollPending = true;
 				}
 			}
 
 			@Override
 			public void cursorPos(long window, double x, double y) {
 				if (window == Window.this.window) {
-					MouseState next = mouseState.withPosition(x, y);
-					fireMouseTransition(mouseState, next);
-					mouseState = next;
+					RunLoop.main.requestFrame();
+					if (!coalesceInput || isThreaded) {
+						fireMotion(x, y, null);
+						return;
+					}
+					dispatchScroll();
+					pendingMotion.add(new Vec2(x, y));
 				}
 			}
 
 			@Override
 			public void key(long window, int key, int scancode, int action, int mods) {
 				if (window == Window.this.window && RunLoop.tick > windowOpenedAt + 10) { // we ignore keyboard events from the first couple of updates; they can refer to key downs that we'll never recieve up fors
-
+					RunLoop.main.requestFrame();
+					dispatchInput(true);
 
 					KeyboardState next = keyboardState.withKey(key, action != GLFW_RELEASE);
 
@@ -689,6 +779,8 @@ public class Window implements ProvidesGraphicsContext {
 			@Override
 			public void character(long window, char character) {
 				if (window == Window.this.window) {
+					RunLoop.main.requestFrame();
+					dispatchInput(true);
 					KeyboardState next = keyboardState.withChar(character, true);
 
 					boolean shift = (Glfw.glfwGetKey(window, Glfw.GLFW_KEY_LEFT_SHIFT)) || (Glfw.glfwGetKey(window, Glfw.GLFW_KEY_RIGHT_SHIFT));
@@ -713,6 +805,8 @@ public class Window implements ProvidesGraphicsContext {
 			@Override
 			public void drop(long window, String[] files) {
 				if (window == Window.this.window) {
+					RunLoop.main.requestFrame();
+					dispatchInput(true);
 					fireDrop(new Drop(files, mouseState, keyboardState));
 				}
 			}
@@ -720,6 +814,7 @@ public class Window implements ProvidesGraphicsContext {
 			@Override
 			public void windowPos(long window, int x, int y) {
 				if (window == Window.this.window) {
+					RunLoop.main.requestFrame();
 					currentBounds.x = x;
 					currentBounds.y = y;
 				}
@@ -728,6 +823,7 @@ public class Window implements ProvidesGraphicsContext {
 			@Override
 			public void windowSize(long window, int width, int height) {
 				if (window == Window.this.window) {
+					RunLoop.main.requestFrame();
 					currentBounds.w = width;
 					currentBounds.h = height;
 				}
@@ -735,6 +831,7 @@ public class Window implements ProvidesGraphicsContext {
 
 			@Override
 			public void framebufferSize(long window, int width, int height) {
+				RunLoop.main.requestFrame();
 
 			}
 		};
@@ -773,6 +870,11 @@ public class Window implements ProvidesGraphicsContext {
 		// not final (but still immutable), not part of the transition framework, just along to reduce static access to Window
 		public KeyboardState keyboardState;
 
+		/**
+		 * when Window.coalesceInput has merged several motion events into this one, every position that was reported (oldest first, the last is this one). Null otherwise
+		 */
+		public List<Vec2> raw;
+
 		public MouseState() {
 			time = 0;
 			dx = 0;
@@ -1,25 +1,90 @@
 package field.message;
 
-import field.utility.Pair;
+import field.app.RunLoop;
+import field.graphics.Scene;
+import field.utility.Log;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * An asynchronous message bus. Anybody can accept(address, message); messages are delivered, in order, to every handler whose address matches.
+ * <p>
+ * Messages go onto a lock-free multiple-producer single-consumer queue which is drained either by a dispatch thread or (Delivery.mainThread) by the RunLoop's main loop once a tick. Handlers
+ * registered for an exact address (registerExact) are found with a single hash lookup; handlers registered with a Predicate are tested against every message, as before.
+ * <p>
+ * Where the handlers run depends on the Delivery: on the handler pool (each handler sees its messages in order, but different handlers run concurrently and the dispatcher never waits for any of
+ * them), on the dispatch thread itself, or on the main thread.
+ * <p>
+ * The queue can be bounded, in which case the Overflow policy decides what happens to messages that arrive when it's full. getStats() reports depth, drops and latency.
+ */
 public class MessageQueue<t_message, t_address> {
 
-	ExecutorService handlerDispatch;
-	protected BlockingQueue<Pair<t_address, t_message>> queue;
-	Consumer<Boolean> queueService;
+	public enum Delivery {
+		/**
+		 * handlers run on the handler pool, each handler's messages in order
+		 */
+		pool,
+		/**
+		 * handlers run on the dispatch thread, one after the other
+		 */
+		dispatcher,
+		/**
+		 * the queue is drained, and handlers run, on the main thread at pass 0 of the main loop
+		 */
+		mainThread
+	}
+
+	public enum Overflow {
+		/**
+		 * producers wait (for up to blockMs) for there to be room, and then drop the message. Producers on the main thread never wait when the main thread is the one draining the queue
+		 */
+		block,
+		/**
+		 * the message that has just arrived is dropped
+		 */
+		dropNewest,
+		/**
+		 * the oldest message in the queue is dropped to make room
+		 */
+		dropOldest
+	}
+
+	protected final ExecutorService handlerDispatch;
+	protected final Delivery delivery;
+	protected final Envelopes<t_address, t_message> queue = new Envelopes<>();
+	protected final Consumer<Boolean> queueService;
+
+	protected volatile int capacity = Integer.MAX_VALUE;
+	protected volatile Overflow overflow = Overflow.block;
+	public long blockMs = 100;
+
+	protected final Stats stats = new Stats();
+
+	// producers parked in waitForRoom, woken by the consumer as it makes room
+	protected final Queue<Thread> waiting = new ConcurrentLinkedQueue<>();
 
 	public class Handler {
 		final Consumer<t_message> handledBy;
 		final Predicate<t_address> matchedBy;
 		final Object tag;
 
+		// for Delivery.pool, this handler's messages that haven't been handled yet and whether it's currently scheduled on the pool
+		final Queue<t_message> inbox = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean scheduled = new AtomicBoolean(false);
+
 		protected Handler(Predicate<t_address> address, Consumer<t_message> destination, Object tag) {
 			this.matchedBy = address;
 			this.handledBy = destination;
@@ -27,9 +92,13 @@ public class MessageQueue<t_message, t_address> {
 		}
 
 		protected Handler(Predicate<t_address> address, Consumer<t_message> destination) {
-			this.matchedBy = address;
+			this(address, destination, null);
+		}
+
+		protected Handler(t_address exactly, Consumer<t_message> destination, Object tag) {
+			this.matchedBy = x -> exactly.equals(x);
 			this.handledBy = destination;
-			this.tag = null;
+			this.tag = tag;
 		}
 
 		public Callable<Void> call(t_message arguments) {
@@ -38,46 +107,202 @@ public class MessageQueue<t_message, t_address> {
 				return null;
 			};
 		}
+
+		void handle(t_message m) {
+			try {
+				handledBy.accept(m);
+			} catch (Throwable t) {
+				Log.log("message.error", () -> " exception thrown by message handler " + handledBy + " " + t);
+				t.printStackTrace();
+			}
+		}
+
+		void post(t_message m) {
+			inbox.add(m);
+			if (scheduled.compareAndSet(false, true)) handlerDispatch.execute(this::drain);
+		}
+
+		private void drain() {
+			while (true) {
+				t_message m;
+				while ((m = inbox.poll()) != null) handle(m);
+				scheduled.set(false);
+				// something might have arrived after we last looked but before we cleared 'scheduled'
+				if (inbox.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+			}
+		}
 	}
 
 	CopyOnWriteArrayList<Handler> handlers = new CopyOnWriteArrayList<>();
+	Map<t_address, CopyOnWriteArrayList<Handler>> exact = new ConcurrentHashMap<>();
 
 	public MessageQueue() {
-		this(() -> Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 2), LinkedBlockingQueue::new);
+		this(Delivery.pool);
 	}
 
-	public MessageQueue(Supplier<? extends ExecutorService> handlerDispatch, Supplier<? extends BlockingQueue<Pair<t_address, t_message>>> queue) {
-		this.handlerDispatch = handlerDispatch.get();
-		this.queue = queue.get();
-		this.queueService = makeQueueServiceThread(this::dispatch);
+	public MessageQueue(Delivery delivery) {
+		this(delivery, () -> Executors.newFixedThreadPool(Runtime.getRuntime()
+									  .availableProcessors() + 2));
 	}
 
+	public MessageQueue(Delivery delivery, Supplier<? extends ExecutorService> handlerDispatch) {
+		this.delivery = delivery;
+		this.handlerDispatch = delivery == Delivery.pool ? handlerDispatch.get() : null;
+		this.queueService = makeQueueServiceThread(this::dispatch);
+	}
 
+	/**
+	 * bounds the number of messages waiting in the queue
+	 */
+	public MessageQueue<t_message, t_address> setCapacity(int capacity, Overflow overflow) {
+		this.capacity = Math.max(1, capacity);
+		this.overflow = overflow;
+		return this;
+	}
 
+	/**
+	 * starts whatever drains the queue, returns something to stop it
+	 */
 	protected Consumer<Boolean> makeQueueServiceThread(BiConsumer<t_address, t_message> to) {
 		CompletableFuture<Boolean> stop = new CompletableFuture<Boolean>();
-		new Thread(() -> {
+
+		if (delivery == Delivery.mainThread) {
+			// Scenes aren't thread safe, so rather than detaching this from whatever thread calls stop() it detaches itself at the next tick
+			RunLoop.main.getLoop()
+				    .attach(new Scene.Perform() {
+					    @Override
+					    public boolean perform(int pass) {
+						    if (stop.isDone()) return false;
+						    drain(to, Integer.MAX_VALUE);
+						    return true;
+					    }
+				    });
+			return x -> {
+				stop.complete(x);
+				RunLoop.main.requestFrame();
+			};
+		}
+
+		Thread t = new Thread(() -> {
 			while (!stop.isDone()) {
-				try {
-					Pair<t_address, t_message> m = queue.poll(1, TimeUnit.SECONDS);
-					if (m != null && !stop.isDone()) to.accept(m.first, m.second);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+				if (drain(to, 1024) > 0) continue;
+				queue.consumer = Thread.currentThread();
+				if (queue.isEmpty() && !stop.isDone()) LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+				queue.consumer = null;
 			}
 		});
-		return x -> stop.complete(x);
+		t.setName("message queue dispatch");
+		t.setDaemon(true);
+		t.start();
+
+		return x -> {
+			stop.complete(x);
+			LockSupport.unpark(t);
+		};
+	}
+
+	/**
+	 * delivers up to 'max' messages, returns how many were delivered
+	 */
+	protected int drain(BiConsumer<t_address, t_message> to, int max) {
+		int n = 0;
+		while (n < max) {
+			// Overflow.dropOldest is done here, only the consumer can take from the queue
+			while (overflow == Overflow.dropOldest && stats.depth.get() > capacity) {
+				Envelope<t_address, t_message> e = queue.poll();
+				if (e == null) break;
+				e.release();
+				stats.depth.decrementAndGet();
+				stats.dropped.incrementAndGet();
+			}
+
+			Envelope<t_address, t_message> e = queue.poll();
+			if (e == null) break;
+			t_address address = e.address;
+			t_message message = e.message;
+			e.release();
+			stats.depth.decrementAndGet();
+			stats.latency(System.nanoTime() - e.at);
+			if (!waiting.isEmpty()) for (Thread w : waiting)
+				LockSupport.unpark(w);
+			try {
+				to.accept(address, message);
+			} catch (Throwable t) {
+				// a bad predicate (or anything else) mustn't take the only consumer down with it
+				Log.log("message.error", () -> " exception thrown while dispatching message to " + address + " " + t);
+				t.printStackTrace();
+			}
+			n++;
+		}
+		return n;
 	}
 
 	protected void dispatch(t_address a, t_message m) {
+		stats.delivered.incrementAndGet();
+		List<Handler> e = exact.get(a);
+		if (e != null) for (Handler h : e)
+			deliver(h, m);
+		for (Handler h : handlers)
+			if (matches(h, a)) deliver(h, m);
+	}
+
+	private boolean matches(Handler h, t_address a) {
 		try {
-			handlerDispatch.invokeAll(handlers.stream().filter(x -> x.matchedBy.test(a)).map(x -> x.call(m)).collect(Collectors.toList()));
-		} catch (InterruptedException e) {
+			return h.matchedBy.test(a);
+		} catch (Throwable t) {
+			Log.log("message.error", () -> " exception thrown by message address predicate " + h.matchedBy + " " + t);
+			t.printStackTrace();
+			return false;
 		}
 	}
 
+	protected void deliver(Handler h, t_message m) {
+		if (delivery == Delivery.pool) h.post(m);
+		else h.handle(m);
+	}
+
 	public void accept(t_address address, t_message message) {
-		queue.add(new Pair<>(address, message));
+		int depth = stats.depth.incrementAndGet();
+		if (depth > capacity) {
+			switch (overflow) {
+				case dropNewest:
+					stats.depth.decrementAndGet();
+					stats.dropped.incrementAndGet();
+					return;
+				case block:
+					if (!waitForRoom()) {
+						stats.depth.decrementAndGet();
+						stats.dropped.incrementAndGet();
+						return;
+					}
+					break;
+				case dropOldest:
+					break;
+			}
+		}
+		stats.accepted.incrementAndGet();
+		stats.maxDepth.accumulateAndGet(depth, Math::max);
+		queue.offer(new Envelope<>(address, message, System.nanoTime()));
+		// an idle main loop would otherwise only get to this when it next wakes up
+		if (delivery == Delivery.mainThread) RunLoop.main.requestFrame();
+	}
+
+	private boolean waitForRoom() {
+		// if we are the thread that drains the queue then there's no point in waiting
+		if (delivery == Delivery.mainThread && RunLoop.main.isMainThread()) return false;
+		long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockMs);
+		Thread me = Thread.currentThread();
+		waiting.add(me);
+		try {
+			while (stats.depth.get() > capacity) {
+				long remaining = until - System.nanoTime();
+				if (remaining <= 0) return false;
+				LockSupport.parkNanos(this, remaining);
+			}
+			return true;
+		} finally {
+			waiting.remove(me);
+		}
 	}
 
 	public void stop() {
@@ -96,15 +321,124 @@ public class MessageQueue<t_message, t_address> {
 		handlers.add(new Handler(address, destination));
 	}
 
+	/**
+	 * registers a handler for exactly this address, which is much cheaper to dispatch to than a Predicate
+	 */
+	public void registerExact(t_address address, Consumer<t_message> destination, Object tag) {
+		if (tag != null) deregister(tag);
+		exact.computeIfAbsent(address, k -> new CopyOnWriteArrayList<>())
+		     .add(new Handler(address, destination, tag));
+	}
+
+	public void registerExact(t_address address, Consumer<t_message> destination) {
+		registerExact(address, destination, null);
+	}
+
 	public void deregister(Predicate<t_address> a) {
 		handlers.removeAll(handlers.stream().filter(x -> x.matchedBy.equals(a)).collect(Collectors.toList()));
 	}
 
 	public void deregister(Consumer<t_message> a) {
 		handlers.removeAll(handlers.stream().filter(x -> x.handledBy.equals(a)).collect(Collectors.toList()));
+		exact.values()
+		     .forEach(l -> l.removeIf(x -> x.handledBy.equals(a)));
 	}
 
 	public void deregister(Object tag) {
 		handlers.removeAll(handlers.stream().filter(x -> tag.equals(x.tag)).collect(Collectors.toList()));
+		exact.values()
+		     .forEach(l -> l.removeIf(x -> tag.equals(x.tag)));
+	}
+
+	/**
+	 * deregisters everything registered for exactly this address
+	 */
+	public void deregisterExact(t_address address) {
+		exact.remove(address);
+	}
+
+	public Stats getStats() {
+		return stats;
+	}
+
+	static public class Stats {
+		public final AtomicInteger depth = new AtomicInteger();
+		public final AtomicInteger maxDepth = new AtomicInteger();
+		public final AtomicLong accepted = new AtomicLong();
+		public final AtomicLong delivered = new AtomicLong();
+		public final AtomicLong dropped = new AtomicLong();
+
+		// only written by the consumer
+		public volatile long maxLatencyNanos;
+		public volatile double averageLatencyNanos;
+
+		void latency(long ns) {
+			maxLatencyNanos = Math.max(maxLatencyNanos, ns);
+			averageLatencyNanos = averageLatencyNanos == 0 ? ns : averageLatencyNanos * 0.95 + ns * 0.05;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("depth %d (max %d), %d accepted, %d delivered, %d dropped, latency %.3fms average %.3fms max", depth.get(), maxDepth.get(), accepted.get(), delivered.get(),
+					     dropped.get(), averageLatencyNanos / 1e6, maxLatencyNanos / 1e6);
+		}
+	}
+
+	static protected class Envelope<t_address, t_message> {
+		t_address address;
+		t_message message;
+		final long at;
+		volatile Envelope<t_address, t_message> next;
+
+		Envelope(t_address address, t_message message, long at) {
+			this.address = address;
+			this.message = message;
+			this.at = at;
+		}
+
+		/**
+		 * the envelope that was polled last stays in the queue (as the stub that the next one is linked onto), this lets go of what it was carrying
+		 */
+		void release() {
+			address = null;
+			message = null;
+		}
+	}
+
+	/**
+	 * Vyukov's intrusive MPSC queue: producers swing 'head' with getAndSet and then link the previous head to themselves, the single consumer follows 'next' from 'tail'. Producers never
+	 * wait for each other, or for the consumer; the consumer gets woken if it's parked.
+	 */
+	static protected class Envelopes<t_address, t_message> {
+		private final AtomicReference<Envelope<t_address, t_message>> head;
+		private Envelope<t_address, t_message> tail;
+		volatile Thread consumer;
+
+		Envelopes() {
+			Envelope<t_address, t_message> stub = new Envelope<>(null, null, 0);
+			head = new AtomicReference<>(stub);
+			tail = stub;
+		}
+
+		void offer(Envelope<t_address, t_message> e) {
+			Envelope<t_address, t_message> prev = head.getAndSet(e);
+			prev.next = e;
+			Thread c = consumer;
+			if (c != null) LockSupport.unpark(c);
+		}
+
+		/**
+		 * consumer only. The envelope returned becomes the queue's stub, release() it once its contents have been taken
+		 */
+		Envelope<t_address, t_message> poll() {
+			Envelope<t_address, t_message> next = tail.next;
+			if (next == null) return null;
+			tail = next;
+			return next;
+		}
+
+		boolean isEmpty() {
+			return tail.next == null;
+		}
 	}
 }
@@ -0,0 +1,349 @@
+package field.utility;
+
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A small, copy-on-write ConcurrentMap used as Dict's storage. Most Dicts (the properties of a Box, the attributes of an FLine.Node) hold somewhere between nothing and a few dozen entries,
+ * where a ConcurrentHashMap costs far more memory than the entries themselves.
+ * <p>
+ * Everything is kept in a single array of interleaved keys and values. Up to 'linearLimit' entries the array is exactly twice the size long and searched linearly; past that it becomes an open
+ * addressed table (linear probing, never more than three quarters full) with the entry count stashed in its last element, which is how the two layouts tell themselves apart (even vs odd
+ * length). Keys are compared by identity first, so canonical Dict.Props are found without calling equals.
+ * <p>
+ * Reads never lock, they just look at whatever array is current. Writes are synchronized. Giving an existing key a new value writes it into the current array in place (a volatile write, as
+ * ConcurrentHashMap does), so the most common put costs the same at 40 entries as at 4; adding or removing a key copies the array and publishes the copy. Iteration is over the keys as they
+ * were when iteration started, with values that are at least as new. Like ConcurrentHashMap, neither keys nor values can be null.
+ * <p>
+ * tests.CompactMapBenchmark compares footprint and get / put times with the ConcurrentHashMap that Dict used to use.
+ */
+public class CompactMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static public int linearLimit = 8;
+
+	static private final Object[] EMPTY = {};
+
+	static private final Unsafe U;
+	static private final long BASE;
+	static private final int SHIFT;
+
+	static {
+		try {
+			Field f = Unsafe.class.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			U = (Unsafe) f.get(null);
+			BASE = U.arrayBaseOffset(Object[].class);
+			SHIFT = 31 - Integer.numberOfLeadingZeros(U.arrayIndexScale(Object[].class));
+		} catch (Exception e) {
+			throw new Error(e);
+		}
+	}
+
+	static private Object at(Object[] t, int i) {
+		return U.getObjectVolatile(t, ((long) i << SHIFT) + BASE);
+	}
+
+	static private void set(Object[] t, int i, Object v) {
+		U.putObjectVolatile(t, ((long) i << SHIFT) + BASE, v);
+	}
+
+	private transient volatile Object[] table = EMPTY;
+
+	@Override
+	public int size() {
+		return size(table);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size(table) == 0;
+	}
+
+	@Override
+	public V get(Object key) {
+		Object[] t = table;
+		int i = indexOf(t, key);
+		return i < 0 ? null : (V) at(t, i + 1);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(table, key) >= 0;
+	}
+
+	@Override
+	public synchronized V put(K key, V value) {
+		Objects.requireNonNull(key);
+		Objects.requireNonNull(value);
+		Object[] t = table;
+		int i = indexOf(t, key);
+		if (i >= 0) {
+			Object was = t[i + 1];
+			set(t, i + 1, value);
+			return (V) was;
+		}
+		table = with(t, key, value);
+		return null;
+	}
+
+	@Override
+	public synchronized V putIfAbsent(K key, V value) {
+		V was = get(key);
+		if (was == null) put(key, value);
+		return was;
+	}
+
+	@Override
+	public synchronized V remove(Object key) {
+		Object[] t = table;
+		int i = indexOf(t, key);
+		if (i < 0) return null;
+		table = without(t, i);
+		return (V) t[i + 1];
+	}
+
+	@Override
+	public synchronized boolean remove(Object key, Object value) {
+		Object[] t = table;
+		int i = indexOf(t, key);
+		if (i < 0 || !t[i + 1].equals(value)) return false;
+		table = without(t, i);
+		return true;
+	}
+
+	@Override
+	public synchronized boolean replace(K key, V oldValue, V newValue) {
+		Object was = get(key);
+		if (was == null || !was.equals(oldValue)) return false;
+		put(key, newValue);
+		return true;
+	}
+
+	@Override
+	public synchronized V replace(K key, V value) {
+		return containsKey(key) ? put(key, value) : null;
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		V v = get(key);
+		if (v != null) return v;
+		synchronized (this) {
+			v = get(key);
+			if (v != null) return v;
+			v = mappingFunction.apply(key);
+			if (v != null) put(key, v);
+			return v;
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		table = EMPTY;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return new Iterator<Entry<K, V>>() {
+					final Object[] t = table;
+					final int end = t.length & ~1;
+					int at = advance(0);
+					Object last = null;
+
+					int advance(int from) {
+						while (from < end && t[from] == null) from += 2;
+						return from;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return at < end;
+					}
+
+					@Override
+					public Entry<K, V> next() {
+						if (at >= end) throw new NoSuchElementException();
+						K k = (K) t[at];
+						V v = (V) CompactMap.at(t, at + 1);
+						at = advance(at + 2);
+						last = k;
+						return new SimpleEntry<K, V>(k, v) {
+							@Override
+							public V setValue(V value) {
+								super.setValue(value);
+								return put(k, value);
+							}
+						};
+					}
+
+					@Override
+					public void remove() {
+						if (last == null) throw new IllegalStateException();
+						CompactMap.this.remove(last);
+						last = null;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return CompactMap.this.size();
+			}
+		};
+	}
+
+	static private int size(Object[] t) {
+		return (t.length & 1) == 0 ? t.length / 2 : (Integer) t[t.length - 1];
+	}
+
+	static private int spread(Object key) {
+		// Prop names like "a1", "a2" ... hash to runs of neighbouring slots, which linear probing handles badly
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * returns the index of the key in 't' or -1
+	 */
+	static private int indexOf(Object[] t, Object key) {
+		if (key == null) return -1;
+		if ((t.length & 1) == 0) {
+			for (int i = 0; i < t.length; i += 2)
+				if (t[i] == key) return i;
+			for (int i = 0; i < t.length; i += 2)
+				if (t[i].equals(key)) return i;
+			return -1;
+		}
+
+		int mask = t.length / 2 - 1;
+		int start = spread(key) & mask;
+		// identity first here too, so that we don't call equals on the keys we probe past
+		for (int i = start; ; i = (i + 1) & mask) {
+			Object k = t[2 * i];
+			if (k == null) break;
+			if (k == key) return 2 * i;
+		}
+		for (int i = start; ; i = (i + 1) & mask) {
+			Object k = t[2 * i];
+			if (k == null) return -1;
+			if (k.equals(key)) return 2 * i;
+		}
+	}
+
+	/**
+	 * a copy of 't' with a new key added
+	 */
+	static private Object[] with(Object[] t, Object key, Object value) {
+		int n = size(t) + 1;
+		if ((t.length & 1) == 0 && n <= linearLimit) {
+			Object[] r = Arrays.copyOf(t, t.length + 2);
+			r[t.length] = key;
+			r[t.length + 1] = value;
+			return r;
+		}
+		if ((t.length & 1) == 1 && n * 4 <= (t.length / 2) * 3) {
+			Object[] r = t.clone();
+			insert(r, key, value);
+			r[r.length - 1] = n;
+			return r;
+		}
+		Object[] r = hashed(t, n, -1);
+		insert(r, key, value);
+		r[r.length - 1] = n;
+		return r;
+	}
+
+	/**
+	 * a copy of 't' without the key at index 'i'
+	 */
+	static private Object[] without(Object[] t, int i) {
+		int n = size(t) - 1;
+		if (n == 0) return EMPTY;
+		if (n <= linearLimit / 2 || (t.length & 1) == 0) {
+			Object[] r = new Object[2 * n];
+			int o = 0;
+			for (int j = 0; j < (t.length & ~1); j += 2) {
+				if (j == i || t[j] == null) continue;
+				r[o++] = t[j];
+				r[o++] = t[j + 1];
+			}
+			return r;
+		}
+		// only rehash if the table has become mostly empty, otherwise close up the gap in a copy
+		Object[] r;
+		if (n * 4 < t.length / 2) r = hashed(t, n, i);
+		else close(r = t.clone(), i / 2);
+		r[r.length - 1] = n;
+		return r;
+	}
+
+	/**
+	 * empties 'slot' of an open addressed table and moves along any keys that had probed past it (so that lookups, which stop at the first empty slot, still find them)
+	 */
+	static private void close(Object[] r, int slot) {
+		int mask = r.length / 2 - 1;
+		int hole = slot;
+		r[2 * hole] = r[2 * hole + 1] = null;
+		for (int j = (hole + 1) & mask; r[2 * j] != null; j = (j + 1) & mask) {
+			int home = spread(r[2 * j]) & mask;
+			// can this key move back to the hole without ending up before its home slot?
+			boolean between = hole <= j ? (home > hole && home <= j) : (home > hole || home <= j);
+			if (between) continue;
+			r[2 * hole] = r[2 * j];
+			r[2 * hole + 1] = r[2 * j + 1];
+			r[2 * j] = r[2 * j + 1] = null;
+			hole = j;
+		}
+	}
+
+	/**
+	 * a new open addressed table with room for 'n' entries containing everything in 't' except the key at index 'skip'
+	 */
+	static private Object[] hashed(Object[] t, int n, int skip) {
+		int capacity = 16;
+		while (capacity * 3 < n * 4) capacity *= 2;
+		Object[] r = new Object[2 * capacity + 1];
+		for (int j = 0; j < (t.length & ~1); j += 2)
+			if (j != skip && t[j] != null) insert(r, t[j], t[j + 1]);
+		return r;
+	}
+
+	static private void insert(Object[] r, Object key, Object value) {
+		int mask = r.length / 2 - 1;
+		int i = spread(key) & mask;
+		while (r[2 * i] != null) i = (i + 1) & mask;
+		r[2 * i] = key;
+		r[2 * i + 1] = value;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		Object[] t = table;
+		out.writeInt(size(t));
+		for (int i = 0; i < (t.length & ~1); i += 2) {
+			if (t[i] == null) continue;
+			out.writeObject(t[i]);
+			out.writeObject(at(t, i + 1));
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		table = EMPTY;
+		int n = in.readInt();
+		for (int i = 0; i < n; i++)
+			put((K) in.readObject(), (V) in.readObject());
+	}
+}
@@ -14,6 +14,7 @@ import fieldbox.execution.InverseDebugMapping;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -222,12 +223,38 @@ public class Conversions {
 		inputs.put(conversion.input, conversion);
 		outputs.put(conversion.output, conversion);
 
+		// any path we've found (or failed to find) might be different now. The maps are replaced rather than cleared, so that a search that started before this puts its (possibly
+		// stale) answer into a map that nobody reads any more
+		paths = new ConcurrentHashMap<>();
+		classPaths = new ConcurrentHashMap<>();
+
 		Log.log("conversions.general", ()->" REGISTERED conversion " + length + " " + conversion.input + " -> " + conversion.output);
 
 	}
 
+	/**
+	 * Resolved conversion paths, keyed by (from, to), and by (the class of the value, to) for getConversion(Object, ...). Failures are cached too (as an empty Optional). Both are thrown away
+	 * whenever provideConversion is called.
+	 */
+	static private volatile Map<Pair<List<Class>, List<Class>>, Optional<List<Pair<List<Class>, Conversion>>>> paths = new ConcurrentHashMap<>();
+	static private volatile Map<Pair<Class, List<Class>>, Optional<List<Pair<List<Class>, Conversion>>>> classPaths = new ConcurrentHashMap<>();
+
 	static public List<Pair<List<Class>, Conversion>> getConversion(Object from, List<Class> to) {
-		Set<List<Class>> alt = genericAlternativesFor(from.getClass());
+		return _getConversion(from.getClass(), to);
+	}
+
+	static protected List<Pair<List<Class>, Conversion>> _getConversion(Class from, List<Class> to) {
+		Map<Pair<Class, List<Class>>, Optional<List<Pair<List<Class>, Conversion>>>> m = classPaths;
+		Optional<List<Pair<List<Class>, Conversion>>> r = m.get(new Pair<>(from, to));
+		if (r != null) return r.orElse(null);
+
+		r = Optional.ofNullable(searchAlternatives(from, to));
+		m.putIfAbsent(new Pair<>(from, new ArrayList<>(to)), r);
+		return r.orElse(null);
+	}
+
+	static protected List<Pair<List<Class>, Conversion>> searchAlternatives(Class from, List<Class> to) {
+		Set<List<Class>> alt = genericAlternativesFor(from);
 
 		for (List<Class> c : alt) {
 			if (c.get(0)
@@ -250,6 +277,17 @@ public class Conversions {
 	}
 
 	static public List<Pair<List<Class>, Conversion>> getConversion(List<Class> from, List<Class> to) {
+		Map<Pair<List<Class>, List<Class>>, Optional<List<Pair<List<Class>, Conversion>>>> m = paths;
+		Optional<List<Pair<List<Class>, Conversion>>> r = m.get(new Pair<>(from, to));
+		if (r != null) return r.orElse(null);
+
+		List<Pair<List<Class>, Conversion>> found = searchConversion(from, to);
+		r = Optional.ofNullable(found == null ? null : Collections.unmodifiableList(found));
+		m.putIfAbsent(new Pair<>(new ArrayList<>(from), new ArrayList<>(to)), r);
+		return r.orElse(null);
+	}
+
+	static protected List<Pair<List<Class>, Conversion>> searchConversion(List<Class> from, List<Class> to) {
 		Dijkstra<List<Class>, Conversion> d = new Dijkstra<>(x -> x.length, x -> x.output, x -> inputs.get(x));
 
 		List<Class> nto = normalize(to, outputs);
@@ -375,45 +413,75 @@ public class Conversions {
 	}
 
 
-	static protected Object _convert(Object value, List<Class> fit, Consumer<String> extraInfo) {
+	/**
+	 * what _convert does with a value of a particular class. This only depends on the class of the value and on 'fit', and working it out takes a handful of Class.isAssignableFrom calls (native
+	 * calls, on Java 8), so it's remembered per class
+	 */
+	protected enum Step {
+		asIs, promoteToList, promoteToMap, promoteToCollection, proxy, unwrapMirror, adaptFunction
+	}
 
-		if (fit == null) return value;
-		if (fit.get(0)
-		       .isInstance(value)) return value;
+	static private final ClassValue<Map<List<Class>, Step>> steps = new ClassValue<Map<List<Class>, Step>>() {
+		@Override
+		protected Map<List<Class>, Step> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	static protected Step step(Object value, List<Class> fit) {
+		if (value == null) return decide(null, fit);
+
+		Map<List<Class>, Step> m = steps.get(value.getClass());
+		Step s = m.get(fit);
+		if (s == null) m.putIfAbsent(new ArrayList<>(fit), s = decide(value.getClass(), fit));
+		return s;
+	}
+
+	static protected Step decide(Class c, List<Class> fit) {
+		if (c != null && fit.get(0)
+				    .isAssignableFrom(c)) return Step.asIs;
 
 		// promote non-arrays to arrays
 		if (List.class.isAssignableFrom(fit.get(0))) {
-			if (!(value instanceof List)) {
-				return Collections.singletonList(_convert(value, fit.subList(1, fit.size()), extraInfo));
-			} else {
-				return value;
-			}
+			return c == null || !List.class.isAssignableFrom(c) ? Step.promoteToList : Step.asIs;
 		} else if (Map.class.isAssignableFrom(fit.get(0)) && String.class.isAssignableFrom(fit.get(1))) {
 			// promote non-Map<String, V> to Map<String, V>
-			if (!(value instanceof Map)) {
-				return Collections.singletonMap("" + value + ":" + System.identityHashCode(value), _convert(value, fit.subList(2, fit.size()), extraInfo));
-			} else {
-				return value;
-			}
-
+			return c == null || !Map.class.isAssignableFrom(c) ? Step.promoteToMap : Step.asIs;
 		} else if (Collection.class.isAssignableFrom(fit.get(0))) {
-			if (!(value instanceof Collection)) {
-				return Collections.singletonList(convert(value, fit.subList(1, fit.size())));
-			} else {
-				return value;
-			}
-
+			return c == null || !Collection.class.isAssignableFrom(c) ? Step.promoteToCollection : Step.asIs;
 		}
 
+		if (c == null) return Step.asIs;
 		if (fit.get(0)
-		       .isInterface() && value instanceof InvocationHandler) {
-			return Proxy.newProxyInstance(Thread.currentThread()
-							    .getContextClassLoader(), new Class[]{fit.get(0)}, (InvocationHandler) value);
-		}
+		       .isInterface() && InvocationHandler.class.isAssignableFrom(c)) return Step.proxy;
+		if (ScriptObjectMirror.class.isAssignableFrom(c)) return Step.unwrapMirror;
+		if (ScriptFunction.class.isAssignableFrom(c)) return Step.adaptFunction;
+		return Step.asIs;
+	}
 
+	static protected Object _convert(Object value, List<Class> fit, Consumer<String> extraInfo) {
 
-		if (value instanceof ScriptObjectMirror) return convert(ScriptUtils.unwrap(value), fit);
+		if (fit == null) return value;
+		if (fit.get(0)
+		       .isInstance(value)) return value;
 
+		switch (step(value, fit)) {
+			case promoteToList:
+				return Collections.singletonList(_convert(value, fit.subList(1, fit.size()), extraInfo));
+			case promoteToMap:
+				return Collections.singletonMap("" + value + ":" + System.identityHashCode(value), _convert(value, fit.subList(2, fit.size()), extraInfo));
+			case promoteToCollection:
+				return Collections.singletonList(convert(value, fit.subList(1, fit.size())));
+			case proxy:
+				return Proxy.newProxyInstance(Thread.currentThread()
+								    .getContextClassLoader(), new Class[]{fit.get(0)}, (InvocationHandler) value);
+			case unwrapMirror:
+				return convert(ScriptUtils.unwrap(value), fit);
+			case adaptFunction:
+				break;
+			default:
+				return value;
+		}
 
 		if (value instanceof ScriptFunction) {
 			StaticClass adapterClassFor = JavaAdapterFactory.getAdapterClassFor(new Class[]{fit.get(0)}, (ScriptObject) value, MethodHandles.lookup());
@@ -10,6 +10,8 @@ import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -23,19 +25,21 @@ public class Dict implements Serializable, Linker.AsMap {
 	private static final long serialVersionUID = 4506062700963421662L;
 
 	static public class Canonical {
-		static protected Map<String, Prop> cannon = Collections.synchronizedMap(new HashMap<>());
+		static protected Map<String, Prop> cannon = new ConcurrentHashMap<>();
 
 		static public <T> Prop<T> cannonicalize(Prop<T> p) {
 			Prop<T> prop = cannon.computeIfAbsent(p.name, x -> p);
 			if (p.isCannon() && !prop.isCannon()) {
 				cannon.put(p.name, p);
 				prop = p;
+				Linker.invalidate(p.name);
 			} else if (p.isCannon() && prop.isCannon() && p != prop) {
 				// should be an Error?
 				System.err.println(" WARNING: two competing canonical definitions of a Prop <" + p + ">");
 				if (p.typeInformation != null && prop.typeInformation == null) {
 					cannon.put(p.name, p);
 					prop = p;
+					Linker.invalidate(p.name);
 				} else if (p.typeInformation == null && prop.typeInformation != null) {
 
 				} else if (p.typeInformation != null && prop.typeInformation != null) {
@@ -57,6 +61,24 @@ public class Dict implements Serializable, Linker.AsMap {
 			return cannon.get(p);
 		}
 
+		/**
+		 * returns the canonical Prop called 'name', making one if there isn't one yet. Unlike new Prop(name).toCannon() this doesn't allocate anything when the Prop already exists, which is
+		 * almost always the case on the property access paths used by scripting languages
+		 */
+		static public <T> Prop<T> intern(String name) {
+			Prop<T> p = cannon.get(name);
+			if (p != null) return p;
+			return cannonicalize(new Prop<>(name));
+		}
+
+		/**
+		 * returns the canonical Prop called 'name' if there is one, otherwise a new, non-canonical Prop suitable for use as a key
+		 */
+		static public <T> Prop<T> key(String name) {
+			Prop<T> p = cannon.get(name);
+			return p != null ? p : new Prop<>(name);
+		}
+
 	}
 
 	static public Dict.Prop<String> domain = new Dict.Prop<>("domain").toCannon();
@@ -71,6 +93,8 @@ public class Dict implements Serializable, Linker.AsMap {
 		private List<Class> typeInformation;
 		private Class definedInClass;
 		private String documentation;
+		// the class that constructed us, only used to make up some documentation if we're never given any
+		private transient Class constructedIn;
 
 		public Supplier<T> autoConstructor;
 
@@ -78,12 +102,16 @@ public class Dict implements Serializable, Linker.AsMap {
 
 		private boolean cannon = false;
 
+		// incremented every time a Prop with this name is added to, or removed from, any Dict. Caches of inherited lookups (Box.first etc.) are keyed off of this
+		transient volatile long presence = 0;
+
+		// Dicts are touched off of the main thread (by IO's loaders, for example), so 'presence' is always incremented atomically
+		static private final AtomicLongFieldUpdater<Prop> PRESENCE = AtomicLongFieldUpdater.newUpdater(Prop.class, "presence");
+
 		public Prop(String name) {
 			this.name = name;
-			StackTraceElement[] s = new Exception().getStackTrace();
-			String[] pieces = s[1].getClassName()
-					     .split("\\.");
-			documentation = "undocumented (defined inside <b>"+pieces[pieces.length-1]+"</b>)";
+			// much cheaper than new Exception().getStackTrace(), the documentation string itself is built in getDocumentation()
+			constructedIn = sun.reflect.Reflection.getCallerClass(2);
 		}
 
 		public boolean containsSuffix(String string) {
@@ -133,6 +161,13 @@ public class Dict implements Serializable, Linker.AsMap {
 			return cannon;
 		}
 
+		/**
+		 * returns a number that changes whenever this property is added to, or removed from, any Dict anywhere. Note that this doesn't change when a property that's already present is merely overwritten.
+		 */
+		public long getPresenceVersion() {
+			return presence;
+		}
+
 		public <T> Prop<T> toCannon() {
 			return (Prop<T>) Canonical.cannonicalize(this);
 		}
@@ -158,6 +193,11 @@ public class Dict implements Serializable, Linker.AsMap {
 		}
 
 		public String getDocumentation() {
+			if (documentation == null && constructedIn != null) {
+				String[] pieces = constructedIn.getName()
+							       .split("\\.");
+				documentation = "undocumented (defined inside <b>" + pieces[pieces.length - 1] + "</b>)";
+			}
 			return documentation;
 		}
 
@@ -326,14 +366,190 @@ public class Dict implements Serializable, Linker.AsMap {
 		}
 	}
 
-	Map<Prop, Object> dictionary = new MapMaker().concurrencyLevel(2)
-						     .makeMap();
+	/**
+	 * Dicts are stored in CompactMaps, which take a fraction of the memory of a ConcurrentHashMap for the handful of entries that most Dicts hold. Start with -Ddict.concurrentHashMap to go
+	 * back to (Guava's) ConcurrentHashMap
+	 */
+	static public boolean compactStorage = System.getProperty("dict.concurrentHashMap") == null;
+
+	Map<Prop, Object> dictionary = compactStorage ? new CompactMap<>() : new MapMaker().concurrencyLevel(2)
+												 .makeMap();
 
 	Function<Prop, Object> failure = null;
 
+	// the thing that this is the property Dict of (for example a Box), passed on to ChangeListeners
+	transient Object owner = null;
+
+	/**
+	 * Listens for changes to properties in (owned) Dicts. This is called on whatever thread is doing the changing, with the Dict that changed, the Prop and the value that was there before.
+	 */
+	public interface ChangeListener {
+		void changed(Dict on, Prop p, Object was);
+	}
+
+	static private final Map<String, ChangeListener[]> listeners = new ConcurrentHashMap<>();
+
+	/**
+	 * adds a listener that's told about every put and remove of 'p' in every Dict that has an owner. This costs nothing for properties that nobody is listening to
+	 */
+	static public void addChangeListener(Prop p, ChangeListener l) {
+		listeners.compute(p.name, (k, v) -> {
+			if (v == null) return new ChangeListener[]{l};
+			for (ChangeListener c : v)
+				if (c == l) return v;
+			ChangeListener[] r = Arrays.copyOf(v, v.length + 1);
+			r[v.length] = l;
+			return r;
+		});
+	}
+
+	static public void removeChangeListener(Prop p, ChangeListener l) {
+		listeners.computeIfPresent(p.name, (k, v) -> {
+			ArrayList<ChangeListener> r = new ArrayList<>(Arrays.asList(v));
+			r.remove(l);
+			return r.size() == 0 ? null : r.toArray(new ChangeListener[r.size()]);
+		});
+	}
+
+	protected void changed(Prop p, Object was) {
+		if (owner == null || listeners.isEmpty()) return;
+		ChangeListener[] l = listeners.get(p.name);
+		if (l == null) return;
+		for (ChangeListener c : l)
+			c.changed(this, p, was);
+	}
+
+	public Dict setOwner(Object owner) {
+		this.owner = owner;
+		return this;
+	}
+
+	public Object getOwner() {
+		return owner;
+	}
+
+	/**
+	 * A ChangeListener that coalesces changes into the set of properties that have changed in each Dict, ready to be drained (typically once a frame) by something that would otherwise poll
+	 * everything. The version increases monotonically with every change recorded.
+	 */
+	static public class Journal implements ChangeListener {
+		private LinkedHashMap<Dict, LinkedHashSet<Prop>> pending = new LinkedHashMap<>();
+		private volatile long version = 0;
+
+		@Override
+		public synchronized void changed(Dict on, Prop p, Object was) {
+			pending.computeIfAbsent(on, k -> new LinkedHashSet<>())
+			       .add(p);
+			version++;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public synchronized boolean isEmpty() {
+			return pending.isEmpty();
+		}
+
+		/**
+		 * returns everything that's changed since the last time this was called, with repeated changes to the same property coalesced
+		 */
+		public synchronized Map<Dict, LinkedHashSet<Prop>> drain() {
+			if (pending.isEmpty()) return Collections.emptyMap();
+			LinkedHashMap<Dict, LinkedHashSet<Prop>> r = pending;
+			pending = new LinkedHashMap<>();
+			return r;
+		}
+	}
+
+	/**
+	 * A value that isn't computed until somebody asks for it, see putLazy. It's computed at most once.
+	 */
+	static public class Lazy<T> {
+		private Supplier<T> s;
+		private T value;
+		private final Object source;
+
+		public Lazy(Supplier<T> s) {
+			this(s, null);
+		}
+
+		/**
+		 * 'source' is where the value will come from (for example the File it'll be read from), see getLazySource
+		 */
+		public Lazy(Supplier<T> s, Object source) {
+			this.s = s;
+			this.source = source;
+		}
+
+		public Object getSource() {
+			return source;
+		}
+
+		public synchronized T get() {
+			if (s != null) {
+				value = s.get();
+				s = null;
+			}
+			return value;
+		}
+
+		public synchronized boolean isDone() {
+			return s == null;
+		}
+
+		@Override
+		public String toString() {
+			return isDone() ? String.valueOf(value) : "(not loaded yet)";
+		}
+	}
+
+	/**
+	 * like the autoConstructor on a Prop, but for a single property in a single Dict. 'value' is called the first time this property is asked for and its result replaces the Lazy in this Dict.
+	 * Until then has(key) is true (see isLazy). Reading the value through getMap() or duplicate() computes it, just as get(key) does.
+	 */
+	public <T> Dict putLazy(Prop<T> key, Supplier<T> value) {
+		return putLazy(key, value, null);
+	}
+
+	/**
+	 * putLazy, remembering where the value will come from
+	 */
+	public <T> Dict putLazy(Prop<T> key, Supplier<T> value, Object source) {
+		Object was = dictionary.put(key, new Lazy<>(value, source));
+		if (was == null) presenceChanged(key);
+		changed(key, was);
+		return this;
+	}
+
+	/**
+	 * if this property has been put with putLazy and hasn't been asked for yet, returns the source it was put with, otherwise null
+	 */
+	public Object getLazySource(Prop<?> key) {
+		Object o = dictionary.get(key);
+		return o instanceof Lazy && !((Lazy) o).isDone() ? ((Lazy) o).getSource() : null;
+	}
+
+	/**
+	 * true if this property has been put with putLazy and hasn't been asked for yet
+	 */
+	public boolean isLazy(Prop<?> key) {
+		Object o = dictionary.get(key);
+		return o instanceof Lazy && !((Lazy) o).isDone();
+	}
+
+	private Object resolve(Prop key, Lazy l) {
+		Object v = l.get();
+		if (v == null) {
+			if (dictionary.remove(key, l)) presenceChanged(key);
+		} else dictionary.replace(key, l, v);
+		return v;
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> T get(Prop<T> key) {
 		Object o = dictionary.get(key);
+		if (o instanceof Lazy) o = resolve(key, (Lazy) o);
 		if (failure!=null && o==null && !dictionary.containsKey(key))
 			return (T)failure.apply(key);
 		return (T)o;
@@ -349,11 +565,39 @@ public class Dict implements Serializable, Linker.AsMap {
 
 		Prop<T> cc = key.findCannon();
 		if (cc!=null && cc.autoConstructor != null) {
-			return (T) dictionary.computeIfAbsent(key, k -> cc.autoConstructor.get());
+			return (T) computeIfAbsent_(key, k -> cc.autoConstructor.get());
 		}
 		return get(key);
 	}
 
+	private Object computeIfAbsent_(Prop key, Function<Prop, Object> f) {
+		Object o = dictionary.get(key);
+		if (o instanceof Lazy) o = resolve(key, (Lazy) o);
+		if (o != null) return o;
+		boolean[] created = {false};
+		o = dictionary.computeIfAbsent(key, k -> {
+			Object v = f.apply(k);
+			created[0] = v != null;
+			return v;
+		});
+		if (created[0]) {
+			presenceChanged(key);
+			changed(key, null);
+		}
+		return o;
+	}
+
+	/**
+	 * called whenever a key is added or removed from this Dict (but not when it is simply overwritten)
+	 */
+	static protected void presenceChanged(Prop key) {
+		Prop.PRESENCE.incrementAndGet(key);
+		if (!key.cannon) {
+			Prop c = Canonical.findCannon(key.name);
+			if (c != null && c != key) Prop.PRESENCE.incrementAndGet(c);
+		}
+	}
+
 	public <T> T getOr(Prop<T> key, Supplier<T> def) {
 		T t = get(key);
 		if (t == null) return def.get();
@@ -366,7 +610,7 @@ public class Dict implements Serializable, Linker.AsMap {
 		T t = get(k);
 		if (t != null) return t;
 
-		return (T) dictionary.computeIfAbsent(k, (x) -> def.apply(k));
+		return (T) computeIfAbsent_(k, (x) -> def.apply(k));
 	}
 
 	public float getFloat(Prop<? extends Number> n, float def) {
@@ -386,7 +630,10 @@ public class Dict implements Serializable, Linker.AsMap {
 
 		r.dictionary = new LinkedHashMap<Prop, Object>(dictionary.size());
 		for (Map.Entry<Prop, Object> e : dictionary.entrySet()) {
-			r.dictionary.put(e.getKey(), e.getValue() instanceof Mutable ? ((Mutable) e.getValue()).duplicate() : e.getValue());
+			Object v = e.getValue();
+			if (v instanceof Lazy) v = ((Lazy) v).get();
+			if (v == null) continue;
+			r.dictionary.put(e.getKey(), v instanceof Mutable ? ((Mutable) v).duplicate() : v);
 		}
 		return r;
 	}
@@ -404,8 +651,107 @@ public class Dict implements Serializable, Linker.AsMap {
 	}
 
 
+	/**
+	 * the contents of this Dict, as a live view. Lazy values are computed as they are read (by get or by an entry's getValue), so nothing outside of Dict ever sees a Lazy; iterating over just the
+	 * keys doesn't compute anything.
+	 */
 	public Map<Prop, Object> getMap() {
-		return dictionary;
+		return view == null ? view = new View() : view;
+	}
+
+	private transient Map<Prop, Object> view;
+
+	private class View extends AbstractMap<Prop, Object> {
+		@Override
+		public int size() {
+			return dictionary.size();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return dictionary.containsKey(key);
+		}
+
+		@Override
+		public Object get(Object key) {
+			Object o = dictionary.get(key);
+			return o instanceof Lazy ? resolve((Prop) key, (Lazy) o) : o;
+		}
+
+		@Override
+		public Object put(Prop key, Object value) {
+			return value(dictionary.put(key, value));
+		}
+
+		@Override
+		public Object remove(Object key) {
+			return value(dictionary.remove(key));
+		}
+
+		private Object value(Object o) {
+			return o instanceof Lazy ? ((Lazy) o).get() : o;
+		}
+
+		@Override
+		public Set<Entry<Prop, Object>> entrySet() {
+			return new AbstractSet<Entry<Prop, Object>>() {
+				@Override
+				public int size() {
+					return dictionary.size();
+				}
+
+				@Override
+				public Iterator<Entry<Prop, Object>> iterator() {
+					Iterator<Entry<Prop, Object>> i = dictionary.entrySet()
+										    .iterator();
+					return new Iterator<Entry<Prop, Object>>() {
+						@Override
+						public boolean hasNext() {
+							return i.hasNext();
+						}
+
+						@Override
+						public Entry<Prop, Object> next() {
+							Entry<Prop, Object> e = i.next();
+							// the Lazy is left in place (it remembers its value), replacing it here would change the map underneath the iterator
+							return new Entry<Prop, Object>() {
+								@Override
+								public Prop getKey() {
+									return e.getKey();
+								}
+
+								@Override
+								public Object getValue() {
+									return value(e.getValue());
+								}
+
+								@Override
+								public Object setValue(Object value) {
+									return value(e.setValue(value));
+								}
+
+								@Override
+								public boolean equals(Object o) {
+									if (!(o instanceof Entry)) return false;
+									Entry q = (Entry) o;
+									return Objects.equals(getKey(), q.getKey()) && Objects.equals(getValue(), q.getValue());
+								}
+
+								@Override
+								public int hashCode() {
+									return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+								}
+							};
+						}
+
+						@Override
+						public void remove() {
+							i.remove();
+						}
+					};
+				}
+			};
+		}
 	}
 
 	@Override
@@ -433,6 +779,7 @@ public class Dict implements Serializable, Linker.AsMap {
 		if (!dictionary.containsKey(prop)) return def;
 
 		Object p = dictionary.get(prop);
+		if (p instanceof Lazy) p = resolve(prop, (Lazy) p);
 		if (p == null) return def;
 		if (p instanceof Boolean) return ((Boolean) p);
 		if (p instanceof Number) return ((Number) p).intValue() > 0;
@@ -444,7 +791,9 @@ public class Dict implements Serializable, Linker.AsMap {
 	public <T> Dict put(Prop<T> key, T value) {
 		if (value==null) return this;
 
-		dictionary.put(key, value);
+		Object was = dictionary.put(key, value);
+		if (was==null) presenceChanged(key);
+		changed(key, was);
 		return this;
 	}
 
@@ -493,11 +842,11 @@ public class Dict implements Serializable, Linker.AsMap {
 	public <T> Dict putToList(Prop<? extends Collection<T>> key, T value) {
 
 		if (key.toCannon().autoConstructor != null) {
-			Collection<T> c = (Collection<T>) dictionary.computeIfAbsent(key, (k) -> key.toCannon().autoConstructor.get());
+			Collection<T> c = (Collection<T>) computeIfAbsent_(key, (k) -> key.toCannon().autoConstructor.get());
 			c.add(value);
 			return this;
 		} else {
-			Collection<T> c = (Collection<T>) dictionary.computeIfAbsent(key, (k) -> new ArrayList<T>());
+			Collection<T> c = (Collection<T>) computeIfAbsent_(key, (k) -> new ArrayList<T>());
 			c.add(value);
 			return this;
 		}
@@ -506,11 +855,11 @@ public class Dict implements Serializable, Linker.AsMap {
 	public <T> Dict putToList(Prop<? extends Collection<T>> key, T value, Supplier<? extends Collection<T>> def) {
 
 		if (key.toCannon().autoConstructor != null) {
-			Collection<T> c = (Collection<T>) dictionary.computeIfAbsent(key, (k) -> key.toCannon().autoConstructor.get());
+			Collection<T> c = (Collection<T>) computeIfAbsent_(key, (k) -> key.toCannon().autoConstructor.get());
 			c.add(value);
 			return this;
 		} else {
-			Collection<T> c = (Collection<T>) dictionary.computeIfAbsent(key, (k) -> def.get());
+			Collection<T> c = (Collection<T>) computeIfAbsent_(key, (k) -> def.get());
 			c.add(value);
 			return this;
 		}
@@ -519,11 +868,11 @@ public class Dict implements Serializable, Linker.AsMap {
 	public <T> Dict putToListMap(Prop<? extends LinkedHashMapAndArrayList<T>> key, T value) {
 
 		if (key.toCannon().autoConstructor != null) {
-			LinkedHashMapAndArrayList<T> c = (LinkedHashMapAndArrayList<T>) dictionary.computeIfAbsent(key, (k) -> key.toCannon().autoConstructor.get());
+			LinkedHashMapAndArrayList<T> c = (LinkedHashMapAndArrayList<T>) computeIfAbsent_(key, (k) -> key.toCannon().autoConstructor.get());
 			c.add(value);
 			return this;
 		} else {
-			LinkedHashMapAndArrayList<T> c = (LinkedHashMapAndArrayList<T>) dictionary.computeIfAbsent(key, (k) -> new ArrayList<T>());
+			LinkedHashMapAndArrayList<T> c = (LinkedHashMapAndArrayList<T>) computeIfAbsent_(key, (k) -> new ArrayList<T>());
 			c.add(value);
 			return this;
 		}
@@ -531,11 +880,11 @@ public class Dict implements Serializable, Linker.AsMap {
 
 	public <K, T> Dict putToMap(Prop<? extends Map<String, T>> key, K tok, T value) {
 		if (key.toCannon().autoConstructor != null) {
-			Map<K, T> c = (Map<K, T>) dictionary.computeIfAbsent(key, (k) -> key.toCannon().autoConstructor.get());
+			Map<K, T> c = (Map<K, T>) computeIfAbsent_(key, (k) -> key.toCannon().autoConstructor.get());
 			c.put(tok, value);
 			return this;
 		} else {
-			Map<K, T> c = (Map<K, T>) dictionary.computeIfAbsent(key, (k) -> new IdempotencyMap<T>(null));
+			Map<K, T> c = (Map<K, T>) computeIfAbsent_(key, (k) -> new IdempotencyMap<T>(null));
 			c.put(tok, value);
 			return this;
 		}
@@ -568,6 +917,10 @@ public class Dict implements Serializable, Linker.AsMap {
 
 	public <T> T remove(Prop<T> t) {
 		Object x = dictionary.remove(t);
+		if (x!=null) {
+			presenceChanged(t);
+			changed(t, x);
+		}
 		return (T) x;
 	}
 
@@ -600,6 +953,7 @@ public class Dict implements Serializable, Linker.AsMap {
 	public <T> boolean equals(Prop<T> context, T v)
 	{
 		Object d = dictionary.get(context);
+		if (d instanceof Lazy) d = resolve(context, (Lazy) d);
 		if (d==null) return v==null;
 		return d.equals(v);
 	}
@@ -610,7 +964,11 @@ public class Dict implements Serializable, Linker.AsMap {
 		while (is.hasNext()) {
 			Entry<Prop, Object> n = is.next();
 			if (n.getValue()
-			     .equals(c)) is.remove();
+			     .equals(c)) {
+				is.remove();
+				presenceChanged(n.getKey());
+				changed(n.getKey(), n.getValue());
+			}
 		}
 	}
 
@@ -634,15 +992,31 @@ public class Dict implements Serializable, Linker.AsMap {
 
 	@Override
 	public Object asMap_get(String p) {
-		return get(new Prop(p));
+		return get(Canonical.key(p));
+	}
+
+	@Override
+	public Object asMap_key(String p) {
+		// Props are equal by name, so this key stays good even if a canonical Prop turns up later
+		return Canonical.key(p);
+	}
+
+	@Override
+	public Object asMap_getKeyed(Object key, String p) {
+		return get((Prop) key);
+	}
+
+	@Override
+	public Object asMap_setKeyed(Object key, String p, Object o) {
+		return put((Prop) key, o);
 	}
 
 	@Override
-	public boolean asMap_delete(Object o) {return remove(new Prop(""+o))!=null;}
+	public boolean asMap_delete(Object o) {return remove(Canonical.key(""+o))!=null;}
 
 	@Override
 	public Object asMap_set(String p, Object o) {
-		Dict r = put(new Prop(p), o);
+		Dict r = put(Canonical.key(p), o);
 		return r;
 	}
 
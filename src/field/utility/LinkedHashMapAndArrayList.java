@@ -11,6 +11,12 @@ public class LinkedHashMapAndArrayList<V> extends LinkedHashMap<String, V> {
 
 	protected int uniq = 0;
 
+	/**
+	 * incremented by every put, remove and clear made through this class (but not through iterators or views), so that things that are built from the contents of this map can tell that
+	 * they are out of date
+	 */
+	protected int version = 0;
+
 	Map<Object, String> keys = new MapMaker().weakKeys().makeMap();
 
 	public void add(Object value)
@@ -34,9 +40,20 @@ public class LinkedHashMapAndArrayList<V> extends LinkedHashMap<String, V> {
 	// this one is better for writing Java, because it gives you type inference on lambdas as V
 	public V _put(String key, V v)
 	{
+		version++;
 		return super.put(massageKey(key), v);
 	}
 
+	@Override
+	public void putAll(Map<? extends String, ? extends V> m) {
+		for (Map.Entry<? extends String, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
 	protected V massage(Object vraw) {
 		return (V)vraw;
 	}
@@ -48,6 +65,7 @@ public class LinkedHashMapAndArrayList<V> extends LinkedHashMap<String, V> {
 	public V remove(Object v)
 	{
 		Log.log("lhmaal_remove", ()->"removing "+v+" "+this);
+		version++;
 		V q = super.remove(v);
 		V q2 = super.remove(keys.remove(massageKey(""+v)));
 		Log.log("lhmaal_remove",()-> "now "+this);
@@ -60,6 +78,7 @@ public class LinkedHashMapAndArrayList<V> extends LinkedHashMap<String, V> {
 	@Override
 	public void clear() {
 		ArrayList<V> val = new ArrayList<>(values());
+		version++;
 		super.clear();
 		val.forEach(x -> _removed(x));
 	}